@@ -0,0 +1,277 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+import lmu_PrintableMusic.MidiEventRing;
+import lmu_PrintableMusic.MidiInputReceiver;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SculptureWriter;
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.ParallelUnion;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Regression baseline for the MIDI-to-sculpture pipeline. Every iteration sets up fresh state
+//untimed and times one batch of operations, so the model sizes stay what the parameter says;
+//the score is the batch's time per operation. Every state writes into a temporary directory
+//of its own that is gone after the fork.
+//
+//  gradle :bench:jmh [-Pjmh="regex and JMH options"]
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PipelineBench
+{
+	private static final int NOTES = 10000;
+	private static final int PREVIEWS = 100;
+	private static final int MESSAGES = 100000;
+
+
+	//the temporary directory of a state
+	public abstract static class Fixture
+	{
+		Bench bench;
+
+		@Setup(Level.Trial)
+		public void create() throws IOException
+		{
+			bench = new Bench("pipeline");
+		}
+
+		@TearDown(Level.Trial)
+		public void delete()
+		{
+			bench.close();
+		}
+
+		ModelCube cube(int notes)
+		{
+			ModelCube cube = new ModelCube("bench", bench.file("current"), bench.file("models"));
+			for(int i = 0; i < notes; i++)
+			{
+				cube.addCube(21 + (i * 7) % 88, 1 + (i * 13) % 127, i);
+			}
+			return cube;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cubes extends Fixture
+	{
+		@Param({"0", "10000", "100000"})
+		public int size;
+		ModelCube cube;
+
+		@Setup(Level.Iteration)
+		public void fill()
+		{
+			cube = cube(size);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Prisms extends Fixture
+	{
+		@Param({"0", "10000", "100000"})
+		public int size;
+		ModelPrism prism;
+
+		@Setup(Level.Iteration)
+		public void fill()
+		{
+			prism = new ModelPrism("bench", bench.file("current"), bench.file("models"));
+			for(int i = 0; i < size; i++)
+			{
+				prism.addPrism(1 + i % 5, 4 + i % 7);
+			}
+		}
+	}
+
+	//a cube sculpture of size primitives once safeModel() adds the last one
+	@State(Scope.Thread)
+	public static class Preview extends Fixture
+	{
+		@Param({"100", "1000", "10000"})
+		public int size;
+		ModelCube cube;
+
+		@Setup(Level.Iteration)
+		public void fill()
+		{
+			cube = cube(size - 1);
+		}
+
+		@TearDown(Level.Iteration)
+		public void close()
+		{
+			cube.closeSnapshot();
+		}
+	}
+
+	//the same with its first preview written already
+	@State(Scope.Thread)
+	public static class Previewed extends Fixture
+	{
+		@Param({"100", "1000", "10000"})
+		public int size;
+		ModelCube cube;
+
+		@Setup(Level.Iteration)
+		public void fill()
+		{
+			cube = cube(size - 1);
+			cube.safeModel();
+		}
+
+		@TearDown(Level.Iteration)
+		public void close()
+		{
+			cube.closeSnapshot();
+		}
+	}
+
+	//on a pool of its own with threads workers, the core counts UnionScaling sweeps
+	@State(Scope.Thread)
+	public static class Union extends Fixture
+	{
+		@Param({"50", "100", "300"})
+		public int size;
+		@Param({"1", "2", "4"})
+		public int threads;
+		ForkJoinPool pool;
+		List<Abstract3dModel> models;
+
+		@Setup(Level.Trial)
+		public void start()
+		{
+			pool = new ForkJoinPool(threads);
+		}
+
+		@TearDown(Level.Trial)
+		public void shutdown()
+		{
+			pool.shutdown();
+		}
+
+		@Setup(Level.Iteration)
+		public void fill()
+		{
+			models = cube(size).getModels();
+		}
+	}
+
+	//a recording receiver, synth and frontend never initialised; the writer thread runs alongside
+	@State(Scope.Thread)
+	public static class Recording extends Fixture
+	{
+		@Param({"CUBE", "PRISM"})
+		public SculptureMode mode;
+		final ShortMessage[] messages = new ShortMessage[256];
+		SculptureSession session;
+		MidiInputReceiver receiver;
+
+		@Setup(Level.Iteration)
+		public void start() throws InvalidMidiDataException
+		{
+			for(int i = 0; i < messages.length; i++)
+			{
+				messages[i] = i % 2 == 0 ? new ShortMessage(ShortMessage.NOTE_ON, 0, 21 + i % 88, 1 + i % 127) : new ShortMessage(ShortMessage.NOTE_OFF, 0, 21 + (i - 1) % 88, 0);
+			}
+			session = bench.session("bench", new MidiEventRing(1 << 16, MidiEventRing.Overflow.BLOCK, 1000), SculptureWriter.DEFAULT_MIN_WRITE_INTERVAL);
+			session.setMode(mode);
+			session.startRecording();
+			receiver = new MidiInputReceiver(session);
+		}
+
+		@TearDown(Level.Iteration)
+		public void stop()
+		{
+			session.close();
+		}
+	}
+
+
+	//one note into a cube sculpture that already holds size notes
+	@Benchmark
+	@OperationsPerInvocation(NOTES)
+	public ModelCube addCube(Cubes state)
+	{
+		for(int i = 0; i < NOTES; i++)
+		{
+			state.cube.addCube(21 + (i * 5) % 88, 1 + (i * 11) % 127, i);
+		}
+		return state.cube;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NOTES)
+	public ModelPrism addPrism(Prisms state)
+	{
+		for(int i = 0; i < NOTES; i++)
+		{
+			state.prism.addPrism(1 + i % 5, 4 + i % 7);
+		}
+		return state.prism;
+	}
+
+	//the first preview of a sculpture with size primitives
+	@Benchmark
+	public void safeModelFull(Preview state)
+	{
+		state.cube.safeModel();
+	}
+
+	//one more note and its preview, on a sculpture with size primitives
+	@Benchmark
+	@OperationsPerInvocation(PREVIEWS)
+	public void safeModelAppend(Previewed state)
+	{
+		for(int i = 0; i < PREVIEWS; i++)
+		{
+			state.cube.addCube(21 + (i * 5) % 88, 1 + (i * 11) % 127, i);
+			state.cube.safeModel();
+		}
+	}
+
+	//the CSG union of a cube sculpture of size notes, on threads cores
+	@Benchmark
+	public Object union(Union state)
+	{
+		return new ParallelUnion(state.pool).toCSG(state.models, FacetGenerationContext.DEFAULT);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void send(Recording state)
+	{
+		for(int i = 0; i < MESSAGES; i++)
+		{
+			state.receiver.send(state.messages[i & 255], -1);
+		}
+	}
+}
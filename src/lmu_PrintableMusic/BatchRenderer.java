@@ -0,0 +1,445 @@
+package lmu_PrintableMusic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import eu.printingin3d.javascad.vrl.export.FileExporterFactory;
+import lmu_PrintableMusic_object.ModelCreate;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Headless batch mode: turns recorded Standard MIDI Files into sculptures, without
+//devices or frontend. The notes go through the same Sculpture mapping as live playing.
+//
+//  BatchRenderer [--mode cube|prism|voxel|both] [--out dir] [--threads n] [--stl [--union]] [--deterministic] files or directories...
+//
+//--stl writes every primitive as its own closed shell, with --union they are merged
+//into one by the CSG union first, which takes much longer.
+//
+//Every file is rendered by one worker of a pool sized to the cores. With --deterministic
+//the output names only depend on the input and a sorted SHA-256 manifest is written,
+//so runs with any number of threads can be compared byte for byte. Outputs are named
+//after the file, or after the path given for it where files share a name (a/song.mid
+//and b/song.mid become a_song and b_song); the same file given twice is rendered once.
+public class BatchRenderer
+{
+	private final List<SculptureMode> modes = new ArrayList<>();
+	private File out = new File("sculptures");
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean stl = false;
+	private boolean union = false;
+	private boolean deterministic = false;
+	//every file once, by its absolute path, and the path it was given by
+	private final List<File> inputs = new ArrayList<>();
+	private final Map<File, File> given = new HashMap<>();
+	//what the output files of an input are called after
+	private final Map<File, String> names = new HashMap<>();
+
+
+	public static void main(String[] args) throws InterruptedException, IOException
+	{
+		BatchRenderer renderer = new BatchRenderer();
+		try
+		{
+			renderer.parse(args);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("usage: BatchRenderer [--mode cube|prism|voxel|both] [--out dir] [--threads n] [--stl [--union]] [--deterministic] files or directories...");
+			System.exit(2);
+		}
+
+		if(!renderer.render())
+		{
+			System.exit(1);
+		}
+	}
+
+	public void parse(String[] args)
+	{
+		for(int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if(arg.equals("--mode"))
+			{
+				String mode = value(args, ++i, arg);
+				if(mode.equals("both"))
+				{
+					modes.addAll(Arrays.asList(SculptureMode.CUBE, SculptureMode.PRISM));
+				}
+				else
+				{
+					modes.add(SculptureMode.valueOf(mode.toUpperCase()));
+				}
+			}
+			else if(arg.equals("--out"))
+			{
+				out = new File(value(args, ++i, arg));
+			}
+			else if(arg.equals("--threads"))
+			{
+				threads = Math.max(1, Integer.parseInt(value(args, ++i, arg)));
+			}
+			else if(arg.equals("--stl"))
+			{
+				stl = true;
+			}
+			else if(arg.equals("--union"))
+			{
+				union = true;
+			}
+			else if(arg.equals("--deterministic"))
+			{
+				deterministic = true;
+			}
+			else if(arg.startsWith("--"))
+			{
+				throw new IllegalArgumentException("unknown option " + arg);
+			}
+			else
+			{
+				collect(new File(arg));
+			}
+		}
+
+		if(modes.isEmpty())
+		{
+			modes.add(SculptureMode.CUBE);
+		}
+		if(inputs.isEmpty())
+		{
+			throw new IllegalArgumentException("no MIDI files given");
+		}
+		Collections.sort(inputs);
+		name();
+	}
+
+	//returns false if any file failed
+	public boolean render() throws InterruptedException, IOException
+	{
+		out.mkdirs();
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, inputs.size()));
+		List<Future<Result>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for(final File input : inputs)
+		{
+			futures.add(pool.submit(new Callable<Result>()
+			{
+				@Override
+				public Result call() throws Exception
+				{
+					return renderFile(input);
+				}
+			}));
+		}
+		pool.shutdown();
+
+		List<File> written = new ArrayList<>();
+		long notes = 0;
+		int failed = 0;
+		for(int i = 0; i < futures.size(); i++)
+		{
+			try
+			{
+				Result result = futures.get(i).get();
+				notes += result.notes;
+				written.addAll(result.files);
+			}
+			catch (ExecutionException e)
+			{
+				failed++;
+				System.err.println(given.get(inputs.get(i)) + ": " + e.getCause());
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		if(deterministic)
+		{
+			writeManifest(written);
+		}
+
+		System.out.println(String.format("%d files (%d failed), %d notes, %d threads, %.2f s", inputs.size(), failed, notes, Math.min(threads, inputs.size()), seconds));
+		System.out.println(String.format("%.0f notes/s, %.1f files/min", notes / seconds, (inputs.size() - failed) / seconds * 60));
+		return failed == 0;
+	}
+
+	private Result renderFile(File input) throws InvalidMidiDataException, IOException
+	{
+		Sequence sequence = MidiSystem.getSequence(input);
+		List<NoteOn> noteOns = noteOns(sequence);
+
+		//ticks to ns, exact for a constant tempo
+		double nanosPerTick = sequence.getTickLength() > 0 ? sequence.getMicrosecondLength() * 1000.0 / sequence.getTickLength() : 0;
+
+		Result result = new Result();
+		result.notes = noteOns.size();
+		String base = baseName(input);
+
+		for(SculptureMode mode : modes)
+		{
+			Sculpture sculpture = mode.create(base);
+			for(NoteOn note : noteOns)
+			{
+				sculpture.addNote(note.pitch, note.velocity, (long) (note.tick * nanosPerTick));
+			}
+
+			File model = new File(out, base + "_" + mode.name().toLowerCase() + "_model." + mode.getExtension());
+			sculpture.safeForGood(model);
+			result.files.add(model);
+
+			//the voxel model is printable already
+			if(stl && mode != SculptureMode.VOXEL)
+			{
+				File printable = new File(out, base + "_" + mode.name().toLowerCase() + "_model.stl");
+				if(union)
+				{
+					FileExporterFactory.createExporter(printable).writeToFile(new ModelCreate(sculpture.getModels()).toCSG().toFacets());
+				}
+				else
+				{
+					sculpture.safePrintable(printable);
+				}
+				result.files.add(printable);
+			}
+		}
+		return result;
+	}
+
+	//all note-ons of all tracks, in time order; equal ticks keep track and event order
+	static List<NoteOn> noteOns(Sequence sequence)
+	{
+		List<NoteOn> noteOns = new ArrayList<>();
+		Track[] tracks = sequence.getTracks();
+		for(int t = 0; t < tracks.length; t++)
+		{
+			for(int i = 0; i < tracks[t].size(); i++)
+			{
+				MidiEvent event = tracks[t].get(i);
+				MidiMessage msg = event.getMessage();
+				if(msg instanceof ShortMessage)
+				{
+					ShortMessage answer = (ShortMessage) msg;
+					if(answer.getCommand() == ShortMessage.NOTE_ON && answer.getData2() > 0)
+					{
+						noteOns.add(new NoteOn(event.getTick(), t, i, answer.getData1(), answer.getData2()));
+					}
+				}
+			}
+		}
+
+		Collections.sort(noteOns, new Comparator<NoteOn>()
+		{
+			@Override
+			public int compare(NoteOn a, NoteOn b)
+			{
+				if(a.tick != b.tick)
+				{
+					return a.tick < b.tick ? -1 : 1;
+				}
+				if(a.track != b.track)
+				{
+					return a.track - b.track;
+				}
+				return a.index - b.index;
+			}
+		});
+		return noteOns;
+	}
+
+	//the input's file name, or where inputs share that, the path it was given by; two that
+	//would still be written under the same name are refused
+	private void name()
+	{
+		Map<String, Integer> counts = new HashMap<>();
+		for(File input : inputs)
+		{
+			String name = stem(input.getName());
+			counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+		}
+		Map<String, File> taken = new HashMap<>();
+		for(File input : inputs)
+		{
+			String name = stem(input.getName());
+			if(counts.get(name) > 1)
+			{
+				Path path = given.get(input).toPath().normalize();
+				if(path.getRoot() != null)
+				{
+					path = path.getRoot().relativize(path);
+				}
+				name = stem(path.toString()).replace(File.separatorChar, '_');
+			}
+			File other = taken.put(name, input);
+			if(other != null)
+			{
+				throw new IllegalArgumentException(given.get(other) + " and " + given.get(input) + " would both be written as " + name);
+			}
+			names.put(input, name);
+		}
+	}
+
+	private static String stem(String name)
+	{
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	private String baseName(File input)
+	{
+		String name = names.get(input);
+		if(deterministic)
+		{
+			return name;
+		}
+
+		DateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+		return dateFormat.format(Calendar.getInstance().getTime()) + "_" + name;
+	}
+
+	private void collect(File file)
+	{
+		if(file.isDirectory())
+		{
+			File[] children = file.listFiles();
+			if(children != null)
+			{
+				for(File child : children)
+				{
+					collect(child);
+				}
+			}
+		}
+		else
+		{
+			String name = file.getName().toLowerCase();
+			if(name.endsWith(".mid") || name.endsWith(".midi"))
+			{
+				//the same file given twice is rendered once
+				File absolute = file.getAbsoluteFile().toPath().normalize().toFile();
+				if(!given.containsKey(absolute))
+				{
+					given.put(absolute, file);
+					inputs.add(absolute);
+				}
+			}
+			else if(!file.exists())
+			{
+				throw new IllegalArgumentException("no such file " + file);
+			}
+		}
+	}
+
+	private void writeManifest(List<File> files) throws IOException
+	{
+		PrintWriter manifest = new PrintWriter(new File(out, "manifest.sha256"), "UTF-8");
+		try
+		{
+			for(File file : files)
+			{
+				manifest.println(sha256(file) + "  " + file.getName());
+			}
+		}
+		finally
+		{
+			manifest.close();
+		}
+	}
+
+	private static String sha256(File file) throws IOException
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			InputStream in = new DigestInputStream(new FileInputStream(file), digest);
+			try
+			{
+				byte[] buffer = new byte[64 * 1024];
+				while(in.read(buffer) != -1)
+				{
+					//the digest stream does the work
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest.digest())
+			{
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String value(String[] args, int i, String option)
+	{
+		if(i >= args.length)
+		{
+			throw new IllegalArgumentException(option + " needs a value");
+		}
+		return args[i];
+	}
+
+
+	static class NoteOn
+	{
+		final long tick;
+		final int track;
+		final int index;
+		final int pitch;
+		final int velocity;
+
+		NoteOn(long tick, int track, int index, int pitch, int velocity)
+		{
+			this.tick = tick;
+			this.track = track;
+			this.index = index;
+			this.pitch = pitch;
+			this.velocity = velocity;
+		}
+	}
+
+	private static class Result
+	{
+		long notes = 0;
+		final List<File> files = new ArrayList<>();
+	}
+}
@@ -0,0 +1,220 @@
+package lmu_PrintableMusic;
+
+import java.awt.BorderLayout;
+import java.awt.GraphicsEnvironment;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractAction;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+
+//The one window of all keyboards: the welcome picture on top, the three steps below it and
+//next to them a column of buttons for every keyboard. Nothing of it exists until the first
+//keyboard asks for it; then the font and pictures are loaded on a thread of their own and
+//the window is built on the event thread, so connecting a keyboard never waits for either.
+public class Frontend
+{
+	private static final int STEP_SIZE = 200;
+	private static final int COLUMN_WIDTH = 320;
+	private static final String[] STEPS = {"erstens.jpg", "zweitens.jpg", "drittens.jpg"};
+
+	private static Frontend shared = null;
+
+	//every keyboard added so far, in order
+	private final List<MidiInputReceiver> receivers = new ArrayList<>();
+	//whether the loader was started, once for good; guarded by receivers
+	private boolean started = false;
+	private final FrontendResources resources = new FrontendResources();
+	private volatile boolean loaded = false;
+
+	//only touched on the event thread
+	private JFrame window = null;
+	private JPanel steps = null;
+	private final List<JLabel> stepLabels = new ArrayList<>();
+
+
+	public static synchronized Frontend shared()
+	{
+		if(shared == null)
+		{
+			shared = new Frontend();
+		}
+		return shared;
+	}
+
+	//returns at once, the keyboard's column shows up once the window is there
+	public void add(MidiInputReceiver receiver)
+	{
+		boolean first;
+		synchronized(receivers)
+		{
+			receivers.add(receiver);
+			first = !started;
+			started = true;
+		}
+		if(first)
+		{
+			Thread loader = new Thread("frontend")
+			{
+				@Override
+				public void run()
+				{
+					load();
+				}
+			};
+			loader.setDaemon(true);
+			loader.start();
+		}
+		else
+		{
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					layout();
+				}
+			});
+		}
+	}
+
+	//a keyboard that was pulled out loses its column
+	public void remove(MidiInputReceiver receiver)
+	{
+		synchronized(receivers)
+		{
+			if(!receivers.remove(receiver))
+			{
+				return;
+			}
+		}
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				layout();
+			}
+		});
+	}
+
+	private void load()
+	{
+		final BufferedImage header = resources.image("welcome_neu2.jpg", 800, 400);
+		final BufferedImage[] pictures = new BufferedImage[STEPS.length];
+		for(int i = 0; i < STEPS.length; i++)
+		{
+			pictures[i] = resources.image(STEPS[i], STEP_SIZE, STEP_SIZE);
+		}
+		resources.font(24f);
+		loaded = true;
+		if(GraphicsEnvironment.isHeadless())
+		{
+			//the pictures are cached for the next start all the same
+			System.out.println("no display, the frontend is not shown");
+			return;
+		}
+
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				build(header, pictures);
+			}
+		});
+	}
+
+	private void build(BufferedImage header, BufferedImage[] pictures)
+	{
+		JPanel panel = new JPanel(new BorderLayout());
+		panel.add(label(header, "Printable Music"), BorderLayout.NORTH);
+		steps = new JPanel();
+		panel.add(steps, BorderLayout.CENTER);
+		for(int i = 0; i < pictures.length; i++)
+		{
+			stepLabels.add(label(pictures[i], String.valueOf(i + 1)));
+		}
+
+		//Ctrl+L prints the latency of every session, how its previews get published and whether it fits the bed
+		panel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control L"), "latency");
+		panel.getActionMap().put("latency", new AbstractAction()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				for(MidiInputReceiver receiver : receivers())
+				{
+					System.out.println(receiver.report());
+				}
+			}
+		});
+
+		window = new JFrame("Printable Music");
+		window.add(panel);
+		layout();
+		window.setVisible(true);
+	}
+
+	//one row per step, the step's picture and every keyboard's button for it
+	private void layout()
+	{
+		if(window == null)
+		{
+			return;
+		}
+		List<MidiInputReceiver> all = receivers();
+		steps.removeAll();
+		steps.setLayout(new GridLayout(STEPS.length, 1 + all.size()));
+		List<JComponent[]> columns = new ArrayList<>();
+		for(MidiInputReceiver receiver : all)
+		{
+			columns.add(receiver.getControls(resources.font(24f)));
+		}
+		for(int row = 0; row < STEPS.length; row++)
+		{
+			steps.add(stepLabels.get(row));
+			for(JComponent[] column : columns)
+			{
+				steps.add(column[row]);
+			}
+		}
+		window.setSize(STEP_SIZE + COLUMN_WIDTH * Math.max(1, all.size()), 1020);
+		steps.revalidate();
+		steps.repaint();
+	}
+
+	private List<MidiInputReceiver> receivers()
+	{
+		synchronized(receivers)
+		{
+			return new ArrayList<>(receivers);
+		}
+	}
+
+	//the picture, or the text if it could not be loaded
+	private static JLabel label(BufferedImage picture, String text)
+	{
+		return picture != null ? new JLabel(new ImageIcon(picture)) : new JLabel(text, JLabel.CENTER);
+	}
+
+	//font and pictures are there, the window follows on the event thread
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public FrontendResources getResources() {
+		return resources;
+	}
+}
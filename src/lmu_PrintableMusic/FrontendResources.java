@@ -0,0 +1,161 @@
+package lmu_PrintableMusic;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.imageio.ImageIO;
+
+//Font and pictures of the frontend, read from the classpath (the project's Resources folder
+//is a class folder), so nothing depends on where the project happens to be checked out.
+//The pictures are shown smaller than they are stored; the scaled versions are cached as PNG
+//on disk, keyed by size and date of the original, so only the first start scales them.
+//
+//  -Dprintablemusic.imageCache=<directory>   (default ~/.printablemusic/images)
+public class FrontendResources
+{
+	public static final String ROOT = "/PRINTABLE_MUSIC/";
+	public static final File CACHE_DIRECTORY = new File(System.getProperty("printablemusic.imageCache",
+			System.getProperty("user.home") + File.separator + ".printablemusic" + File.separator + "images"));
+
+	private static final String FONT = ROOT + "HFJ_Gotham_1/HFJ_Gotham_1/Gotham-Book.otf";
+
+	private final File cache;
+	private Font font = null;
+	private int hits = 0;
+	private int misses = 0;
+
+
+	public FrontendResources()
+	{
+		this(CACHE_DIRECTORY);
+	}
+
+	public FrontendResources(File cache)
+	{
+		this.cache = cache;
+	}
+
+
+	//read and registered once, the system's sans serif if it is missing
+	public synchronized Font font(float size)
+	{
+		if(font == null)
+		{
+			URL url = FrontendResources.class.getResource(FONT);
+			if(url != null)
+			{
+				try
+				{
+					InputStream in = url.openStream();
+					try
+					{
+						font = Font.createFont(Font.TRUETYPE_FONT, in);
+						GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
+					}
+					finally
+					{
+						in.close();
+					}
+				}
+				catch (IOException e) {e.printStackTrace();}
+				catch (FontFormatException e) {e.printStackTrace();}
+			}
+			if(font == null)
+			{
+				System.out.println("font " + FONT + " not on the classpath, using sans serif");
+				font = new Font(Font.SANS_SERIF, Font.PLAIN, 1);
+			}
+		}
+		return font.deriveFont(size);
+	}
+
+	//the picture ROOT + name scaled to width x height, null if it is not on the classpath
+	public synchronized BufferedImage image(String name, int width, int height)
+	{
+		URL url = FrontendResources.class.getResource(ROOT + name);
+		if(url == null)
+		{
+			System.out.println("picture " + ROOT + name + " not on the classpath");
+			return null;
+		}
+		try
+		{
+			URLConnection connection = url.openConnection();
+			File cached = new File(cache, String.format("%s_%dx%d_%x_%x.png", name.replace('/', '_'), width, height, connection.getContentLengthLong(), connection.getLastModified()));
+			InputStream in = connection.getInputStream();
+			try
+			{
+				if(cached.isFile())
+				{
+					BufferedImage image = ImageIO.read(cached);
+					if(image != null)
+					{
+						hits++;
+						return image;
+					}
+				}
+				misses++;
+				BufferedImage image = resize(ImageIO.read(in), width, height);
+				store(image, cached);
+				return image;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	//a cache that cannot be written only costs the scaling on the next start
+	private void store(BufferedImage image, File cached)
+	{
+		try
+		{
+			cache.mkdirs();
+			File temp = new File(cache, "." + cached.getName() + ".tmp");
+			ImageIO.write(image, "png", temp);
+			Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			System.out.println("picture cache " + cache + " not writable: " + e);
+		}
+	}
+
+	public static BufferedImage resize(BufferedImage img, int newW, int newH) {
+		Image tmp = img.getScaledInstance(newW, newH, Image.SCALE_SMOOTH);
+		BufferedImage dimg = new BufferedImage(newW, newH, BufferedImage.TYPE_INT_ARGB);
+
+		Graphics2D g2d = dimg.createGraphics();
+		g2d.drawImage(tmp, 0, 0, null);
+		g2d.dispose();
+
+		return dimg;
+	}
+
+	//pictures taken from the cache
+	public int getHits() {
+		return hits;
+	}
+
+	//pictures scaled, and cached for the next start
+	public int getMisses() {
+		return misses;
+	}
+}
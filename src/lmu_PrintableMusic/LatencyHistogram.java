@@ -0,0 +1,156 @@
+package lmu_PrintableMusic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Lock-free log-linear histogram of durations in ns: every power of two is split into
+//16 buckets, so a value is off by at most 1/16. Recording is one index computation
+//and one atomic increment, any thread may record while another one reads.
+public class LatencyHistogram
+{
+	private static final int SUB_BITS = 4;
+	private static final int SUB = 1 << SUB_BITS;
+	public static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+
+	public LatencyHistogram(String name)
+	{
+		this.name = name;
+	}
+
+
+	public void record(long nanos)
+	{
+		if(nanos < 0)
+		{
+			nanos = 0;
+		}
+		counts.incrementAndGet(index(nanos));
+
+		long m = max.get();
+		while(nanos > m && !max.compareAndSet(m, nanos))
+		{
+			m = max.get();
+		}
+	}
+
+	static int index(long value)
+	{
+		if(value < SUB)
+		{
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		return (exponent - SUB_BITS + 1) * SUB + (int) ((value >>> (exponent - SUB_BITS)) & (SUB - 1));
+	}
+
+	//the smallest value that lands in the bucket
+	static long lowest(int index)
+	{
+		if(index < SUB)
+		{
+			return index;
+		}
+		int exponent = index / SUB + SUB_BITS - 1;
+		return (long) (SUB + index % SUB) << (exponent - SUB_BITS);
+	}
+
+	//the largest one
+	static long highest(int index)
+	{
+		return index + 1 < BUCKETS ? lowest(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+	public Snapshot snapshot()
+	{
+		long[] c = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			c[i] = counts.get(i);
+		}
+		return new Snapshot(c, max.get());
+	}
+
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		max.set(0);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+
+	//a copy of the counts, taken while recording goes on
+	public static class Snapshot
+	{
+		private final long[] counts;
+		private final long max;
+		private final long total;
+
+		Snapshot(long[] counts, long max)
+		{
+			this.counts = counts;
+			long t = 0;
+			long highest = 0;
+			for(int i = 0; i < counts.length; i++)
+			{
+				t += counts[i];
+				if(counts[i] > 0)
+				{
+					highest = highest(i);
+				}
+			}
+			this.total = t;
+			//max can be ahead of the copied counts, or stem from before a delta
+			this.max = max > 0 ? Math.min(max, highest) : highest;
+		}
+
+		//what was recorded since the earlier snapshot
+		public Snapshot minus(Snapshot earlier)
+		{
+			long[] c = new long[counts.length];
+			for(int i = 0; i < c.length; i++)
+			{
+				c[i] = Math.max(0, counts[i] - earlier.counts[i]);
+			}
+			return new Snapshot(c, 0);
+		}
+
+		//upper end of the bucket holding the given fraction of the values, 0 if empty
+		public long percentile(double fraction)
+		{
+			if(total == 0)
+			{
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil(fraction * total));
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++)
+			{
+				seen += counts[i];
+				if(seen >= target)
+				{
+					return Math.min(highest(i), max);
+				}
+			}
+			return max;
+		}
+
+		public long getCount() {
+			return total;
+		}
+
+		public long getMax() {
+			return max;
+		}
+	}
+}
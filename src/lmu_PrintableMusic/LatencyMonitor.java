@@ -0,0 +1,232 @@
+package lmu_PrintableMusic;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+//Latency of a session's notes, all measured from the System.nanoTime() taken when
+//send() got the message:
+//  synth   until MidiSynthesizer.playSynth returned
+//  queue   how long the note waited in the ring (publish to drain)
+//  append  until the note was added to the sculpture
+//  disk    until the snapshot holding it was renamed into place by the publisher
+//Each one is a LatencyHistogram. They can be dumped as a table through JMX
+//(lmu_PrintableMusic:type=Latency), with Ctrl+L in the frontend, and with
+//-Dprintablemusic.latencyCsv=dir every interval is appended to a CSV of the session in
+//that directory, which is rolled over when it gets too big.
+//Measuring is off for every session with -Dprintablemusic.latency=off, or for one session
+//with setEnabled(false) on its monitor. Then the clock is read once per note-on for the
+//note's time, which the sculpture needs, and for nothing else.
+public class LatencyMonitor implements LatencyMonitorMBean
+{
+	public static final long DEFAULT_CSV_PERIOD = 10000; //ms
+	public static final long DEFAULT_CSV_SIZE = 1 << 20; //bytes
+
+	private static final boolean ON = !"off".equals(System.getProperty("printablemusic.latency"));
+	//where the sessions' CSVs go, none without
+	public static final String CSV_DIRECTORY = System.getProperty("printablemusic.latencyCsv");
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final LatencyHistogram synth = new LatencyHistogram("synth");
+	private final LatencyHistogram queue = new LatencyHistogram("queue");
+	private final LatencyHistogram append = new LatencyHistogram("append");
+	private final LatencyHistogram disk = new LatencyHistogram("disk");
+	private final LatencyHistogram[] all = {synth, queue, append, disk};
+
+	private volatile boolean enabled = ON;
+	private ObjectName objectName = null;
+	private ScheduledExecutorService csv = null;
+
+
+	//whether sessions measure unless they are told otherwise
+	public static boolean on()
+	{
+		return ON;
+	}
+
+	//the interval a note took up to now
+	private static long since(long sendNanos)
+	{
+		return System.nanoTime() - sendNanos;
+	}
+
+	//the synth is timed by the caller, who reads the clock anyway
+	public void synth(long playedNanos)
+	{
+		synth.record(playedNanos);
+	}
+
+	public void queue(long publishNanos, long drainNanos)
+	{
+		queue.record(drainNanos - publishNanos);
+	}
+
+	public void append(long sendNanos)
+	{
+		append.record(since(sendNanos));
+	}
+
+	public void disk(long sendNanos, long writtenNanos)
+	{
+		disk.record(writtenNanos - sendNanos);
+	}
+
+	@Override
+	public String dump()
+	{
+		StringBuilder table = new StringBuilder(String.format("%-8s %10s %10s %10s %10s %10s%n", "interval", "count", "p50 us", "p99 us", "p999 us", "max us"));
+		for(LatencyHistogram h : all)
+		{
+			LatencyHistogram.Snapshot s = h.snapshot();
+			table.append(String.format("%-8s %10d %10.1f %10.1f %10.1f %10.1f%n", h.getName(), s.getCount(),
+					s.percentile(0.5) / 1e3, s.percentile(0.99) / 1e3, s.percentile(0.999) / 1e3, s.getMax() / 1e3));
+		}
+		return table.toString();
+	}
+
+	@Override
+	public void reset()
+	{
+		for(LatencyHistogram h : all)
+		{
+			h.reset();
+		}
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	//this session only
+	@Override
+	public void setEnabled(boolean on)
+	{
+		enabled = on;
+	}
+
+	public LatencyHistogram[] getHistograms() {
+		return all.clone();
+	}
+
+	//synth, queue, append or disk
+	public LatencyHistogram getHistogram(String interval) {
+		for(LatencyHistogram h : all)
+		{
+			if(h.getName().equals(interval))
+			{
+				return h;
+			}
+		}
+		throw new IllegalArgumentException("no interval " + interval);
+	}
+
+	//makes the monitor visible to JMX clients under the session's name
+	public void register(String session)
+	{
+		try
+		{
+			objectName = new ObjectName("lmu_PrintableMusic:type=Latency,session=" + ObjectName.quote(session) + ",id=" + instances.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		}
+		catch (JMException e) {e.printStackTrace();}
+	}
+
+	//appends one row per interval every period to the file, which is moved to file.1 once it is larger than maxBytes
+	public synchronized void startCsv(final File file, long periodMillis, final long maxBytes)
+	{
+		stopCsv();
+		csv = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "latency-csv");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		csv.scheduleAtFixedRate(new Runnable()
+		{
+			private final LatencyHistogram.Snapshot[] previous = new LatencyHistogram.Snapshot[all.length];
+
+			@Override
+			public void run()
+			{
+				try
+				{
+					writeCsv(file, maxBytes, previous);
+				}
+				catch (IOException e) {e.printStackTrace();}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void writeCsv(File file, long maxBytes, LatencyHistogram.Snapshot[] previous) throws IOException
+	{
+		if(file.length() > maxBytes)
+		{
+			File old = new File(file.getPath() + ".1");
+			old.delete();
+			file.renameTo(old);
+		}
+		boolean header = !file.exists();
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		PrintWriter out = new PrintWriter(new FileWriter(file, true));
+		try
+		{
+			if(header)
+			{
+				out.println("time,interval,count,p50_us,p99_us,p999_us,max_us");
+			}
+			long now = System.currentTimeMillis();
+			for(int i = 0; i < all.length; i++)
+			{
+				LatencyHistogram.Snapshot current = all[i].snapshot();
+				LatencyHistogram.Snapshot delta = previous[i] == null ? current : current.minus(previous[i]);
+				previous[i] = current;
+				out.println(now + "," + all[i].getName() + "," + delta.getCount() + "," + delta.percentile(0.5) / 1e3 + ","
+						+ delta.percentile(0.99) / 1e3 + "," + delta.percentile(0.999) / 1e3 + "," + delta.getMax() / 1e3);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public synchronized void stopCsv()
+	{
+		if(csv != null)
+		{
+			csv.shutdown();
+			csv = null;
+		}
+	}
+
+	//stops the CSV and removes the monitor from JMX
+	public void close()
+	{
+		stopCsv();
+		if(objectName != null)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (JMException e) {e.printStackTrace();}
+			objectName = null;
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package lmu_PrintableMusic;
+
+//What JMX clients (jconsole, VisualVM) see of a session's LatencyMonitor.
+public interface LatencyMonitorMBean
+{
+	//p50, p99, p999 and max of every interval in us
+	public String dump();
+
+	public void reset();
+
+	public boolean isEnabled();
+
+	//measuring of this session only
+	public void setEnabled(boolean enabled);
+}
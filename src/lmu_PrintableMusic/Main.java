@@ -1,15 +1,57 @@
 package lmu_PrintableMusic;
 
+import java.io.IOException;
+
+import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
 
+import lmu_PrintableMusic_object.Sculpture;
+
 
 
 public class Main 
 {
 	public static void main(String[] args) throws MidiUnavailableException 
 	{
+		//recordings that were never saved for good, after a crash or a closed window
+		try 
+		{
+			int recovered = SessionJournal.recover(Sculpture.CURRENT_DIRECTORY, "recovered", Sculpture.CURRENT_DIRECTORY, Sculpture.MODEL_DIRECTORY);
+			if(recovered > 0)
+			{
+				System.out.println(recovered + " recordings that were never saved are saved now");
+			}
+		} 
+		catch (IOException e) {e.printStackTrace();}
+		
 		MidiHandler midi = new MidiHandler();
+		
+		//-Dprintablemusic.synthetic=chords:200 plays along without a keyboard, see SyntheticMidiDevice
+		String synthetic = System.getProperty("printablemusic.synthetic");
+		if(synthetic != null)
+		{
+			try 
+			{
+				midi.connect(SyntheticMidiDevice.fromSpec("Synthetic " + synthetic, synthetic));
+			} 
+			catch (InvalidMidiDataException e) {e.printStackTrace();} 
+			catch (IOException e) {e.printStackTrace();}
+		}
 		//Safety
+		
+		//without a window nothing else keeps the program running; Ctrl+C saves the sculptures
+		if(MidiHandler.HEADLESS)
+		{
+			System.out.println("headless, every keyboard records " + MidiHandler.HEADLESS_MODE.name().toLowerCase() + " sculptures; Ctrl+C saves them");
+			try 
+			{
+				while(true)
+				{
+					Thread.sleep(Long.MAX_VALUE);
+				}
+			} 
+			catch (InterruptedException e) {Thread.currentThread().interrupt();}
+		}
 	}	
 }
 
@@ -0,0 +1,194 @@
+package lmu_PrintableMusic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.Synthesizer;
+
+//Keyboards plugged in and pulled out while the program runs: a daemon thread lists the
+//MIDI devices every -Dprintablemusic.devicePoll ms (default 1000, 0 lists them only once)
+//and tells its listener about every input that came or went since the list before.
+//Sequencers, synthesizers and devices without transmitters are no keyboards and left out.
+//A device is told apart by its MidiDevice.Info instance, whose equality is identity, so two
+//keyboards of the same kind stay two and the one pulled out is the one that goes.
+public class MidiDeviceWatcher
+{
+	public static final long POLL_INTERVAL = Long.getLong("printablemusic.devicePoll", 1000);
+
+	public interface Listener
+	{
+		public void added(MidiDevice device);
+
+		public void removed(MidiDevice device);
+	}
+
+	private final Listener listener;
+	private final long interval;
+	//the inputs of the last list by their info, only touched in poll()
+	private final Map<MidiDevice.Info, MidiDevice> devices = new HashMap<>();
+	private Thread thread = null;
+	private long polls = 0;
+	private long pollNanos = 0;
+
+
+	public MidiDeviceWatcher(Listener listener)
+	{
+		this(listener, POLL_INTERVAL);
+	}
+
+	public MidiDeviceWatcher(Listener listener, long interval)
+	{
+		this.listener = listener;
+		this.interval = interval;
+	}
+
+
+	public synchronized void start()
+	{
+		if(thread != null || interval <= 0)
+		{
+			return;
+		}
+		thread = new Thread("midi devices")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while(!isInterrupted())
+					{
+						Thread.sleep(interval);
+						poll();
+					}
+				}
+				catch (InterruptedException e) {}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop()
+	{
+		if(thread != null)
+		{
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	//one comparison of the devices with the last list, on the calling thread
+	public synchronized void poll()
+	{
+		long start = System.nanoTime();
+		Set<MidiDevice.Info> present = new HashSet<>(Arrays.asList(list()));
+
+		List<MidiDevice> gone = new ArrayList<>();
+		Iterator<Map.Entry<MidiDevice.Info, MidiDevice>> known = devices.entrySet().iterator();
+		while(known.hasNext())
+		{
+			Map.Entry<MidiDevice.Info, MidiDevice> entry = known.next();
+			if(!present.contains(entry.getKey()))
+			{
+				gone.add(entry.getValue());
+				known.remove();
+			}
+		}
+		List<MidiDevice> come = new ArrayList<>();
+		for(MidiDevice.Info info : present)
+		{
+			if(!devices.containsKey(info))
+			{
+				MidiDevice device = input(info);
+				//remembered either way, so something that is no keyboard is not asked again
+				devices.put(info, device);
+				if(device != null)
+				{
+					come.add(device);
+				}
+			}
+		}
+		polls++;
+		pollNanos += System.nanoTime() - start;
+
+		for(MidiDevice device : gone)
+		{
+			if(device != null)
+			{
+				listener.removed(device);
+			}
+		}
+		for(MidiDevice device : come)
+		{
+			listener.added(device);
+		}
+	}
+
+	//the devices there are now
+	protected MidiDevice.Info[] list()
+	{
+		return MidiSystem.getMidiDeviceInfo();
+	}
+
+	protected MidiDevice device(MidiDevice.Info info) throws MidiUnavailableException
+	{
+		return MidiSystem.getMidiDevice(info);
+	}
+
+	//the device if it is a keyboard, otherwise null
+	private MidiDevice input(MidiDevice.Info info)
+	{
+		if(info.getName().contains("Real Time Sequencer"))
+		{
+			return null;
+		}
+		try
+		{
+			MidiDevice device = device(info);
+			if(device instanceof Sequencer || device instanceof Synthesizer || device.getMaxTransmitters() == 0)
+			{
+				return null;
+			}
+			return device;
+		}
+		catch (MidiUnavailableException | IllegalArgumentException e)
+		{
+			System.out.println("MIDI device " + info + " not available: " + e.getMessage());
+			return null;
+		}
+	}
+
+	//the keyboards of the last list
+	public synchronized int getDeviceCount()
+	{
+		int count = 0;
+		for(MidiDevice device : devices.values())
+		{
+			if(device != null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public synchronized long getPolls() {
+		return polls;
+	}
+
+	//ns a list and its comparison took on average, without the listener
+	public synchronized double getMeanPollTime() {
+		return polls == 0 ? 0 : (double) pollNanos / polls;
+	}
+}
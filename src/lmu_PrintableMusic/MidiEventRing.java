@@ -0,0 +1,171 @@
+package lmu_PrintableMusic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Preallocated single-producer/single-consumer ring of MIDI events.
+//Every event takes two longs: status, data1 and data2 packed into the first,
+//the System.nanoTime() of its arrival in the second. The upper 40 bits of the first
+//may carry how many ns after its arrival the event was published, for the latency.
+//The producer (the MIDI transmitter thread) publishes in constant time without
+//allocating, the consumer drains in batches.
+public class MidiEventRing
+{
+	public enum Overflow
+	{
+		DROP_OLDEST, DROP_NEWEST, BLOCK
+	}
+
+	private static final long MAX_DELAY = (1L << 40) - 1;
+
+	private final long[] events;
+	private final int capacity;
+	private final int mask;
+	private final Overflow overflow;
+	private final long blockTimeout; //ns
+
+	//head is only written by the producer; tail by the consumer and,
+	//with DROP_OLDEST, by the producer too, so it is moved with CAS
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicLong overflows = new AtomicLong();
+
+
+	public MidiEventRing(int capacity, Overflow overflow, long blockTimeoutMillis)
+	{
+		if(Integer.bitCount(capacity) != 1)
+		{
+			throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+		}
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.events = new long[capacity * 2];
+		this.overflow = overflow;
+		this.blockTimeout = blockTimeoutMillis * 1000000L;
+	}
+
+
+	public boolean publish(int status, int data1, int data2, long nanos)
+	{
+		return publish(status, data1, data2, nanos, 0);
+	}
+
+	public boolean publish(int status, int data1, int data2, long nanos, long delay)
+	{
+		long h = head.get();
+		long deadline = 0;
+
+		while(h - tail.get() >= capacity)
+		{
+			if(overflow == Overflow.DROP_NEWEST)
+			{
+				overflows.incrementAndGet();
+				return false;
+			}
+			else if(overflow == Overflow.DROP_OLDEST)
+			{
+				long t = tail.get();
+				if(h - t >= capacity && tail.compareAndSet(t, t + 1))
+				{
+					overflows.incrementAndGet();
+				}
+			}
+			else
+			{
+				long now = System.nanoTime();
+				if(deadline == 0)
+				{
+					deadline = now + blockTimeout;
+				}
+				else if(now - deadline > 0)
+				{
+					overflows.incrementAndGet();
+					return false;
+				}
+				LockSupport.parkNanos(50000);
+			}
+		}
+
+		int i = (int) (h & mask) << 1;
+		events[i] = pack(status, data1, data2) | (Math.min(Math.max(delay, 0), MAX_DELAY) << 24);
+		events[i + 1] = nanos;
+		head.lazySet(h + 1);
+		return true;
+	}
+
+	//copies up to max events into batch (two longs each) and returns how many
+	public int drain(long[] batch, int max)
+	{
+		max = Math.min(max, batch.length / 2);
+		while(true)
+		{
+			long t = tail.get();
+			int n = (int) Math.min(head.get() - t, max);
+			if(n <= 0)
+			{
+				return 0;
+			}
+
+			for(int k = 0; k < n; k++)
+			{
+				int i = (int) ((t + k) & mask) << 1;
+				batch[k * 2] = events[i];
+				batch[k * 2 + 1] = events[i + 1];
+			}
+
+			//fails only if the producer dropped the oldest events meanwhile
+			if(tail.compareAndSet(t, t + n))
+			{
+				return n;
+			}
+		}
+	}
+
+	public static long pack(int status, int data1, int data2)
+	{
+		return ((status & 0xFF) << 16) | ((data1 & 0xFF) << 8) | (data2 & 0xFF);
+	}
+
+	public static int status(long event)
+	{
+		return (int) (event >>> 16) & 0xFF;
+	}
+
+	public static int data1(long event)
+	{
+		return (int) (event >>> 8) & 0xFF;
+	}
+
+	public static int data2(long event)
+	{
+		return (int) event & 0xFF;
+	}
+
+	//ns between the arrival and the publishing of the event
+	public static long delay(long event)
+	{
+		return event >>> 24;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getOccupancy() {
+		return (int) Math.max(0, head.get() - tail.get());
+	}
+
+	public long getOverflows() {
+		return overflows.get();
+	}
+
+	//number of events ever published
+	public long getPublished() {
+		return head.get();
+	}
+
+	//number of events drained or dropped
+	public long getConsumed() {
+		return tail.get();
+	}
+}
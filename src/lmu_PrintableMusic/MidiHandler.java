@@ -2,7 +2,12 @@ package lmu_PrintableMusic;
 
 
 
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sound.midi.Instrument;
 import javax.sound.midi.MidiChannel;
@@ -19,68 +24,191 @@ import javax.sound.midi.VoiceStatus;
 
 import lmu_PrintableMusic_object.ModelCube;
 import lmu_PrintableMusic_object.ModelPrism;
-
-public class MidiHandler implements Synthesizer
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Connects every MIDI input to its own recording, the ones there at the start and, through a
+//MidiDeviceWatcher, the ones plugged in later; a keyboard pulled out has its recording saved.
+//All keyboards play on one synthesizer, each on the channel of its device id.
+//Headless, nothing of the frontend is loaded and every keyboard records
+//-Dprintablemusic.mode (cube, prism or voxel; default cube) from the start.
+//-Dprintablemusic.headless=true|false, by default headless where there is no display.
+public class MidiHandler implements Synthesizer, MidiDeviceWatcher.Listener
 {
+	public static final boolean HEADLESS = System.getProperty("printablemusic.headless") != null ? Boolean.getBoolean("printablemusic.headless") : GraphicsEnvironment.isHeadless();
+	public static final SculptureMode HEADLESS_MODE = SculptureMode.valueOf(System.getProperty("printablemusic.mode", "cube").toUpperCase());
+	
+	private final MidiSynthesizer synth = new MidiSynthesizer();
+	private final MidiDeviceWatcher watcher;
+	//the receiver of every device connected and not pulled out yet
+	private final Map<MidiDevice, MidiInputReceiver> connected = new HashMap<>();
+	private int devices = 0;
+	private File currentDirectory = Sculpture.CURRENT_DIRECTORY;
+	private File modelDirectory = Sculpture.MODEL_DIRECTORY;
 	
 	public MidiHandler()
-    {
-        MidiDevice device;
-        MidiDevice.Info[] infos = MidiSystem.getMidiDeviceInfo();
-        for (int i = 0; i < infos.length; i++) {
-            try {
-            device = MidiSystem.getMidiDevice(infos[i]);
-            //does the device have any transmitters?
-            //if it does, add it to the device list
-            //System.out.println(infos[i]);
-
-            //get all transmitters
-            List<Transmitter> transmitters = device.getTransmitters();
-            //and for each transmitter
-            //System.out.println("for transmitters");
-
-            /*
-             * 
-            for(int j = 0; j<transmitters.size();j++) 
-            {
-            	System.out.println("Here: " + device.getDeviceInfo().toString());
-                //create a new receiver
-            	MidiInputReceiver receiver = new MidiInputReceiver(device.getDeviceInfo().toString());
-            	//System.out.println("init Synth");
-            	receiver.initSynth();
-            	receiver.initFrontend();
-            	
-            	transmitters.get(j).setReceiver(receiver);
-            }
-             */
-            
-            if(!device.getDeviceInfo().toString().contains("Real Time Sequencer"))
-            {
-
-                Transmitter trans = device.getTransmitter();
-                
-                MidiInputReceiver receiver = new MidiInputReceiver(device.getDeviceInfo().toString());
-            	//System.out.println("init Synth");
-            	receiver.initSynth();
-            	receiver.initFrontend();
-                trans.setReceiver(receiver);
-               
-                
-                
-
-                //open each device
-                device.open();
-                //if code gets this far without throwing an exception
-                //print a success message
-               
-            	
-            }
-
-
-        } catch (MidiUnavailableException e) {}
-    }
-
-    }
+	{
+		this(MidiDeviceWatcher.POLL_INTERVAL);
+	}
+	
+	//the devices there now are connected before the constructor returns, then every pollInterval ms (0 never) the watcher looks again
+	public MidiHandler(long pollInterval)
+	{
+		watcher = new MidiDeviceWatcher(this, pollInterval);
+		watcher.poll();
+		watcher.start();
+	}
+
+	@Override
+	public void added(MidiDevice device)
+	{
+		try
+		{
+			connect(device);
+		}
+		catch (MidiUnavailableException e)
+		{
+			System.out.println(device.getDeviceInfo() + " could not be connected: " + e.getMessage());
+		}
+	}
+
+	//saves what the keyboard recorded, it can be plugged in again for a new recording
+	@Override
+	public void removed(MidiDevice device)
+	{
+		disconnect(device);
+	}
+
+	//gives the device a receiver and a recording of its own, its own channel of the shared synth and
+	//its column of the frontend, and opens it; hardware found by the watcher and stand-ins like
+	//SyntheticMidiDevice go the same way
+	public MidiInputReceiver connect(MidiDevice device) throws MidiUnavailableException
+	{
+		String name = device.getDeviceInfo().toString();
+		return connect(device, new SculptureSession(name, currentDirectory, modelDirectory));
+	}
+	
+	public MidiInputReceiver connect(MidiDevice device, SculptureSession session) throws MidiUnavailableException
+	{
+		Transmitter trans;
+		try
+		{
+			trans = device.getTransmitter();
+		}
+		catch (MidiUnavailableException e)
+		{
+			//no input after all, the session goes with it
+			session.close();
+			throw e;
+		}
+		
+		MidiInputReceiver receiver;
+		synchronized(connected)
+		{
+			receiver = new MidiInputReceiver(session, synth, devices++);
+			connected.put(device, receiver);
+		}
+		try
+		{
+			synth.initSynth();
+		}
+		catch (MidiUnavailableException e)
+		{
+			//no sound card is no reason not to record
+			System.out.println(session.getName() + ": no synthesizer, playing silently (" + e.getMessage() + ")");
+		}
+		if(HEADLESS)
+		{
+			record(receiver);
+		}
+		else
+		{
+			receiver.initFrontend();
+		}
+		trans.setReceiver(receiver);
+		
+		//open each device
+		device.open();
+		return receiver;
+	}
+	
+	//closes the device, silences its channel, saves its recording and takes away its column; null if it was not connected
+	public MidiInputReceiver disconnect(MidiDevice device)
+	{
+		MidiInputReceiver receiver;
+		synchronized(connected)
+		{
+			receiver = connected.remove(device);
+		}
+		if(receiver == null)
+		{
+			return null;
+		}
+		device.close();
+		receiver.close();
+		SculptureSession session = receiver.getSession();
+		if(session.isRecording())
+		{
+			receiver.safeSculpture();
+		}
+		session.close();
+		if(!HEADLESS)
+		{
+			Frontend.shared().remove(receiver);
+		}
+		return receiver;
+	}
+	
+	//without buttons the recording starts right away and is saved for good when the program ends
+	private static void record(final MidiInputReceiver receiver)
+	{
+		receiver.setMode(HEADLESS_MODE);
+		receiver.startRecording();
+		Runtime.getRuntime().addShutdownHook(new Thread("save " + receiver.name)
+		{
+			@Override
+			public void run()
+			{
+				//unless the keyboard was pulled out and saved already
+				if(receiver.getSession().isRecording())
+				{
+					receiver.safeSculpture();
+				}
+				receiver.getSession().close();
+			}
+		});
+	}
+
+	//where the recordings of the devices connected from now on go, by default Sculpture's directories
+	public void setDirectories(File currentDirectory, File modelDirectory)
+	{
+		this.currentDirectory = currentDirectory;
+		this.modelDirectory = modelDirectory;
+	}
+
+	//the receivers of the devices connected now
+	public List<MidiInputReceiver> getConnected() {
+		synchronized(connected)
+		{
+			return new ArrayList<>(connected.values());
+		}
+	}
+
+	//null if the device is not connected
+	public MidiInputReceiver getReceiver(MidiDevice device) {
+		synchronized(connected)
+		{
+			return connected.get(device);
+		}
+	}
+
+	public MidiSynthesizer getSynth() {
+		return synth;
+	}
+
+	public MidiDeviceWatcher getWatcher() {
+		return watcher;
+	}
 
 	@Override
 	public void close() {
@@ -5,55 +5,88 @@ import javax.sound.midi.Instrument;
 import javax.sound.midi.MidiChannel;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
-import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Synthesizer;
 
 
+//One synthesizer and its soundbank for as many keyboards as there are: every keyboard
+//plays on a channel of its own, so one letting go of a key does not stop the same key
+//on another. A keyboard with the synthesizer to itself plays on channel 5.
 public class MidiSynthesizer
 {
+	public static final int CHANNEL = 5;
+	//in the order the keyboards come, without the drums on 9
+	private static final int[] CHANNELS = {5, 6, 7, 8, 10, 11, 12, 13, 14, 15, 0, 1, 2, 3, 4};
+
 	Synthesizer synth = null;
 	MidiChannel[] mc = null;
 	Instrument[] instr = null;
-	
 
-	
-	public void initSynth() throws MidiUnavailableException
+
+
+	//opens the synthesizer the first time, after that it is already there
+	public synchronized void initSynth() throws MidiUnavailableException
 	{
-		
+		if(mc != null)
+		{
+			return;
+		}
+
 		synth = MidiSystem.getSynthesizer();
 		synth.open();
-		
-		
-		mc = synth.getChannels();
-		//System.out.println(mc);
-		
-		
+
+
 		instr = synth.getDefaultSoundbank().getInstruments();
 		synth.loadInstrument(instr[90]);
-		
+
+		mc = synth.getChannels();
+		//System.out.println(mc);
 	}
-	
-	public void playSynth(ShortMessage answer, long timeStamp)
+
+	//the channel of the keyboard with the given id, 15 of them before they repeat
+	public static int channel(int device)
 	{
-		//System.out.println(mc);
-		mc[5].noteOn(answer.getData1(),answer.getData2());
+		return CHANNELS[device % CHANNELS.length];
 	}
-	
-	public void stopSynth(ShortMessage answer, long timeStamp)
+
+	//without initSynth() the notes stay silent
+	public void playSynth(int pitch, int velocity)
+	{
+		playSynth(CHANNEL, pitch, velocity);
+	}
+
+	public void playSynth(int channel, int pitch, int velocity)
 	{
 		//System.out.println(mc);
-		mc[5].noteOff(answer.getData1(),answer.getData2());
+		if(mc != null)
+		{
+			mc[channel].noteOn(pitch, velocity);
+		}
 	}
-	
 
-	
-	
-	
-	
-	
-		
-	
+	public void stopSynth(int pitch, int velocity)
+	{
+		stopSynth(CHANNEL, pitch, velocity);
+	}
 
-	
+	public void stopSynth(int channel, int pitch, int velocity)
+	{
+		//System.out.println(mc);
+		if(mc != null)
+		{
+			mc[channel].noteOff(pitch, velocity);
+		}
+	}
+
+	//a keyboard pulled out in the middle of a note leaves nothing hanging
+	public void stopAll(int channel)
+	{
+		if(mc != null)
+		{
+			mc[channel].allNotesOff();
+		}
+	}
 
+	public boolean isOpen() {
+		return mc != null;
+	}
 }
@@ -0,0 +1,197 @@
+package lmu_PrintableMusic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lmu_PrintableMusic_object.GcodeStream;
+import lmu_PrintableMusic_object.ModelFiles;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+import lmu_PrintableMusic_object.SnapshotPublisher;
+
+//One recording: its own ring, its own writer thread and its own sculpture, nothing shared.
+//The MIDI thread feeding the session is the ring's only producer and the writer thread
+//the only one touching the sculpture, so sessions run side by side without locks.
+//Every recording is journaled next to the live preview until it is saved for good, then
+//the journal is deleted. A prism recording is printed on the G-code stream the session
+//opens for it, if one is configured and no other session prints there.
+//Sessions may share their directories, even their names when two keyboards are of the same
+//kind: every file a session writes carries its file name, the name and a number of its own.
+public class SculptureSession
+{
+	public static final int DEFAULT_RING_CAPACITY = 1024;
+
+	private static final AtomicInteger sessions = new AtomicInteger();
+
+	private final String name;
+	private final String fileName;
+	private final File currentDirectory;
+	private final File modelDirectory;
+	private final MidiEventRing ring;
+	private final SculptureWriter writer;
+
+	private volatile SculptureMode mode = null;
+	private volatile boolean recording = false;
+	private volatile SessionJournal journal = null;
+	//of the current recording; the sculpture closes it once saved, the session if it is left unsaved
+	private volatile GcodeStream gcode = null;
+	private boolean journaling = true;
+
+
+	public SculptureSession(String name, File currentDirectory, File modelDirectory)
+	{
+		this(name, currentDirectory, modelDirectory, new MidiEventRing(DEFAULT_RING_CAPACITY, MidiEventRing.Overflow.DROP_NEWEST, 0), SculptureWriter.DEFAULT_MIN_WRITE_INTERVAL);
+	}
+
+	public SculptureSession(String name, File currentDirectory, File modelDirectory, MidiEventRing ring, long minWriteInterval)
+	{
+		this.name = name;
+		this.fileName = ModelFiles.safe(name) + "_" + sessions.incrementAndGet();
+		this.currentDirectory = currentDirectory;
+		this.modelDirectory = modelDirectory;
+		this.ring = ring;
+		this.writer = new SculptureWriter(ring, minWriteInterval);
+		writer.setPublisher(getPublisher());
+		writer.start();
+
+		if(LatencyMonitor.on())
+		{
+			writer.getLatency().register(name);
+			if(LatencyMonitor.CSV_DIRECTORY != null)
+			{
+				writer.getLatency().startCsv(new File(LatencyMonitor.CSV_DIRECTORY, "latency_" + fileName + ".csv"), LatencyMonitor.DEFAULT_CSV_PERIOD, LatencyMonitor.DEFAULT_CSV_SIZE);
+			}
+		}
+	}
+
+
+	//called on the MIDI thread, constant time; nanos is when send() got the message
+	public boolean noteOn(int status, int pitch, int velocity, long nanos)
+	{
+		return noteOn(status, pitch, velocity, nanos, 0);
+	}
+
+	//delay is how long after nanos the note is published, for the latency of the queue
+	public boolean noteOn(int status, int pitch, int velocity, long nanos, long delay)
+	{
+		if(!recording)
+		{
+			return false;
+		}
+		//the writer journals the note when it adds it to the sculpture
+		return ring.publish(status, pitch, velocity, nanos, delay);
+	}
+
+	public void setMode(SculptureMode mode)
+	{
+		this.mode = mode;
+	}
+
+	public void startRecording()
+	{
+		//refresh modells:
+		journal = null;
+		if(journaling)
+		{
+			try
+			{
+				journal = SessionJournal.create(currentDirectory, fileName, mode);
+			}
+			catch (IOException e) {e.printStackTrace();}
+		}
+		Sculpture sculpture = mode.create(fileName, currentDirectory, modelDirectory);
+		closeGcode();
+		if(sculpture instanceof ModelPrism)
+		{
+			try
+			{
+				gcode = GcodeStream.configured(fileName);
+				((ModelPrism) sculpture).setGcode(gcode);
+			}
+			catch (IOException e) {e.printStackTrace();}
+		}
+		writer.begin(sculpture, journal);
+		recording = true;
+	}
+
+	public void safeSculpture()
+	{
+		recording = false;
+		writer.finish();
+	}
+
+	//writes what is still pending and stops the writer thread
+	public void close()
+	{
+		recording = false;
+		writer.close();
+		writer.getLatency().close();
+		closeGcode();
+	}
+
+	//the printer is free for another session
+	private void closeGcode()
+	{
+		GcodeStream stream = gcode;
+		gcode = null;
+		if(stream != null)
+		{
+			try
+			{
+				stream.close();
+			}
+			catch (IOException e) {e.printStackTrace();}
+		}
+	}
+
+	//journal every recording for crash recovery (default on), takes effect with the next one
+	public void setJournaling(boolean journaling)
+	{
+		this.journaling = journaling;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	//the name and number of the session in the files it writes
+	public String getFileName() {
+		return fileName;
+	}
+
+	public SculptureMode getMode() {
+		return mode;
+	}
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	public SessionJournal getJournal() {
+		return journal;
+	}
+
+	//of the current prism recording, null if none is printed
+	public GcodeStream getGcode() {
+		return gcode;
+	}
+
+	public LatencyMonitor getLatency() {
+		return writer.getLatency();
+	}
+
+	public MidiEventRing getRing() {
+		return ring;
+	}
+
+	//publishes the live previews of this session's directory, this session's under its file name
+	public SnapshotPublisher getPublisher() {
+		return SnapshotPublisher.forDirectory(currentDirectory);
+	}
+
+	public SculptureWriter getWriter() {
+		return writer;
+	}
+}
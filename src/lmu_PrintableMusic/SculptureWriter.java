@@ -0,0 +1,436 @@
+package lmu_PrintableMusic;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import lmu_PrintableMusic_object.BoundingBox;
+import lmu_PrintableMusic_object.PrinterBed;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SnapshotPublisher;
+
+//Owns the sculpture on a background thread, so the MIDI thread only publishes notes
+//into the ring and never waits for the disk. The notes are drained in batches;
+//snapshots that pile up while a write is running are merged into the next one,
+//so at most one write is in flight. Notes arriving within the batch window of the
+//first one (a chord) always go into the same snapshot; in adaptive mode the window
+//widens while notes keep coming right after a write and narrows again when it gets
+//quiet. The notes are still added one by one, only the writes are fewer. Every note added
+//is appended to the journal, whose next segment is mapped ahead between the batches; once
+//the final model is written the journal is finished and deleted.
+//After every snapshot it checks the sculpture's bounding box against the printer bed,
+//getFit() tells whether it still fits.
+public class SculptureWriter implements Runnable
+{
+	public static final long DEFAULT_MIN_WRITE_INTERVAL = 50; //ms
+	public static final int BATCH = 256;
+	public static final long DEFAULT_BATCH_WINDOW = 10; //ms
+	public static final long DEFAULT_MAX_BATCH_WINDOW = 100; //ms
+	//snapshots by notes: 1, 2, 3-4, 5-8, ... up to 2048 and more
+	public static final int HISTOGRAM_BUCKETS = 12;
+
+	private static final long IDLE_WAIT = 1000000; //ns
+
+	private static final int BEGIN = 1;
+	private static final int FINISH = 2;
+
+	private final MidiEventRing ring;
+	private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+	private final long minWriteInterval;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	private final AtomicLong mergedSnapshots = new AtomicLong();
+	private final AtomicLong writtenSnapshots = new AtomicLong();
+	private final AtomicLongArray batchSizes = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	private final AtomicLong maxBatchSize = new AtomicLong();
+	private final LatencyMonitor latency = new LatencyMonitor();
+	//the disk latency of a note ends when this publisher has renamed its snapshot into place
+	private volatile SnapshotPublisher publisher = null;
+
+	//ns; window is what adaptive mode moves between minWindow and maxWindow
+	private volatile long minWindow = DEFAULT_BATCH_WINDOW * 1000000;
+	private volatile long maxWindow = DEFAULT_MAX_BATCH_WINDOW * 1000000;
+	private volatile long window = minWindow;
+	private volatile boolean adaptive = false;
+
+	//the largest scale the current sculpture would fit the bed at, 1 and more if it fits
+	private volatile double fitScale = Double.POSITIVE_INFINITY;
+	private volatile String size = "";
+
+	//only touched by the writer thread
+	private final long[] batch = new long[BATCH * 2];
+	private Sculpture sculpture = null;
+	private SessionJournal journal = null;
+	private int pendingNotes = 0;
+	//send() times of the pending notes, while latency is measured
+	private long[] pendingSends = new long[BATCH];
+	private int timedNotes = 0;
+	private long lastWrite = 0;
+	//arrival of the first note of the open batch, and when the last batch was written, in ns
+	private long batchStart = 0;
+	private long batchEnd = 0;
+
+
+	public SculptureWriter(MidiEventRing ring)
+	{
+		this(ring, DEFAULT_MIN_WRITE_INTERVAL);
+	}
+
+	public SculptureWriter(MidiEventRing ring, long minWriteInterval)
+	{
+		this.ring = ring;
+		this.minWriteInterval = minWriteInterval;
+
+		thread = new Thread(this, "sculpture-writer");
+		thread.setDaemon(true);
+	}
+
+	public void start()
+	{
+		thread.start();
+	}
+
+	//starts a new sculpture, from here on it belongs to the writer thread
+	public void begin(Sculpture sculpture)
+	{
+		begin(sculpture, null);
+	}
+
+	public void begin(Sculpture sculpture, SessionJournal journal)
+	{
+		commands.add(new Command(BEGIN, sculpture, journal, ring.getPublished()));
+	}
+
+	//writes the final model of the current sculpture, after all notes published so far
+	public void finish()
+	{
+		commands.add(new Command(FINISH, null, null, ring.getPublished()));
+	}
+
+	public void close()
+	{
+		running = false;
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//notes within this many ms of the first one go into the same snapshot, 0 writes as soon as possible
+	public void setBatchWindow(long millis)
+	{
+		minWindow = millis * 1000000;
+		window = minWindow;
+	}
+
+	//lets the window grow up to the given ms under sustained load
+	public void setAdaptive(boolean adaptive, long maxWindowMillis)
+	{
+		this.adaptive = adaptive;
+		maxWindow = Math.max(minWindow, maxWindowMillis * 1000000);
+		window = minWindow;
+	}
+
+	//the publisher of the sculptures' previews, without one the disk latency ends when safeModel() returns
+	public void setPublisher(SnapshotPublisher publisher)
+	{
+		this.publisher = publisher;
+	}
+
+	public LatencyMonitor getLatency() {
+		return latency;
+	}
+
+	public MidiEventRing getRing() {
+		return ring;
+	}
+
+	public long getDroppedEvents() {
+		return ring.getOverflows();
+	}
+
+	public long getMergedSnapshots() {
+		return mergedSnapshots.get();
+	}
+
+	public long getWrittenSnapshots() {
+		return writtenSnapshots.get();
+	}
+
+	public long[] getBatchSizeHistogram() {
+		long[] histogram = new long[HISTOGRAM_BUCKETS];
+		for(int i = 0; i < HISTOGRAM_BUCKETS; i++)
+		{
+			histogram[i] = batchSizes.get(i);
+		}
+		return histogram;
+	}
+
+	public long getMaxBatchSize() {
+		return maxBatchSize.get();
+	}
+
+	public double getMeanBatchSize() {
+		long written = writtenSnapshots.get();
+		return written == 0 ? 0 : (double) (written + mergedSnapshots.get()) / written;
+	}
+
+	public boolean isFitting() {
+		return fitScale >= 1;
+	}
+
+	public double getFitScale() {
+		return fitScale;
+	}
+
+	//of the current sculpture and whether it fits the bed
+	public String getFit() {
+		return size + " on a " + PrinterBed.CONFIGURED + " bed, " + (isFitting() ? "fits" : "does not fit, " + printedAt(fitScale));
+	}
+
+	//the current window in ms, in adaptive mode it changes with the load
+	public double getBatchWindow() {
+		return window / 1e6;
+	}
+
+	@Override
+	public void run()
+	{
+		while(running || !commands.isEmpty() || ring.getOccupancy() > 0)
+		{
+			try
+			{
+				Command c = commands.peek();
+				while(c != null)
+				{
+					//the notes published before the command belong to the old sculpture
+					drain(c.sequence);
+					commands.poll();
+					handle(c);
+					c = commands.peek();
+				}
+
+				if(journal != null)
+				{
+					journal.prepare();
+				}
+
+				int drained = drain(Long.MAX_VALUE);
+
+				if(pendingNotes > 0 && System.nanoTime() - batchStart >= window && System.currentTimeMillis() - lastWrite >= minWriteInterval)
+				{
+					writeSnapshot();
+				}
+				else if(drained == 0)
+				{
+					LockSupport.parkNanos(IDLE_WAIT);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				//a broken model must not kill the writer
+				e.printStackTrace();
+			}
+		}
+
+		if(pendingNotes > 0)
+		{
+			writeSnapshot();
+		}
+		//nothing of the preview may follow once the writer is gone
+		if(sculpture != null)
+		{
+			sculpture.closeSnapshot();
+		}
+	}
+
+	//applies the events up to the given ring sequence
+	private int drain(long sequence)
+	{
+		int total = 0;
+		long left = sequence - ring.getConsumed();
+		while(left > 0)
+		{
+			int n = ring.drain(batch, (int) Math.min(left, BATCH));
+			if(n == 0)
+			{
+				break;
+			}
+
+			boolean timing = latency.isEnabled();
+			long drained = timing ? System.nanoTime() : 0;
+			for(int k = 0; k < n; k++)
+			{
+				long event = batch[k * 2];
+				if(sculpture != null && (MidiEventRing.status(event) & 0xF0) == 0x90)
+				{
+					if(pendingNotes == 0)
+					{
+						open(batch[k * 2 + 1]);
+					}
+					sculpture.addNote(MidiEventRing.data1(event), MidiEventRing.data2(event), batch[k * 2 + 1]);
+					if(journal != null)
+					{
+						journal.append(MidiEventRing.status(event), MidiEventRing.data1(event), MidiEventRing.data2(event), batch[k * 2 + 1]);
+					}
+					pendingNotes++;
+					if(timing)
+					{
+						time(batch[k * 2 + 1], MidiEventRing.delay(event), drained);
+					}
+				}
+			}
+			total += n;
+			left = sequence - ring.getConsumed();
+		}
+		return total;
+	}
+
+	private void handle(Command c)
+	{
+		if(c.kind == BEGIN)
+		{
+			sculpture = c.sculpture;
+			journal = c.journal;
+			pendingNotes = 0;
+			timedNotes = 0;
+			fitScale = Double.POSITIVE_INFINITY;
+			size = "";
+		}
+		else if(c.kind == FINISH)
+		{
+			boolean saved = false;
+			if(sculpture != null)
+			{
+				if(pendingNotes > 0)
+				{
+					writeSnapshot();
+				}
+				saved = sculpture.safeForGood();
+			}
+			//only now the journal is no longer needed for recovery
+			if(journal != null)
+			{
+				journal.finish();
+				if(saved)
+				{
+					journal.delete();
+				}
+			}
+			sculpture = null;
+			journal = null;
+		}
+	}
+
+	private void time(long send, long delay, long drained)
+	{
+		latency.queue(send + delay, drained);
+		latency.append(send);
+		if(timedNotes == pendingSends.length)
+		{
+			pendingSends = Arrays.copyOf(pendingSends, timedNotes * 2);
+		}
+		pendingSends[timedNotes++] = send;
+	}
+
+	//the first note of a batch arrived at the given System.nanoTime()
+	private void open(long nanos)
+	{
+		batchStart = nanos;
+		if(adaptive && batchEnd != 0)
+		{
+			long gap = nanos - batchEnd;
+			if(gap < window)
+			{
+				//the next notes were already waiting, wider batches
+				window = Math.min(maxWindow, Math.max(window + window / 2, 1000000));
+			}
+			else if(gap > 4 * window)
+			{
+				window = Math.max(minWindow, window / 2);
+			}
+		}
+	}
+
+	private void writeSnapshot()
+	{
+		sculpture.safeModel();
+		checkFit();
+		if(timedNotes > 0)
+		{
+			//the publisher may hold the snapshot back until the end of its interval
+			final long[] sends = Arrays.copyOf(pendingSends, timedNotes);
+			SnapshotPublisher.Published published = new SnapshotPublisher.Published()
+			{
+				@Override
+				public void published(long nanos)
+				{
+					for(long send : sends)
+					{
+						latency.disk(send, nanos);
+					}
+				}
+			};
+			if(publisher != null)
+			{
+				publisher.whenPublished(published);
+			}
+			else
+			{
+				published.published(System.nanoTime());
+			}
+			timedNotes = 0;
+		}
+
+		writtenSnapshots.incrementAndGet();
+		mergedSnapshots.addAndGet(pendingNotes - 1);
+		batchSizes.incrementAndGet(Math.min(HISTOGRAM_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(pendingNotes - 1)));
+		long max = maxBatchSize.get();
+		while(pendingNotes > max && !maxBatchSize.compareAndSet(max, pendingNotes))
+		{
+			max = maxBatchSize.get();
+		}
+		pendingNotes = 0;
+		lastWrite = System.currentTimeMillis();
+		batchEnd = System.nanoTime();
+	}
+
+
+	//constant time, the box is kept up to date by the sculpture
+	private void checkFit()
+	{
+		BoundingBox bounds = sculpture.getBounds();
+		size = bounds.toString();
+		fitScale = PrinterBed.CONFIGURED.scale(bounds);
+	}
+
+	private static String printedAt(double scale)
+	{
+		return PrinterBed.FIT ? String.format("printed at %.0f%%", 100 * scale) : "printed at full size (fitting is off)";
+	}
+
+
+	private static class Command
+	{
+		final int kind;
+		final Sculpture sculpture;
+		final SessionJournal journal;
+		final long sequence;
+
+		Command(int kind, Sculpture sculpture, SessionJournal journal, long sequence)
+		{
+			this.kind = kind;
+			this.sculpture = sculpture;
+			this.journal = journal;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package lmu_PrintableMusic;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lmu_PrintableMusic_object.ModelFiles;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Append-only journal of the raw MIDI events of one recording, so a crash or a closed
+//window before SAFE SCULPTURE loses nothing: the sculpture is rebuilt from it on the
+//next start. Every event is a fixed 16 byte record (nanos since the start, status,
+//data1, data2) in a memory-mapped file. The SculptureWriter appends every note as it adds
+//it to the sculpture, so only notes that made it through the ring are journaled and the
+//MIDI thread never touches the file. The file grows by segments that are mapped ahead of
+//time (prepare) and touched page by page, so append only stores into memory, without
+//system calls or page faults. A journal whose model was saved for good is deleted.
+//
+//  header: magic, version, mode, finished, start in ms, then the records from byte 32
+//  record: long nanos, byte status, byte data1, byte data2, one byte and an int free
+//
+//A record with status 0 is the end, MIDI status bytes always have their high bit set.
+public class SessionJournal
+{
+	public static final String EXTENSION = ".journal";
+	public static final int RECORD = 16;
+	public static final int SEGMENT = 1 << 20; //bytes, 65536 records
+
+	private static final int MAGIC = 0x504D4A31; //PMJ1
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+	private static final int FINISHED = 12;
+	private static final int PAGE = 4096;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final long start;
+
+	//only touched by the producer
+	private MappedByteBuffer current;
+	private int position = 0;
+	private long records = 0;
+	private long stalls = 0;
+	private boolean broken = false;
+
+	//segment is the one the producer writes to; whoever moves mapped from segment + 1
+	//to segment + 2 maps the following one, normally prepare, which hands it over in next
+	private volatile int segment = 0;
+	private final AtomicInteger mapped = new AtomicInteger();
+	private volatile MappedByteBuffer next = null;
+
+
+	private SessionJournal(File file, SculptureMode mode) throws IOException
+	{
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		this.start = System.nanoTime();
+
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putInt(8, mode.ordinal());
+		header.putInt(FINISHED, 0);
+		header.putLong(16, System.currentTimeMillis());
+
+		current = touch(map(0));
+		next = touch(map(1));
+		mapped.set(2);
+	}
+
+
+	//a new journal for a recording of the given session in the directory
+	public static SessionJournal create(File directory, String name, SculptureMode mode) throws IOException
+	{
+		directory.mkdirs();
+		String stamp = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(Calendar.getInstance().getTime());
+		return new SessionJournal(new File(directory, stamp + "_" + ModelFiles.safe(name) + EXTENSION), mode);
+	}
+
+	//stores into the mapped segment, nothing else unless prepare did not map the next one;
+	//false if the journal could not grow, the recording itself goes on without it
+	public boolean append(int status, int data1, int data2, long nanos)
+	{
+		if(position == SEGMENT)
+		{
+			if(broken || !advance())
+			{
+				return false;
+			}
+		}
+
+		current.putLong(position, nanos - start);
+		current.put(position + 9, (byte) data1);
+		current.put(position + 10, (byte) data2);
+		//the status last, it makes the record valid
+		current.put(position + 8, (byte) status);
+		position += RECORD;
+		records++;
+		return true;
+	}
+
+	private boolean advance()
+	{
+		int s = segment;
+		MappedByteBuffer n;
+		while((n = next) == null)
+		{
+			if(mapped.compareAndSet(s + 1, s + 2))
+			{
+				//prepare did not keep up, map here
+				stalls++;
+				try
+				{
+					n = map(s + 1);
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+					broken = true;
+					return false;
+				}
+				break;
+			}
+			//prepare is mapping it right now
+			Thread.yield();
+		}
+		next = null;
+		current = n;
+		position = 0;
+		segment = s + 1;
+		return true;
+	}
+
+	//maps the segment after the current one ahead of time, between appends
+	public void prepare()
+	{
+		int s = segment;
+		if(mapped.compareAndSet(s + 1, s + 2))
+		{
+			try
+			{
+				next = touch(map(s + 1));
+			}
+			catch (IOException e)
+			{
+				//leave it to the producer, it gives up on the journal if it fails again
+				e.printStackTrace();
+				mapped.set(s + 1);
+			}
+		}
+	}
+
+	//marks the recording as complete and writes everything to the disk
+	public void finish()
+	{
+		header.putInt(FINISHED, 1);
+		current.force();
+		header.force();
+		try
+		{
+			raf.close();
+		}
+		catch (IOException e) {e.printStackTrace();}
+	}
+
+	//after finish, once the model is saved for good; a file that cannot be deleted while
+	//it is still mapped stays behind as finished
+	public boolean delete()
+	{
+		return file.delete();
+	}
+
+	//the first write to a page faults, better here than in append
+	private static MappedByteBuffer touch(MappedByteBuffer buffer)
+	{
+		for(int p = 0; p < SEGMENT; p += PAGE)
+		{
+			buffer.put(p + 8, (byte) 0);
+		}
+		return buffer;
+	}
+
+	private MappedByteBuffer map(int index) throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + (long) index * SEGMENT, SEGMENT);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	//how often append had to map a segment itself
+	public long getStalls() {
+		return stalls;
+	}
+
+
+	//journals in the directory whose recording was never finished
+	public static List<File> findUnfinished(File directory) throws IOException
+	{
+		List<File> unfinished = new ArrayList<>();
+		File[] files = directory.listFiles(new FileFilter()
+		{
+			@Override
+			public boolean accept(File f)
+			{
+				return f.isFile() && f.getName().endsWith(EXTENSION);
+			}
+		});
+		if(files == null)
+		{
+			return unfinished;
+		}
+		Arrays.sort(files);
+		for(File f : files)
+		{
+			try
+			{
+				Reader reader = Reader.open(f);
+				if(reader != null && !reader.isFinished())
+				{
+					unfinished.add(f);
+				}
+			}
+			catch (IOException e) {e.printStackTrace();}
+		}
+		return unfinished;
+	}
+
+	//rebuilds the sculpture of every unfinished journal, saves it for good and deletes the
+	//journal; one that cannot be read or saved is left for the next start, the others go on.
+	//Only for the start, before any session records: a live session's journal is unfinished too
+	public static int recover(File journalDirectory, String name, File currentDirectory, File modelDirectory) throws IOException
+	{
+		int recovered = 0;
+		for(File f : findUnfinished(journalDirectory))
+		{
+			try
+			{
+				Reader reader = Reader.open(f);
+				Sculpture sculpture = reader.getMode().create(name, currentDirectory, modelDirectory);
+				reader.replay(sculpture);
+				if(!sculpture.safeForGood())
+				{
+					continue;
+				}
+				if(!f.delete())
+				{
+					reader.markFinished();
+				}
+				recovered++;
+			}
+			catch (IOException | RuntimeException e) {e.printStackTrace();}
+		}
+		return recovered;
+	}
+
+
+	//reads a journal, finished or not
+	public static class Reader
+	{
+		private final File file;
+		private final SculptureMode mode;
+		private final boolean finished;
+		private final long startMillis;
+
+		private Reader(File file, SculptureMode mode, boolean finished, long startMillis)
+		{
+			this.file = file;
+			this.mode = mode;
+			this.finished = finished;
+			this.startMillis = startMillis;
+		}
+
+		//null if the file is no journal
+		public static Reader open(File file) throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				if(raf.length() < HEADER)
+				{
+					return null;
+				}
+				MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+				header.order(ByteOrder.LITTLE_ENDIAN);
+				int modes = SculptureMode.values().length;
+				if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) < 0 || header.getInt(8) >= modes)
+				{
+					return null;
+				}
+				return new Reader(file, SculptureMode.values()[header.getInt(8)], header.getInt(FINISHED) != 0, header.getLong(16));
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+
+		//feeds every note-on into the sculpture as fast as it goes, returns the number of notes
+		public long replay(Sculpture sculpture) throws IOException
+		{
+			long notes = 0;
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				FileChannel channel = raf.getChannel();
+				long size = channel.size();
+				for(long offset = HEADER; offset < size; offset += SEGMENT)
+				{
+					MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT, size - offset));
+					records.order(ByteOrder.LITTLE_ENDIAN);
+					for(int p = 0; p + RECORD <= records.limit(); p += RECORD)
+					{
+						int status = records.get(p + 8) & 0xFF;
+						if(status == 0)
+						{
+							return notes;
+						}
+						int velocity = records.get(p + 10) & 0xFF;
+						if((status & 0xF0) == 0x90 && velocity > 0)
+						{
+							sculpture.addNote(records.get(p + 9) & 0xFF, velocity, records.getLong(p));
+							notes++;
+						}
+					}
+				}
+			}
+			finally
+			{
+				raf.close();
+			}
+			return notes;
+		}
+
+		public void markFinished() throws IOException
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try
+			{
+				raf.seek(FINISHED);
+				raf.writeInt(Integer.reverseBytes(1));
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public SculptureMode getMode() {
+			return mode;
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+
+		public long getStartMillis() {
+			return startMillis;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package lmu_PrintableMusic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+
+//A keyboard without the keyboard: a MidiDevice whose transmitters play a generated
+//pattern on a thread of their own, so MidiHandler, sessions and soak tests can run
+//without hardware. Every note is a note-on followed by its note-off one step later.
+//
+//  RANDOM  any pitch and velocity
+//  SCALE   C major up and down over three octaves
+//  CHORDS  triads and sevenths on the scale, all notes of a chord at once
+//  TRILL   two neighbouring keys in turn, fast
+//  FILE    the note-ons of a Standard MIDI File in their timing, over and over
+//
+//The rate is in notes per second (a chord counts all its notes); for FILE it scales the tempo.
+public class SyntheticMidiDevice implements MidiDevice
+{
+	public enum Pattern
+	{
+		RANDOM, SCALE, CHORDS, TRILL, FILE
+	}
+
+	private static final int[] MAJOR = {0, 2, 4, 5, 7, 9, 11};
+
+	private final Info info;
+	private final Pattern pattern;
+	private final double rate;
+	private final List<BatchRenderer.NoteOn> file;
+	private final double nanosPerTick;
+	private final long seed;
+
+	private final List<Transmitter> transmitters = new CopyOnWriteArrayList<>();
+	private final AtomicLong notes = new AtomicLong();
+	private volatile Thread player = null;
+	private volatile long opened = -1;
+
+
+	public SyntheticMidiDevice(String name, Pattern pattern, double notesPerSecond, long seed)
+	{
+		if(pattern == Pattern.FILE)
+		{
+			throw new IllegalArgumentException("FILE needs a file, use fromFile");
+		}
+		this.info = new SyntheticInfo(name, pattern.name().toLowerCase() + " at " + notesPerSecond + " notes/s");
+		this.pattern = pattern;
+		this.rate = notesPerSecond;
+		this.file = null;
+		this.nanosPerTick = 0;
+		this.seed = seed;
+	}
+
+	private SyntheticMidiDevice(String name, File midi, double speed) throws InvalidMidiDataException, IOException
+	{
+		Sequence sequence = MidiSystem.getSequence(midi);
+		this.info = new SyntheticInfo(name, "replay of " + midi.getName() + " at " + speed + "x");
+		this.pattern = Pattern.FILE;
+		this.rate = speed;
+		this.file = BatchRenderer.noteOns(sequence);
+		this.nanosPerTick = sequence.getTickLength() > 0 ? sequence.getMicrosecondLength() * 1000.0 / sequence.getTickLength() / speed : 0;
+		this.seed = 0;
+	}
+
+	//replays the file, speed 2 plays it twice as fast
+	public static SyntheticMidiDevice fromFile(String name, File midi, double speed) throws InvalidMidiDataException, IOException
+	{
+		return new SyntheticMidiDevice(name, midi, speed);
+	}
+
+	//pattern:rate, e.g. chords:200, or file:song.mid:2 for the file at twice its speed
+	public static SyntheticMidiDevice fromSpec(String name, String spec) throws InvalidMidiDataException, IOException
+	{
+		String[] parts = spec.split(":");
+		Pattern pattern = Pattern.valueOf(parts[0].toUpperCase());
+		if(pattern == Pattern.FILE)
+		{
+			return fromFile(name, new File(parts[1]), parts.length > 2 ? Double.parseDouble(parts[2]) : 1.0);
+		}
+		return new SyntheticMidiDevice(name, pattern, parts.length > 1 ? Double.parseDouble(parts[1]) : 10.0, 1);
+	}
+
+	@Override
+	public Info getDeviceInfo()
+	{
+		return info;
+	}
+
+	@Override
+	public synchronized void open()
+	{
+		if(player != null)
+		{
+			return;
+		}
+		opened = System.nanoTime();
+		player = new Thread("synthetic-" + info.getName())
+		{
+			@Override
+			public void run()
+			{
+				play();
+			}
+		};
+		player.setDaemon(true);
+		player.start();
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		Thread t = player;
+		player = null;
+		if(t != null)
+		{
+			LockSupport.unpark(t);
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		for(Transmitter transmitter : transmitters)
+		{
+			transmitter.close();
+		}
+		opened = -1;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return player != null;
+	}
+
+	@Override
+	public long getMicrosecondPosition()
+	{
+		long start = opened;
+		return start < 0 ? -1 : (System.nanoTime() - start) / 1000;
+	}
+
+	@Override
+	public int getMaxReceivers()
+	{
+		return 0;
+	}
+
+	@Override
+	public int getMaxTransmitters()
+	{
+		return -1;
+	}
+
+	@Override
+	public Receiver getReceiver() throws MidiUnavailableException
+	{
+		throw new MidiUnavailableException(info.getName() + " has no MIDI in");
+	}
+
+	@Override
+	public List<Receiver> getReceivers()
+	{
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Transmitter getTransmitter()
+	{
+		Transmitter transmitter = new SyntheticTransmitter();
+		transmitters.add(transmitter);
+		return transmitter;
+	}
+
+	@Override
+	public List<Transmitter> getTransmitters()
+	{
+		return new ArrayList<>(transmitters);
+	}
+
+	//note-ons sent so far
+	public long getNotes()
+	{
+		return notes.get();
+	}
+
+	public Pattern getPattern()
+	{
+		return pattern;
+	}
+
+	private void play()
+	{
+		Random random = new Random(seed);
+		int[] previous = new int[0];
+		long step = 0;
+		long next = System.nanoTime();
+
+		while(player == Thread.currentThread())
+		{
+			int[] chord;
+			long wait;
+			if(pattern == Pattern.FILE)
+			{
+				if(file.isEmpty())
+				{
+					return;
+				}
+				//one round of the file after the other
+				BatchRenderer.NoteOn note = file.get((int) (step % file.size()));
+				BatchRenderer.NoteOn following = file.get((int) ((step + 1) % file.size()));
+				chord = new int[] {note.pitch, note.velocity};
+				wait = following.tick >= note.tick ? (long) ((following.tick - note.tick) * nanosPerTick) : 0;
+			}
+			else
+			{
+				chord = step(random, step);
+				wait = (long) (1e9 * (chord.length / 2) / rate);
+			}
+
+			for(int i = 0; i < previous.length; i += 2)
+			{
+				send(ShortMessage.NOTE_OFF, previous[i], 0);
+			}
+			for(int i = 0; i < chord.length; i += 2)
+			{
+				send(ShortMessage.NOTE_ON, chord[i], chord[i + 1]);
+				notes.incrementAndGet();
+			}
+			previous = chord;
+			step++;
+
+			//keeps the average rate, late steps are caught up without waiting
+			next += wait;
+			long sleep;
+			while((sleep = next - System.nanoTime()) > 0 && player == Thread.currentThread())
+			{
+				LockSupport.parkNanos(sleep);
+			}
+		}
+		for(int i = 0; i < previous.length; i += 2)
+		{
+			send(ShortMessage.NOTE_OFF, previous[i], 0);
+		}
+	}
+
+	//pitch, velocity of the notes of one step
+	private int[] step(Random random, long step)
+	{
+		if(pattern == Pattern.RANDOM)
+		{
+			return new int[] {21 + random.nextInt(88), 1 + random.nextInt(127)};
+		}
+		else if(pattern == Pattern.SCALE)
+		{
+			int position = (int) (step % 42);
+			int degree = position < 21 ? position : 42 - position;
+			return new int[] {48 + 12 * (degree / 7) + MAJOR[degree % 7], 80};
+		}
+		else if(pattern == Pattern.CHORDS)
+		{
+			int root = random.nextInt(7);
+			int size = random.nextBoolean() ? 3 : 4;
+			int velocity = 60 + random.nextInt(60);
+			int[] chord = new int[size * 2];
+			for(int i = 0; i < size; i++)
+			{
+				int degree = root + 2 * i;
+				chord[i * 2] = 48 + 12 * (degree / 7) + MAJOR[degree % 7];
+				chord[i * 2 + 1] = velocity;
+			}
+			return chord;
+		}
+		//TRILL
+		return new int[] {step % 2 == 0 ? 72 : 74, 90};
+	}
+
+	private void send(int command, int pitch, int velocity)
+	{
+		if(transmitters.isEmpty())
+		{
+			return;
+		}
+		ShortMessage msg;
+		try
+		{
+			msg = new ShortMessage(command, 0, pitch, velocity);
+		}
+		catch (InvalidMidiDataException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		long timeStamp = getMicrosecondPosition();
+		for(Transmitter transmitter : transmitters)
+		{
+			Receiver receiver = transmitter.getReceiver();
+			if(receiver != null)
+			{
+				receiver.send(msg, timeStamp);
+			}
+		}
+	}
+
+
+	private class SyntheticTransmitter implements Transmitter
+	{
+		private volatile Receiver receiver = null;
+
+		@Override
+		public void setReceiver(Receiver receiver)
+		{
+			this.receiver = receiver;
+		}
+
+		@Override
+		public Receiver getReceiver()
+		{
+			return receiver;
+		}
+
+		@Override
+		public void close()
+		{
+			transmitters.remove(this);
+		}
+	}
+
+	private static class SyntheticInfo extends Info
+	{
+		SyntheticInfo(String name, String description)
+		{
+			super(name, "PrintableMusic", description, "1.0");
+		}
+	}
+}
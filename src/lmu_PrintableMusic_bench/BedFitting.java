@@ -0,0 +1,204 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import lmu_PrintableMusic_object.BoundingBox;
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.ParallelStlWriter;
+import lmu_PrintableMusic_object.PrinterBed;
+import lmu_PrintableMusic_object.Sculpture;
+
+//What the bounding box costs per note, against the note itself, and whether the fitted
+//export fits: every sculpture is exported as STL at its own size and fitted to the
+//configured bed and to a narrow one it only fits on turned. The fitted STL must have the
+//same triangles, lie on the bed, measure the tracked box times the scale (turned if the
+//fit turns it) and keep its normals pointing out.
+//
+//  BedFitting [notes] [rounds]
+public class BedFitting
+{
+	//keeps the fit checks from being optimized away
+	static volatile double sink;
+	private static final int REPEAT = 200;
+
+	public static void main(String[] args) throws Exception
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Bench bench = new Bench("bed");
+		try
+		{
+			run(bench, notes, rounds);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes, int rounds) throws Exception
+	{
+		File root = bench.getDirectory();
+		int[][] played = Bench.played(notes, 1);
+
+		System.out.println(notes + " notes, best of " + rounds + " rounds, bed " + PrinterBed.CONFIGURED);
+		System.out.println(String.format("%-6s %12s %12s %9s %12s", "mode", "ns/note", "ns/box add", "of note", "ns/fit check"));
+		for(String mode : new String[] {"cube", "prism"})
+		{
+			double note = Double.MAX_VALUE;
+			for(int r = 0; r < rounds; r++)
+			{
+				long start = System.nanoTime();
+				play(mode, played, root);
+				note = Math.min(note, (System.nanoTime() - start) / (double) notes);
+			}
+			double add = Double.MAX_VALUE;
+			double check = Double.MAX_VALUE;
+			double sink = 0;
+			//both far too quick to time one session of them, each round repeats it
+			for(int r = 0; r < rounds; r++)
+			{
+				BoundingBox box = new BoundingBox();
+				long start = System.nanoTime();
+				for(int repeat = 0; repeat < REPEAT; repeat++)
+				{
+					for(int i = 0; i < notes; i++)
+					{
+						box.add(-played[i][1], -played[i][1], i * 0.2, played[i][1], played[i][1], i * 0.2 + played[i][0] + repeat);
+					}
+				}
+				add = Math.min(add, (System.nanoTime() - start) / (double) notes / REPEAT);
+				start = System.nanoTime();
+				for(int repeat = 0; repeat < REPEAT; repeat++)
+				{
+					for(int i = 0; i < notes; i++)
+					{
+						sink += PrinterBed.CONFIGURED.scale(box);
+					}
+				}
+				check = Math.min(check, (System.nanoTime() - start) / (double) notes / REPEAT);
+			}
+			System.out.println(String.format("%-6s %12.1f %12.2f %8.2f%% %12.2f", mode, note, add, 100 * add / note, check));
+			BedFitting.sink = sink;
+		}
+
+		System.out.println();
+		System.out.println(String.format("%-6s %-26s %-20s %-26s %7s %6s %10s %6s %9s %7s", "mode", "tracked", "bed", "fitted STL", "scale", "turned", "triangles", "fits", "accurate", "normals"));
+		for(String mode : new String[] {"cube", "prism"})
+		{
+			Sculpture sculpture = play(mode, played, root);
+			BoundingBox bounds = sculpture.getBounds();
+
+			ParallelStlWriter plain = new ParallelStlWriter();
+			plain.setBed(null);
+			File original = new File(root, mode + "_original.stl");
+			long all = plain.writeStl(sculpture, original);
+			BoundingBox measured = measure(original);
+			long outward = outward(original);
+
+			//the width of the sculpture only goes along the depth of the narrow one
+			PrinterBed narrow = new PrinterBed(bounds.getDepth() / 2, bounds.getWidth() / 2, bounds.getHeight());
+			for(PrinterBed bed : new PrinterBed[] {PrinterBed.CONFIGURED, narrow})
+			{
+				ParallelStlWriter writer = new ParallelStlWriter();
+				writer.setBed(bed);
+				File fitted = new File(root, mode + "_fitted.stl");
+				long triangles = writer.writeStl(sculpture, fitted);
+				BoundingBox printed = measure(fitted);
+
+				PrinterBed.Fit fit = bed.fit(bounds);
+				double scale = fit != null ? fit.getScale() : 1;
+				boolean turned = fit != null && fit.isTurned();
+				double width = turned ? bounds.getDepth() : bounds.getWidth();
+				double depth = turned ? bounds.getWidth() : bounds.getDepth();
+				//the tracked box is the one of the exported facets, float rounding aside
+				boolean accurate = Math.abs(measured.getWidth() - bounds.getWidth()) < 0.001 && Math.abs(measured.getDepth() - bounds.getDepth()) < 0.001 && Math.abs(measured.getHeight() - bounds.getHeight()) < 0.001
+						&& Math.abs(printed.getWidth() - scale * width) < 0.001 && Math.abs(printed.getDepth() - scale * depth) < 0.001 && Math.abs(printed.getHeight() - scale * bounds.getHeight()) < 0.001;
+				//a fitted sculpture stands on the bed, the middle of its bottom in the middle
+				boolean fits = fit == null ? bed.fits(bounds) : onBed(printed, bed);
+				boolean normals = outward(fitted) == outward;
+				System.out.println(String.format("%-6s %-26s %-20s %-26s %7.4f %6s %10s %6s %9s %7s", mode, bounds, bed, printed, scale, turned, triangles == all ? String.valueOf(triangles) : triangles + "!=" + all,
+						fits, accurate, normals));
+				bench.check(triangles == all, mode + ": " + triangles + " triangles fitted, " + all + " at its own size");
+				bench.check(fits, mode + ": fitted STL of " + printed + " is off the bed " + bed);
+				bench.check(accurate, mode + ": the STLs do not measure the tracked box " + bounds + " times " + scale + (turned ? ", turned" : ""));
+				bench.check(normals, mode + ": fitting turned normals away from their triangles on the bed " + bed);
+			}
+
+			File scad = new File(root, mode + "_fitted.scad");
+			sculpture.safeForGood(scad);
+			String text = new String(Files.readAllBytes(scad.toPath()), "US-ASCII");
+			System.out.println(String.format("%-6s SCAD %d KB, %d multmatrix()", mode, scad.length() / 1024, text.split("multmatrix\\(", -1).length - 1));
+		}
+	}
+
+	//lies on the bed around its middle, allowing for the float rounding of the STL
+	private static boolean onBed(BoundingBox box, PrinterBed bed)
+	{
+		return box.getMinX() >= -0.001 && box.getMaxX() <= bed.getWidth() + 0.001
+				&& box.getMinY() >= -0.001 && box.getMaxY() <= bed.getDepth() + 0.001
+				&& Math.abs(box.getMinZ()) < 0.001 && box.getMaxZ() <= bed.getHeight() + 0.001
+				&& Math.abs(box.getMinX() + box.getMaxX() - bed.getWidth()) < 0.002 && Math.abs(box.getMinY() + box.getMaxY() - bed.getDepth()) < 0.002;
+	}
+
+	private static Sculpture play(String mode, int[][] played, File root)
+	{
+		File current = new File(root, "current");
+		if(mode.equals("cube"))
+		{
+			return Bench.play(new ModelCube("bed", current, root), played);
+		}
+		return Bench.play(new ModelPrism("bed", current, root), played);
+	}
+
+	//the box around all vertices of a binary STL
+	private static BoundingBox measure(File stl) throws Exception
+	{
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(stl.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		int triangles = bytes.getInt(80);
+		BoundingBox box = new BoundingBox();
+		for(int t = 0; t < triangles; t++)
+		{
+			int at = 84 + t * 50 + 12;
+			for(int v = 0; v < 3; v++)
+			{
+				float x = bytes.getFloat(at + v * 12);
+				float y = bytes.getFloat(at + v * 12 + 4);
+				float z = bytes.getFloat(at + v * 12 + 8);
+				box.add(x, y, z, x, y, z);
+			}
+		}
+		return box;
+	}
+
+	//triangles whose normal points the way their corners wind, degenerate ones left out
+	private static long outward(File stl) throws Exception
+	{
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(stl.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		int triangles = bytes.getInt(80);
+		long outward = 0;
+		for(int t = 0; t < triangles; t++)
+		{
+			int at = 84 + t * 50;
+			float[] f = new float[12];
+			for(int i = 0; i < 12; i++)
+			{
+				f[i] = bytes.getFloat(at + i * 4);
+			}
+			double ux = f[6] - f[3], uy = f[7] - f[4], uz = f[8] - f[5];
+			double vx = f[9] - f[3], vy = f[10] - f[4], vz = f[11] - f[5];
+			double dot = f[0] * (uy * vz - uz * vy) + f[1] * (uz * vx - ux * vz) + f[2] * (ux * vy - uy * vx);
+			if(dot > 1e-9)
+			{
+				outward++;
+			}
+		}
+		return outward;
+	}
+}
@@ -0,0 +1,193 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.Facet;
+import lmu_PrintableMusic.MidiEventRing;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SculptureWriter;
+import lmu_PrintableMusic_object.Sculpture;
+
+//What every bench shares: the notes it plays, a temporary directory of its own that is
+//deleted again when it is done (-Dprintablemusic.keep=true keeps it to look at), the
+//sessions recording into it, and the verdict. A check that fails is printed and makes the
+//bench exit with 1, so a script can tell a broken pipeline from a slow machine.
+//
+//  Bench bench = new Bench("name");
+//  try { ... bench.check(ok, "what has to hold"); ... } finally { bench.close(); }
+//  bench.exit();
+public class Bench implements Closeable
+{
+	public static final boolean KEEP = Boolean.getBoolean("printablemusic.keep");
+
+	//C major, the pitches a song keeps coming back to
+	private static final int[] SCALE = {60, 62, 64, 65, 67, 69, 71, 72};
+
+	private final File directory;
+	private final List<SculptureSession> sessions = new ArrayList<>();
+	private int checks = 0;
+	private int failed = 0;
+
+
+	public Bench(String name) throws IOException
+	{
+		directory = Files.createTempDirectory("printablemusic-" + name).toFile();
+	}
+
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public File file(String name)
+	{
+		return new File(directory, name);
+	}
+
+	//recording into name/current and name/models, without journal; closed with the bench
+	public SculptureSession session(String name)
+	{
+		return session(name, new MidiEventRing(SculptureSession.DEFAULT_RING_CAPACITY, MidiEventRing.Overflow.DROP_NEWEST, 0), SculptureWriter.DEFAULT_MIN_WRITE_INTERVAL);
+	}
+
+	public SculptureSession session(String name, MidiEventRing ring, long minWriteInterval)
+	{
+		File dir = new File(directory, name);
+		SculptureSession session = new SculptureSession(name, new File(dir, "current"), new File(dir, "models"), ring, minWriteInterval);
+		session.setJournaling(false);
+		synchronized(sessions)
+		{
+			sessions.add(session);
+		}
+		return session;
+	}
+
+	//counts the check, prints it if it failed
+	public boolean check(boolean ok, String what)
+	{
+		checks++;
+		if(!ok)
+		{
+			failed++;
+			System.out.println("FAILED: " + what);
+		}
+		return ok;
+	}
+
+	public boolean isPassed() {
+		return failed == 0;
+	}
+
+	//stops the sessions still recording and deletes the directory
+	@Override
+	public void close()
+	{
+		synchronized(sessions)
+		{
+			for(SculptureSession session : sessions)
+			{
+				session.close();
+			}
+			sessions.clear();
+		}
+		if(KEEP)
+		{
+			System.out.println("output in " + directory);
+		}
+		else
+		{
+			delete(directory);
+		}
+	}
+
+	//0 if every check held, 1 otherwise
+	public void exit()
+	{
+		System.out.println(failed == 0 ? "PASSED " + checks + " checks" : "FAILED " + failed + " of " + checks + " checks");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+
+	//{pitch, velocity} of every note: a few pitches and velocities over and over, like a piece does
+	public static int[][] song(int notes, long seed)
+	{
+		Random random = new Random(seed);
+		int[][] played = new int[notes][];
+		for(int i = 0; i < notes; i++)
+		{
+			played[i] = new int[] {SCALE[random.nextInt(SCALE.length)], 64 + 16 * random.nextInt(4)};
+		}
+		return played;
+	}
+
+	//any pitch of the piano and any velocity
+	public static int[][] random(int notes, long seed)
+	{
+		Random random = new Random(seed);
+		int[][] played = new int[notes][];
+		for(int i = 0; i < notes; i++)
+		{
+			played[i] = new int[] {21 + random.nextInt(88), 1 + random.nextInt(127)};
+		}
+		return played;
+	}
+
+	//around the middle of the keyboard, velocities of a normal touch
+	public static int[][] played(int notes, long seed)
+	{
+		Random random = new Random(seed);
+		int[][] played = new int[notes][];
+		for(int i = 0; i < notes; i++)
+		{
+			played[i] = new int[] {Math.max(21, Math.min(108, 60 + (int) (random.nextGaussian() * 12))), Math.max(1, Math.min(127, 75 + (int) (random.nextGaussian() * 20)))};
+		}
+		return played;
+	}
+
+	//one note per ms
+	public static <S extends Sculpture> S play(S sculpture, int[][] notes)
+	{
+		for(int i = 0; i < notes.length; i++)
+		{
+			sculpture.addNote(notes[i][0], notes[i][1], i * 1000000L);
+		}
+		return sculpture;
+	}
+
+	//signed volume of the closed surface
+	public static double volume(CSG csg)
+	{
+		double volume = 0;
+		for(Facet facet : csg.toFacets())
+		{
+			Coords3d a = facet.getVertexes().get(0).getCoords();
+			Coords3d b = facet.getVertexes().get(1).getCoords();
+			Coords3d c = facet.getVertexes().get(2).getCoords();
+			volume += (a.getX() * (b.getY() * c.getZ() - b.getZ() * c.getY())
+					- a.getY() * (b.getX() * c.getZ() - b.getZ() * c.getX())
+					+ a.getZ() * (b.getX() * c.getY() - b.getY() * c.getX())) / 6;
+		}
+		return volume;
+	}
+
+	public static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if(children != null)
+		{
+			for(File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
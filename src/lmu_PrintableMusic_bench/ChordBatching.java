@@ -0,0 +1,101 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.ShortMessage;
+
+import lmu_PrintableMusic.MidiEventRing;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SculptureWriter;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Snapshot writes of a played session without batch window, with a fixed one and with
+//the adaptive one. First chords of 3 to 10 notes struck within 2 ms, then a sustained
+//run of one note per ms. The final model has to be byte-identical to the same notes
+//added one at a time, only the number of writes may change.
+//
+//  ChordBatching [chords] [sustained notes]
+public class ChordBatching
+{
+	private static final String[] CONFIG = {"per note", "window", "adaptive"};
+
+	public static void main(String[] args) throws IOException
+	{
+		int chords = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int sustained = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		Bench bench = new Bench("chords");
+		try
+		{
+			run(bench, chords, sustained);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int chords, int sustained) throws IOException
+	{
+		System.out.println(String.format("%-9s %7s %7s %7s %7s %6s %7s %9s  %s", "config", "notes", "chords", "writes", "mean", "max", "window", "identical", "snapshots of 1, 2, 3-4, 5-8, 9-16, ... notes"));
+		for(int config = 0; config < CONFIG.length; config++)
+		{
+			String name = CONFIG[config].replace(' ', '_');
+			File dir = bench.file(name);
+			SculptureSession session = bench.session(name, new MidiEventRing(4096, MidiEventRing.Overflow.BLOCK, 1000), 0);
+			SculptureWriter writer = session.getWriter();
+			writer.setBatchWindow(config == 0 ? 0 : SculptureWriter.DEFAULT_BATCH_WINDOW);
+			writer.setAdaptive(config == 2, SculptureWriter.DEFAULT_MAX_BATCH_WINDOW);
+			session.setMode(SculptureMode.CUBE);
+			session.startRecording();
+
+			Sculpture reference = SculptureMode.CUBE.create("reference", new File(dir, "reference-current"), new File(dir, "reference"));
+			Random random = new Random(1);
+			int notes = 0;
+			for(int c = 0; c < chords; c++)
+			{
+				int size = 3 + random.nextInt(8);
+				for(int n = 0; n < size; n++)
+				{
+					notes += play(session, reference, random);
+					LockSupport.parkNanos(2000000 / size);
+				}
+				LockSupport.parkNanos(60000000);
+			}
+			long chordWrites = writer.getWrittenSnapshots();
+			for(int n = 0; n < sustained; n++)
+			{
+				notes += play(session, reference, random);
+				LockSupport.parkNanos(1000000);
+			}
+			double window = writer.getBatchWindow();
+
+			session.safeSculpture();
+			session.close();
+			File expected = new File(dir, "reference.scad");
+			reference.safeForGood(expected);
+			File[] models = new File(dir, "models").listFiles();
+			boolean identical = models != null && models.length == 1 && Arrays.equals(Files.readAllBytes(models[0].toPath()), Files.readAllBytes(expected.toPath()));
+			bench.check(identical, CONFIG[config] + ": final model differs from the notes added one at a time");
+
+			System.out.println(String.format("%-9s %7d %7s %7d %7.2f %6d %5.1fms %9s  %s", CONFIG[config], notes, chordWrites + "/" + chords, writer.getWrittenSnapshots(),
+					writer.getMeanBatchSize(), writer.getMaxBatchSize(), window, identical, Arrays.toString(writer.getBatchSizeHistogram())));
+		}
+	}
+
+	private static int play(SculptureSession session, Sculpture reference, Random random)
+	{
+		int pitch = 21 + random.nextInt(88);
+		int velocity = 1 + random.nextInt(127);
+		session.noteOn(ShortMessage.NOTE_ON, pitch, velocity, System.nanoTime());
+		reference.addNote(pitch, velocity, 0);
+		return 1;
+	}
+}
@@ -0,0 +1,89 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.IOException;
+
+import eu.printingin3d.javascad.vrl.CSG;
+import lmu_PrintableMusic_object.BoundingBox;
+import lmu_PrintableMusic_object.CubeIndex;
+import lmu_PrintableMusic_object.ModelCreate;
+import lmu_PrintableMusic_object.ModelCube;
+
+//How many cubes the CubeIndex culls, and what that saves at export: SCAD (safeForGood)
+//and CSG union, each without culling, with culling and with culling plus merging.
+//"random" plays any pitch and velocity, "song" only a few pitches and velocities over
+//and over, like a real piece does. Culling and merging must not change the sculpture: the
+//bounding box and the union volume have to be the same in every column.
+//
+//  CubeCulling [notes for the SCAD export] [notes for the union]
+public class CubeCulling
+{
+	private static final String[] CONFIG = {"all", "culled", "merged"};
+
+	public static void main(String[] args) throws IOException
+	{
+		int scadNotes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int unionNotes = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		Bench bench = new Bench("culling");
+		try
+		{
+			run(bench, scadNotes, unionNotes);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int scadNotes, int unionNotes) throws IOException
+	{
+		for(String scenario : new String[] {"random", "song"})
+		{
+			int[][] notes = scenario.equals("song") ? Bench.song(scadNotes, 1) : Bench.random(scadNotes, 1);
+			int[][] few = scenario.equals("song") ? Bench.song(unionNotes, 1) : Bench.random(unionNotes, 1);
+			BoundingBox bounds = null;
+			double reference = Double.NaN;
+
+			ModelCube stats = play(bench, notes, 0);
+			CubeIndex index = stats.getIndex();
+			System.out.println(scenario + ", " + scadNotes + " notes: " + index.size() + " primitives, culled " + index.getCulled()
+					+ " (" + index.getDuplicates() + " duplicates, " + index.getContained() + " inside an earlier cube, " + index.getCovered() + " swallowed by a later one)");
+
+			for(int config = 0; config < CONFIG.length; config++)
+			{
+				ModelCube cube = play(bench, notes, config);
+				int models = cube.getModelCount();
+				long start = System.nanoTime();
+				cube.safeForGood(bench.file(scenario + "_" + CONFIG[config] + ".scad"));
+				double scad = (System.nanoTime() - start) / 1e9;
+
+				ModelCube small = play(bench, few, config);
+				start = System.nanoTime();
+				CSG union = new ModelCreate(small.getModels()).toCSG();
+				double csg = (System.nanoTime() - start) / 1e9;
+				double volume = Bench.volume(union);
+
+				//the first column is what the others are compared with; JavaScad's CSG splits polygons
+				//with an epsilon, so the unions of differently cut cubes differ in the 6th digit
+				if(config == 0)
+				{
+					bounds = cube.getBounds();
+					reference = volume;
+				}
+				System.out.println(String.format("  %-7s %7d models, SCAD %6.2f s | %d notes: %5d models, union %6.2f s, volume %.3f, box %s",
+						CONFIG[config], models, scad, unionNotes, small.getModelCount(), csg, volume, cube.getBounds()));
+				bench.check(cube.getBounds().toString().equals(bounds.toString()), scenario + " " + CONFIG[config] + ": box " + cube.getBounds() + ", not " + bounds);
+				bench.check(Math.abs(volume - reference) <= 1e-4 * Math.abs(reference), scenario + " " + CONFIG[config] + ": volume " + volume + ", not " + reference);
+			}
+		}
+	}
+
+	private static ModelCube play(Bench bench, int[][] notes, int config)
+	{
+		ModelCube cube = new ModelCube("culling", bench.file("current"), bench.getDirectory());
+		cube.setCulling(config > 0);
+		cube.setMerging(config > 1);
+		return Bench.play(cube, notes);
+	}
+}
@@ -0,0 +1,88 @@
+package lmu_PrintableMusic_bench;
+
+import java.lang.management.ManagementFactory;
+
+import javax.sound.midi.ShortMessage;
+
+import lmu_PrintableMusic.MidiInputReceiver;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Bytes allocated on the MIDI thread per note-on in MidiInputReceiver.send, measured
+//in steady state after a warm-up. The synth is not initialised, so this is the decode,
+//latency and ring path of a journaled session alone. Clock and active-sensing messages
+//are mixed in, like a real keyboard sends. Exits 1 if a single byte was allocated.
+//
+//  DecodeAllocation [messages]
+public class DecodeAllocation
+{
+	public static void main(String[] args) throws Exception
+	{
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+		ShortMessage[] messages = new ShortMessage[256];
+		for(int i = 0; i < messages.length; i++)
+		{
+			if(i % 4 == 0)
+			{
+				messages[i] = new ShortMessage(ShortMessage.TIMING_CLOCK);
+			}
+			else if(i % 4 == 1)
+			{
+				messages[i] = new ShortMessage(ShortMessage.ACTIVE_SENSING);
+			}
+			else if(i % 4 == 2)
+			{
+				messages[i] = new ShortMessage(ShortMessage.NOTE_ON, 0, 21 + i % 88, 1 + i % 127);
+			}
+			else
+			{
+				messages[i] = new ShortMessage(ShortMessage.NOTE_OFF, 0, 21 + (i - 1) % 88, 0);
+			}
+		}
+
+		Bench bench = new Bench("allocation");
+		try
+		{
+			run(bench, messages, rounds);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, ShortMessage[] messages, int rounds)
+	{
+		SculptureSession session = bench.session("DecodeAllocation");
+		//journaled like a recording of the installation
+		session.setJournaling(true);
+		MidiInputReceiver receiver = new MidiInputReceiver(session);
+		receiver.setMode(SculptureMode.CUBE);
+		receiver.startRecording();
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		//warm-up, lets the JIT compile the path
+		send(receiver, messages, rounds);
+
+		long before = threads.getThreadAllocatedBytes(thread);
+		send(receiver, messages, rounds);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		long noteOns = rounds / 4;
+		System.out.println("messages: " + rounds + ", note-ons: " + noteOns);
+		System.out.println("allocated on the MIDI thread: " + allocated + " bytes, " + (double) allocated / noteOns + " bytes/note-on");
+		bench.check(allocated == 0, allocated + " bytes allocated on the MIDI thread");
+	}
+
+	private static void send(MidiInputReceiver receiver, ShortMessage[] messages, int rounds)
+	{
+		for(int i = 0; i < rounds; i++)
+		{
+			receiver.send(messages[i & (messages.length - 1)], -1);
+		}
+	}
+}
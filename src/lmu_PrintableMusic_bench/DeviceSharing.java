@@ -0,0 +1,310 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+
+import lmu_PrintableMusic.MidiDeviceWatcher;
+import lmu_PrintableMusic.MidiHandler;
+import lmu_PrintableMusic.MidiInputReceiver;
+import lmu_PrintableMusic.MidiSynthesizer;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SyntheticMidiDevice;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//What another keyboard costs, and keyboards coming and going.
+//  memory   heap kept per additional keyboard, recording, with a synthesizer of its own as
+//           before (opened, channels, instrument 90 loaded, like initSynth) and on the one
+//           synthesizer of a MidiHandler; the slope over the keyboards, after full GCs
+//  hotplug  a watcher over a list of SyntheticMidiDevices that changes between polls: two
+//           keyboards, a third plugged in, one of the same name, one pulled out while playing;
+//           in the same directories every one leaves a preview and a model of its own
+//  poll     what listing the real MIDI devices costs the watcher, and its share of a core
+//Without an audio line the synthesizers are opened on a stream instead, which needs
+//  --add-opens java.desktop/com.sun.media.sound=ALL-UNNAMED
+//
+//  DeviceSharing [keyboards]
+public class DeviceSharing
+{
+	public static void main(String[] args) throws Exception
+	{
+		int keyboards = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		//every keyboard records right away, no window
+		System.setProperty("printablemusic.headless", "true");
+		Bench bench = new Bench("devices");
+		try
+		{
+			run(bench, keyboards);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int keyboards) throws Exception
+	{
+		File root = bench.getDirectory();
+
+		Synthesizer shared = open();
+		if(shared == null)
+		{
+			System.out.println("no synthesizer could be opened, only the recordings are measured");
+		}
+		long before = memory(keyboards, root, false);
+		long after = memory(keyboards, root, true);
+		System.out.println(String.format("%-28s %10s", "per additional keyboard", "KB"));
+		System.out.println(String.format("%-28s %10.0f", "own synthesizer (before)", before / 1024.0));
+		System.out.println(String.format("%-28s %10.0f", "shared synthesizer", after / 1024.0));
+		System.out.println(String.format("%-28s %10.0f", "saved", (before - after) / 1024.0));
+
+		bench.check(hotplug(root), "keyboards coming and going were not followed");
+		poll();
+	}
+
+	//bytes of heap per keyboard
+	private static long memory(int keyboards, File root, boolean shared) throws Exception
+	{
+		String variant = shared ? "shared" : "own";
+		MidiHandler midi = shared ? new MidiHandler(0) : null;
+		List<Object> kept = new ArrayList<>();
+		long[] used = new long[keyboards + 1];
+		used[0] = used();
+		for(int i = 0; i < keyboards; i++)
+		{
+			SyntheticMidiDevice device = new SyntheticMidiDevice(variant + " " + i, SyntheticMidiDevice.Pattern.SCALE, 0.001, i);
+			SculptureSession session = session(root, variant + i);
+			if(shared)
+			{
+				kept.add(midi.connect(device, session));
+			}
+			else
+			{
+				//what connect() did for every keyboard before
+				MidiInputReceiver receiver = new MidiInputReceiver(session);
+				kept.add(receiver);
+				kept.add(open());
+				receiver.setMode(SculptureMode.CUBE);
+				receiver.startRecording();
+				device.getTransmitter().setReceiver(receiver);
+				device.open();
+			}
+			kept.add(device);
+			used[i + 1] = used();
+		}
+		//least squares over all counts, the first keyboard's one-off costs do not tell
+		double mean = keyboards / 2.0;
+		double sum = 0;
+		double weights = 0;
+		for(int i = 0; i <= keyboards; i++)
+		{
+			sum += (i - mean) * used[i];
+			weights += (i - mean) * (i - mean);
+		}
+		for(Object object : kept)
+		{
+			if(object instanceof MidiInputReceiver)
+			{
+				((MidiInputReceiver) object).getSession().close();
+			}
+			else if(object instanceof MidiDevice)
+			{
+				((MidiDevice) object).close();
+			}
+		}
+		return Math.round(sum / weights);
+	}
+
+	private static boolean hotplug(File root) throws Exception
+	{
+		//of their own, the memory sessions wrote previews too
+		File currentDirectory = new File(root, "hotplug/current");
+		File modelDirectory = new File(root, "hotplug/models");
+		final MidiHandler midi = new MidiHandler(0);
+		midi.setDirectories(currentDirectory, modelDirectory);
+		final List<SyntheticMidiDevice> plugged = new ArrayList<>();
+		MidiDeviceWatcher watcher = new MidiDeviceWatcher(new MidiDeviceWatcher.Listener()
+		{
+			@Override
+			public void added(MidiDevice device)
+			{
+				System.out.println("  + " + device.getDeviceInfo().getName());
+				midi.added(device);
+			}
+
+			@Override
+			public void removed(MidiDevice device)
+			{
+				System.out.println("  - " + device.getDeviceInfo().getName());
+				midi.removed(device);
+			}
+		}, 0)
+		{
+			@Override
+			protected MidiDevice.Info[] list()
+			{
+				MidiDevice.Info[] infos = new MidiDevice.Info[plugged.size()];
+				for(int i = 0; i < infos.length; i++)
+				{
+					infos[i] = plugged.get(i).getDeviceInfo();
+				}
+				return infos;
+			}
+
+			@Override
+			protected MidiDevice device(MidiDevice.Info info)
+			{
+				for(SyntheticMidiDevice device : plugged)
+				{
+					if(device.getDeviceInfo() == info)
+					{
+						return device;
+					}
+				}
+				throw new IllegalArgumentException(info.getName());
+			}
+		};
+
+		System.out.println("hotplug:");
+		SyntheticMidiDevice first = new SyntheticMidiDevice("Keyboard A", SyntheticMidiDevice.Pattern.SCALE, 200, 1);
+		plugged.add(first);
+		plugged.add(new SyntheticMidiDevice("Keyboard B", SyntheticMidiDevice.Pattern.CHORDS, 200, 2));
+		boolean ok = step(watcher, midi, 2);
+		plugged.add(new SyntheticMidiDevice("Keyboard C", SyntheticMidiDevice.Pattern.TRILL, 200, 3));
+		ok &= step(watcher, midi, 3);
+		//the same kind once more, saying the same about itself
+		SyntheticMidiDevice twin = new SyntheticMidiDevice("Keyboard A", SyntheticMidiDevice.Pattern.SCALE, 200, 4);
+		plugged.add(twin);
+		ok &= step(watcher, midi, 4);
+		ok &= step(watcher, midi, 4);
+
+		Set<Integer> channels = new HashSet<>();
+		for(MidiInputReceiver receiver : midi.getConnected())
+		{
+			channels.add(MidiSynthesizer.channel(receiver.getDevice()));
+		}
+		System.out.println("  channels " + channels);
+		ok &= channels.size() == 4;
+
+		//the first of the two pulled out in the middle of playing, its recording is saved for good
+		//and the other one plays on
+		Thread.sleep(300);
+		MidiInputReceiver pulled = midi.getReceiver(first);
+		long notes = pulled.getSession().getRing().getPublished();
+		int models = count(modelDirectory);
+		plugged.remove(first);
+		ok &= step(watcher, midi, 3);
+		int saved = count(modelDirectory) - models;
+		System.out.println(String.format("  pulled out after %d notes: device %s, %s, %d model files saved", notes, first.isOpen() ? "open" : "closed",
+				pulled.getSession().isRecording() ? "still recording" : "recording stopped", saved));
+		ok &= !first.isOpen() && !pulled.getSession().isRecording() && saved > 0;
+		MidiInputReceiver kept = midi.getReceiver(twin);
+		System.out.println(String.format("  the other Keyboard A: device %s, %s", twin.isOpen() ? "open" : "closed",
+				kept != null && kept.getSession().isRecording() ? "still recording" : "not recording"));
+		ok &= twin.isOpen() && kept != null && kept.getSession().isRecording();
+
+		plugged.clear();
+		ok &= step(watcher, midi, 0);
+
+		//four sessions, two of the same name, in the same directories: a preview and a model each
+		int previews = 0;
+		for(File file : currentDirectory.listFiles())
+		{
+			if(file.getName().startsWith("current_model_") && file.getName().endsWith(".scad") && !file.getName().contains("_body_"))
+			{
+				previews++;
+			}
+		}
+		int finals = count(modelDirectory);
+		System.out.println("  " + previews + " previews, " + finals + " models of 4 keyboards in the same directories");
+		return ok && previews == 4 && finals == 4;
+	}
+
+	//polls once and checks what is connected
+	private static boolean step(MidiDeviceWatcher watcher, MidiHandler midi, int expected)
+	{
+		watcher.poll();
+		int connected = midi.getConnected().size();
+		System.out.println("  " + connected + " keyboards connected, " + watcher.getDeviceCount() + " watched" + (connected == expected ? "" : ", expected " + expected));
+		return connected == expected && watcher.getDeviceCount() == expected;
+	}
+
+	private static int count(File directory)
+	{
+		File[] files = directory.listFiles();
+		return files == null ? 0 : files.length;
+	}
+
+	private static void poll()
+	{
+		MidiDeviceWatcher watcher = new MidiDeviceWatcher(new MidiDeviceWatcher.Listener()
+		{
+			@Override
+			public void added(MidiDevice device) {}
+
+			@Override
+			public void removed(MidiDevice device) {}
+		}, 0);
+		for(int i = 0; i < 2000; i++)
+		{
+			watcher.poll();
+		}
+		double micros = watcher.getMeanPollTime() / 1000;
+		System.out.println(String.format("poll: %d devices listed, %d keyboards among them, %.1f us per poll, %.4f%% of a core at one poll per %d ms",
+				MidiSystem.getMidiDeviceInfo().length, watcher.getDeviceCount(), micros, micros / 10 / MidiDeviceWatcher.POLL_INTERVAL, MidiDeviceWatcher.POLL_INTERVAL));
+	}
+
+	private static SculptureSession session(File root, String name)
+	{
+		SculptureSession session = new SculptureSession(name, new File(root, "current"), new File(root, "models"));
+		session.setJournaling(false);
+		return session;
+	}
+
+	//a synthesizer set up like MidiSynthesizer.initSynth, on a stream if there is no audio line
+	private static Synthesizer open()
+	{
+		try
+		{
+			Synthesizer synth = MidiSystem.getSynthesizer();
+			try
+			{
+				synth.open();
+			}
+			catch (MidiUnavailableException e)
+			{
+				Method stream = synth.getClass().getMethod("openStream", AudioFormat.class, Map.class);
+				stream.setAccessible(true);
+				stream.invoke(synth, null, null);
+			}
+			synth.getChannels();
+			synth.loadInstrument(synth.getDefaultSoundbank().getInstruments()[90]);
+			return synth;
+		}
+		catch (Exception e)
+		{
+			return null;
+		}
+	}
+
+	private static long used()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,348 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import lmu_PrintableMusic_object.GcodeStream;
+import lmu_PrintableMusic_object.PrinterBed;
+
+//A stand-in for the printer: reads G-code line by line as it comes, moves a virtual
+//nozzle and reports everything a real printer would choke on or print wrong. No move
+//before homing, no extrusion below the minimum temperature or in absolute E mode,
+//nothing outside the bed, Z never going down, extrusion only on whole layers, retraction
+//balanced and a plausible amount of filament per mm of line. It also records every
+//layer's extruded path, so a caller can check it against the model.
+//
+//  GcodeSimulator <file.gcode> [<width>x<depth>x<height>]
+public class GcodeSimulator
+{
+	public static final int MIN_EXTRUDE_TEMPERATURE = 180;
+	private static final int MAX_ERRORS = 20;
+	private static final double EPSILON = 1e-3;
+
+	private final PrinterBed bed;
+	private final double layer;
+	//mm of filament per mm of line, half to twice that is accepted
+	private final double flow;
+
+	private boolean homed = false;
+	private boolean relativeE = false;
+	private int temperature = 0;
+	private double feed = 0;
+	private double x = 0;
+	private double y = 0;
+	private double z = 0;
+	private double retracted = 0;
+
+	private long lines = 0;
+	private long moves = 0;
+	private double filament = 0;
+	private double seconds = 0;
+	private final List<Layer> layers = new ArrayList<>();
+	private final List<String> errors = new ArrayList<>();
+	private long errorCount = 0;
+
+
+	public GcodeSimulator(PrinterBed bed, double layer, double lineWidth, double filamentDiameter)
+	{
+		this.bed = bed;
+		this.layer = layer;
+		this.flow = lineWidth * layer / (Math.PI * filamentDiameter * filamentDiameter / 4);
+	}
+
+	//the settings GcodeStream prints with
+	public GcodeSimulator(PrinterBed bed)
+	{
+		this(bed, GcodeStream.LAYER, GcodeStream.LINE_WIDTH, GcodeStream.FILAMENT);
+	}
+
+
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.out.println("GcodeSimulator <file.gcode> [<width>x<depth>x<height>]");
+			return;
+		}
+		GcodeSimulator simulator = new GcodeSimulator(args.length > 1 ? PrinterBed.parse(args[1]) : PrinterBed.CONFIGURED);
+		simulator.run(new FileInputStream(new File(args[0])));
+		System.out.println(simulator.report());
+		System.exit(simulator.isValid() ? 0 : 1);
+	}
+
+	//until the stream ends
+	public void run(InputStream in) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+		try
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				execute(line);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	public void execute(String text)
+	{
+		lines++;
+		int comment = text.indexOf(';');
+		String code = (comment >= 0 ? text.substring(0, comment) : text).trim();
+		if(code.isEmpty())
+		{
+			return;
+		}
+
+		String[] words = code.split("\\s+");
+		String command = words[0].toUpperCase();
+		double nx = x, ny = y, nz = z, e = 0;
+		boolean hasE = false;
+		int s = -1;
+		for(int i = 1; i < words.length; i++)
+		{
+			char letter = Character.toUpperCase(words[i].charAt(0));
+			double value;
+			try
+			{
+				value = Double.parseDouble(words[i].substring(1));
+			}
+			catch (NumberFormatException ex)
+			{
+				error("bad number " + words[i]);
+				return;
+			}
+			switch(letter)
+			{
+				case 'X': nx = value; break;
+				case 'Y': ny = value; break;
+				case 'Z': nz = value; break;
+				case 'E': e = value; hasE = true; break;
+				case 'F': feed = value; break;
+				case 'S': s = (int) value; break;
+				default: error("unknown parameter " + words[i] + " of " + command);
+			}
+		}
+
+		switch(command)
+		{
+			case "G0":
+			case "G1":
+				move(nx, ny, nz, e, hasE);
+				break;
+			case "G28":
+				homed = true;
+				x = 0;
+				y = 0;
+				z = 0;
+				break;
+			case "G90":
+				break;
+			case "M82":
+				relativeE = false;
+				break;
+			case "M83":
+				relativeE = true;
+				break;
+			case "M104":
+			case "M109":
+				temperature = Math.max(0, s);
+				break;
+			case "M140":
+			case "M190":
+			case "M106":
+			case "M107":
+			case "M84":
+				break;
+			default:
+				error("unsupported command " + command);
+		}
+	}
+
+	private void move(double nx, double ny, double nz, double e, boolean hasE)
+	{
+		moves++;
+		if(!homed)
+		{
+			error("move before homing");
+		}
+		if(feed <= 0)
+		{
+			error("move without feed rate");
+		}
+		if(nx < -EPSILON || ny < -EPSILON || nz < -EPSILON || nx > bed.getWidth() + EPSILON || ny > bed.getDepth() + EPSILON || nz > bed.getHeight() + EPSILON)
+		{
+			error(String.format("move to %.3f %.3f %.3f leaves the bed", nx, ny, nz));
+		}
+		if(nz < z - EPSILON)
+		{
+			error(String.format("Z goes down from %.3f to %.3f", z, nz));
+		}
+
+		double length = Math.hypot(nx - x, ny - y);
+		if(hasE && e != 0)
+		{
+			if(!relativeE)
+			{
+				error("extrusion in absolute E mode");
+			}
+			if(temperature < MIN_EXTRUDE_TEMPERATURE)
+			{
+				error("extrusion at " + temperature + " degrees");
+			}
+			if(length < EPSILON)
+			{
+				//retraction and the way back
+				retracted -= e;
+				if(retracted < -EPSILON)
+				{
+					error("primes more than it retracted");
+				}
+			}
+			else
+			{
+				if(retracted > EPSILON)
+				{
+					error("extrudes while retracted");
+				}
+				if(e < 0)
+				{
+					error("negative extrusion along a line");
+				}
+				double ratio = e / length / flow;
+				if(ratio < 0.5 || ratio > 2)
+				{
+					error(String.format("%.2f times the filament for the line", ratio));
+				}
+				long number = Math.round(nz / layer);
+				if(number < 1 || Math.abs(number * layer - nz) > EPSILON)
+				{
+					error(String.format("extrusion at Z %.3f, not on a layer", nz));
+				}
+				layer(nz).add(x, y, nx, ny, e);
+			}
+			filament += e;
+		}
+		if(feed > 0)
+		{
+			seconds += Math.max(length, Math.abs(nz - z)) / feed * 60;
+		}
+		x = nx;
+		y = ny;
+		z = nz;
+	}
+
+	private Layer layer(double height)
+	{
+		Layer last = layers.isEmpty() ? null : layers.get(layers.size() - 1);
+		if(last == null || Math.abs(last.z - height) > EPSILON)
+		{
+			last = new Layer(height);
+			layers.add(last);
+		}
+		return last;
+	}
+
+	private void error(String message)
+	{
+		errorCount++;
+		if(errors.size() < MAX_ERRORS)
+		{
+			errors.add("line " + lines + ": " + message);
+		}
+	}
+
+	public boolean isValid() {
+		return errorCount == 0;
+	}
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	//every height something was extruded at, lowest first
+	public List<Layer> getLayers() {
+		return layers;
+	}
+
+	public double getFilament() {
+		return filament;
+	}
+
+	//s, from the moves and feed rates, without acceleration
+	public double getPrintTime() {
+		return seconds;
+	}
+
+	public String report()
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%d lines, %d moves, %d layers, %.0f mm of filament, about %.0f min, %s", lines, moves, layers.size(), filament, seconds / 60,
+				isValid() ? "valid" : errorCount + " errors"));
+		for(String error : errors)
+		{
+			report.append("\n  ").append(error);
+		}
+		return report.toString();
+	}
+
+
+	//what was extruded at one height
+	public static class Layer
+	{
+		final double z;
+		private double length = 0;
+		private double filament = 0;
+		private double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		private double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+		Layer(double z)
+		{
+			this.z = z;
+		}
+
+		void add(double x0, double y0, double x1, double y1, double e)
+		{
+			length += Math.hypot(x1 - x0, y1 - y0);
+			filament += e;
+			minX = Math.min(minX, Math.min(x0, x1));
+			minY = Math.min(minY, Math.min(y0, y1));
+			maxX = Math.max(maxX, Math.max(x0, x1));
+			maxY = Math.max(maxY, Math.max(y0, y1));
+		}
+
+		public double getZ() {
+			return z;
+		}
+
+		//mm of extruded line
+		public double getLength() {
+			return length;
+		}
+
+		public double getFilament() {
+			return filament;
+		}
+
+		//the farthest the nozzle's path gets from x, y while extruding
+		public double reach(double x, double y)
+		{
+			return Math.max(Math.max(Math.abs(minX - x), Math.abs(maxX - x)), Math.max(Math.abs(minY - y), Math.abs(maxY - y)));
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic_object.GcodeStream;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.NoteStore;
+import lmu_PrintableMusic_object.PrinterBed;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Plays a session into a prism sculpture that prints itself: once streaming G-code into a
+//file, timing every note against the same notes without G-code, and once straight into
+//the GcodeSimulator on another thread, the stand-in for a printer. Both streams have to be
+//valid, have one layer per plate and keep every layer inside its plate. The bed is made
+//tall enough for all plates, so the last layers are as high up as the session gets.
+//Last, two sessions record prisms for one printer: the second one is refused the stream
+//until the first one is saved.
+//
+//  GcodeStreaming [notes]
+public class GcodeStreaming
+{
+	public static void main(String[] args) throws Exception
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+		Bench bench = new Bench("gcode");
+		//the printer the sessions share, before anything asks GcodeStream for it
+		System.setProperty("printablemusic.gcode", bench.file("printer.gcode").getPath());
+		try
+		{
+			run(bench, notes);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes) throws Exception
+	{
+		File root = bench.getDirectory();
+		int[][] played = Bench.played(notes, 1);
+		PrinterBed bed = new PrinterBed(PrinterBed.CONFIGURED.getWidth(), PrinterBed.CONFIGURED.getDepth(), (notes + 2) * GcodeStream.LAYER + 20);
+
+		//warm up, then without and with G-code
+		play(played, root, null);
+		play(played, root, new GcodeStream(new ByteArrayOutputStream(), bed));
+		long[] plain = play(played, root, null);
+		File file = new File(root, "streamed.gcode");
+		GcodeStream stream = new GcodeStream(new FileOutputStream(file), bed);
+		long[] printed = play(played, root, stream);
+
+		System.out.println(notes + " notes, bed " + bed);
+		System.out.println(String.format("%-12s %12s %12s %12s %12s", "", "us/note", "first 10%", "last 10%", "max us"));
+		print("no G-code", plain);
+		print("G-code", printed);
+		System.out.println(String.format("per layer %.1f us mean, %.1f us max; %d KB, %.0f m of filament, about %.1f h", stream.getMeanLayerTime() / 1000, stream.getMaxLayerTime() / 1000.0,
+				file.length() / 1024, stream.getFilament() / 1000, stream.getPrintTime() / 3600));
+
+		GcodeSimulator fromFile = new GcodeSimulator(bed);
+		fromFile.run(new FileInputStream(file));
+		ModelPrism prism = Bench.play(new ModelPrism("gcode", new File(root, "current"), root), played);
+		System.out.println("file:    " + check(bench, "file", fromFile, prism.getNotes(), bed));
+
+		//the simulator reads while the notes are played
+		PipedInputStream in = new PipedInputStream(64 * 1024);
+		final PipedOutputStream out = new PipedOutputStream(in);
+		final GcodeSimulator live = new GcodeSimulator(bed);
+		final PipedInputStream printer = in;
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					live.run(printer);
+				}
+				catch (IOException e) {e.printStackTrace();}
+			}
+		}, "printer");
+		thread.start();
+		play(played, root, new GcodeStream(out, bed));
+		thread.join();
+		System.out.println("printer: " + check(bench, "printer", live, prism.getNotes(), bed));
+
+		shared(bench);
+	}
+
+	private static void shared(Bench bench)
+	{
+		SculptureSession first = bench.session("first");
+		first.setMode(SculptureMode.PRISM);
+		first.startRecording();
+		SculptureSession second = bench.session("second");
+		second.setMode(SculptureMode.PRISM);
+		second.startRecording();
+		boolean refused = first.getGcode() != null && second.getGcode() == null;
+
+		first.safeSculpture();
+		first.close();
+		second.startRecording();
+		boolean released = second.getGcode() != null;
+		second.close();
+		System.out.println("shared:  " + (refused ? "second session refused" : "second session not refused") + ", " + (released ? "printing once the first one was saved" : "still refused once the first one was saved"));
+		bench.check(refused, "a second session got the printer " + GcodeStream.CONFIGURED + " while the first one was printing");
+		bench.check(released, "the printer " + GcodeStream.CONFIGURED + " was not free again once the first session was saved");
+	}
+
+	//ns of every note; the G-code is finished with the sculpture
+	private static long[] play(int[][] played, File root, GcodeStream stream) throws IOException
+	{
+		ModelPrism prism = new ModelPrism("gcode", new File(root, "current"), root);
+		prism.setGcode(stream);
+		long[] nanos = new long[played.length];
+		for(int i = 0; i < played.length; i++)
+		{
+			long start = System.nanoTime();
+			prism.addNote(played[i][0], played[i][1], i * 1000000L);
+			nanos[i] = System.nanoTime() - start;
+		}
+		if(stream != null)
+		{
+			stream.close();
+		}
+		return nanos;
+	}
+
+	private static void print(String label, long[] nanos)
+	{
+		int tenth = Math.max(1, nanos.length / 10);
+		System.out.println(String.format("%-12s %12.1f %12.1f %12.1f %12.1f", label, mean(nanos, 0, nanos.length) / 1000, mean(nanos, 0, tenth) / 1000,
+				mean(nanos, nanos.length - tenth, nanos.length) / 1000, max(nanos) / 1000.0));
+	}
+
+	//one layer per plate, each inside its plate; the first layer also has the prime line
+	private static String check(Bench bench, String label, GcodeSimulator simulator, NoteStore plates, PrinterBed bed)
+	{
+		List<GcodeSimulator.Layer> layers = simulator.getLayers();
+		int outside = 0;
+		for(int i = 1; i < Math.min(layers.size(), plates.size()); i++)
+		{
+			double reach = layers.get(i).reach(bed.getWidth() / 2 + plates.getX(i), bed.getDepth() / 2 + plates.getY(i));
+			if(reach > plates.getSize(i) + 1e-3)
+			{
+				outside++;
+			}
+		}
+		bench.check(simulator.isValid(), label + ": invalid G-code");
+		bench.check(layers.size() == plates.size(), label + ": " + layers.size() + " layers for " + plates.size() + " plates");
+		bench.check(outside == 0, label + ": " + outside + " layers outside their plate");
+		return simulator.report() + String.format("; %d plates, %d layers outside their plate", plates.size(), outside);
+	}
+
+	private static double mean(long[] values, int from, int to)
+	{
+		double sum = 0;
+		for(int i = from; i < to; i++)
+		{
+			sum += values[i];
+		}
+		return sum / (to - from);
+	}
+
+	private static long max(long[] values)
+	{
+		long max = 0;
+		for(long value : values)
+		{
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+}
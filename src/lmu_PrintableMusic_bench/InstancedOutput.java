@@ -0,0 +1,198 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.ShapeTable;
+
+//Final SCAD of the same session written plainly and with module instancing, at the exact
+//tolerance and at a coarse one. With the exact one the instanced file, its calls replaced by
+//the module bodies, has to be the plain file line for line. If openscad is on the PATH, the
+//time it takes to parse and evaluate each file (export to .csg, no rendering) is measured too.
+//The prisms are written as plates, the stacked export is a single polyhedron.
+//
+//  InstancedOutput [notes] [coarse tolerance mm] [MIDI files...]
+public class InstancedOutput
+{
+	//ms per written file
+	private static final Map<File, Double> writeTimes = new HashMap<>();
+
+	public static void main(String[] args) throws Exception
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		double coarse = args.length > 1 ? Double.parseDouble(args[1]) : 0.05;
+
+		Bench bench = new Bench("instancing");
+		try
+		{
+			run(bench, notes, coarse, args);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes, double coarse, String[] args) throws Exception
+	{
+		File root = bench.getDirectory();
+		boolean openscad = openscadAvailable();
+		System.out.println(String.format("%-24s %-7s %7s %7s %10s %8s %7s %9s %9s", "session", "mode", "notes", "shapes", "bytes", "ratio", "write", "parse", "identical"));
+
+		if(args.length > 2)
+		{
+			for(int i = 2; i < args.length; i++)
+			{
+				File midi = new File(args[i]);
+				int[][] played = read(midi);
+				compare(bench, midi.getName(), played, coarse, root, openscad);
+			}
+		}
+		else
+		{
+			compare(bench, "played " + notes, Bench.played(notes, 1), coarse, root, openscad);
+		}
+		if(!openscad)
+		{
+			System.out.println("openscad not on the PATH, no parse times");
+		}
+	}
+
+	private static void compare(Bench bench, String session, int[][] played, double coarse, File root, boolean openscad) throws Exception
+	{
+		for(String mode : new String[] {"cube", "prism"})
+		{
+			File plain = write(mode, played, -1, new File(root, "plain_" + mode + ".scad"));
+			File exact = write(mode, played, ShapeTable.DEFAULT_TOLERANCE, new File(root, "exact_" + mode + ".scad"));
+			File rough = write(mode, played, coarse, new File(root, "coarse_" + mode + ".scad"));
+			boolean identical = expand(exact).equals(new String(Files.readAllBytes(plain.toPath()), StandardCharsets.UTF_8));
+			bench.check(identical, session + ", " + mode + ": instanced file at the exact tolerance expands to something else than the plain one");
+
+			print(session, mode, played.length, plain, plain, openscad, "");
+			print("", "exact", played.length, exact, plain, openscad, String.valueOf(identical));
+			print("", coarse + "mm", played.length, rough, plain, openscad, "");
+		}
+	}
+
+	private static File write(String mode, int[][] played, double tolerance, File file) throws IOException
+	{
+		long start = System.nanoTime();
+		Sculpture sculpture;
+		File current = new File(file.getParentFile(), "current");
+		if(mode.equals("cube"))
+		{
+			ModelCube cube = new ModelCube("instancing", current, file.getParentFile());
+			cube.setInstancing(tolerance > 0, tolerance);
+			sculpture = cube;
+		}
+		else
+		{
+			ModelPrism prism = new ModelPrism("instancing", current, file.getParentFile());
+			prism.setStacking(false);
+			prism.setInstancing(tolerance > 0, tolerance);
+			sculpture = prism;
+		}
+		Bench.play(sculpture, played);
+		sculpture.safeForGood(file);
+		writeTimes.put(file, (System.nanoTime() - start) / 1e6);
+		return file;
+	}
+
+	private static void print(String session, String label, int notes, File file, File plain, boolean openscad, String identical) throws Exception
+	{
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		int shapes = text.split("\nmodule shape_", -1).length - 1;
+		String parse = openscad ? String.format("%7.0fms", parse(file)) : "-";
+		System.out.println(String.format("%-24s %-7s %7d %7d %10d %7.1f%% %5.0fms %9s %9s", session, label, notes, shapes, file.length(),
+				100.0 * file.length() / plain.length(), writeTimes.get(file), parse, identical));
+	}
+
+	//the instanced file with every call replaced by the body of its module
+	private static String expand(File file) throws IOException
+	{
+		Map<String, String> bodies = new HashMap<>();
+		StringBuilder out = new StringBuilder();
+		for(String line : new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).split("\n"))
+		{
+			if(line.startsWith("module "))
+			{
+				int open = line.indexOf("() {");
+				bodies.put(line.substring(7, open), line.substring(open + 4, line.length() - 1));
+				continue;
+			}
+			int call = line.indexOf("shape_");
+			if(call >= 0 && line.endsWith("();"))
+			{
+				line = line.substring(0, call) + bodies.get(line.substring(call, line.length() - 3));
+			}
+			out.append(line).append('\n');
+		}
+		return out.toString();
+	}
+
+	private static boolean openscadAvailable()
+	{
+		try
+		{
+			Process p = new ProcessBuilder("openscad", "--version").redirectErrorStream(true).start();
+			return p.waitFor() == 0;
+		}
+		catch (IOException | InterruptedException e)
+		{
+			return false;
+		}
+	}
+
+	//ms to parse and evaluate the file into a CSG tree, the best of three
+	private static double parse(File file) throws IOException, InterruptedException
+	{
+		double best = Double.MAX_VALUE;
+		File csg = new File(file.getPath() + ".csg");
+		for(int i = 0; i < 3; i++)
+		{
+			long start = System.nanoTime();
+			Process p = new ProcessBuilder("openscad", "-o", csg.getPath(), file.getPath()).redirectErrorStream(true).redirectOutput(new File(file.getPath() + ".log")).start();
+			p.waitFor();
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	//pitch and velocity of the note-ons of all tracks, track after track
+	private static int[][] read(File midi) throws InvalidMidiDataException, IOException
+	{
+		List<int[]> played = new ArrayList<>();
+		for(Track track : MidiSystem.getSequence(midi).getTracks())
+		{
+			for(int i = 0; i < track.size(); i++)
+			{
+				MidiEvent event = track.get(i);
+				if(event.getMessage() instanceof ShortMessage)
+				{
+					ShortMessage msg = (ShortMessage) event.getMessage();
+					if(msg.getCommand() == ShortMessage.NOTE_ON && msg.getData2() > 0)
+					{
+						played.add(new int[] {msg.getData1(), msg.getData2()});
+					}
+				}
+			}
+		}
+		return played.toArray(new int[played.size()][]);
+	}
+}
@@ -0,0 +1,100 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import lmu_PrintableMusic.SessionJournal;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Cost of the session journal: appending while another thread maps ahead, then replaying the unfinished journal of a
+//"crashed" recording into each sculpture mode, in events per second and as a multiple
+//of realtime for a performance of 10 notes per second. Last the startup recovery,
+//which also saves the models and deletes the journals.
+//
+//  JournalReplay [events]
+public class JournalReplay
+{
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		final int events = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		Bench bench = new Bench("journal");
+		try
+		{
+			run(bench, events);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int events) throws IOException, InterruptedException
+	{
+		File current = bench.file("current");
+		File models = bench.file("models");
+
+		//the first round only warms up append, its journal is not replayed
+		SessionJournal warmup = record(current, SculptureMode.CUBE, events);
+		warmup.finish();
+
+		for(SculptureMode mode : SculptureMode.values())
+		{
+			long start = System.nanoTime();
+			SessionJournal journal = record(current, mode, events);
+			double append = (System.nanoTime() - start) / (double) events;
+			//no finish(): the recording crashed
+
+			SessionJournal.Reader reader = SessionJournal.Reader.open(journal.getFile());
+			start = System.nanoTime();
+			long notes = reader.replay(mode.create("replay", bench.file("replay-current"), models));
+			double replay = (System.nanoTime() - start) / 1e9;
+
+			System.out.println(String.format("%-6s %d events, append %.1f ns/event (%d stalls), %d MB; replay %.2f s, %.0f events/s, %.0fx realtime",
+					mode, events, append, journal.getStalls(), journal.getFile().length() >> 20, replay, notes / replay, events * 0.1 / replay));
+			bench.check(notes == events, mode + ": replayed " + notes + " of " + events + " notes");
+		}
+
+		long start = System.nanoTime();
+		int recovered = SessionJournal.recover(current, "recovered", bench.file("recovered-current"), models);
+		int left = SessionJournal.findUnfinished(current).size();
+		System.out.println(String.format("recovered %d journals and saved their models in %.2f s, %d unfinished left",
+				recovered, (System.nanoTime() - start) / 1e9, left));
+		bench.check(recovered == SculptureMode.values().length && left == 0, "recovered " + recovered + " of " + SculptureMode.values().length + " journals, " + left + " left");
+		//only the finished warm-up is still there
+		File[] journals = current.listFiles();
+		bench.check(journals != null && journals.length == 1, (journals == null ? 0 : journals.length) + " journals kept after the recovery");
+	}
+
+	//a song-like performance, 10 notes a second, with a second thread mapping ahead
+	private static SessionJournal record(File directory, SculptureMode mode, int events) throws IOException, InterruptedException
+	{
+		final SessionJournal journal = SessionJournal.create(directory, "replay " + mode, mode);
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread mapper = new Thread("journal-mapper")
+		{
+			@Override
+			public void run()
+			{
+				while(!done.get())
+				{
+					journal.prepare();
+					LockSupport.parkNanos(1000000);
+				}
+			}
+		};
+		mapper.start();
+
+		int[][] song = Bench.song(events, 1);
+		long base = System.nanoTime();
+		for(int i = 0; i < events; i++)
+		{
+			journal.append(0x90, song[i][0], song[i][1], base + i * 100000000L);
+		}
+		done.set(true);
+		mapper.join();
+		return journal;
+	}
+}
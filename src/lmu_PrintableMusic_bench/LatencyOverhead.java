@@ -0,0 +1,130 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+
+import lmu_PrintableMusic.LatencyHistogram;
+import lmu_PrintableMusic.LatencyMonitor;
+import lmu_PrintableMusic.MidiEventRing;
+import lmu_PrintableMusic.MidiInputReceiver;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//What the latency measurement costs: a single LatencyHistogram.record and a clock read,
+//then MidiInputReceiver.send() with measuring off and on, as fast as it goes. Last a
+//paced session of one note per ms with its latency table and the CSV it rolled.
+//
+//  LatencyOverhead [notes]
+public class LatencyOverhead
+{
+	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		Bench bench = new Bench("latency");
+		try
+		{
+			run(bench, notes);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes) throws IOException, InvalidMidiDataException
+	{
+
+		LatencyHistogram histogram = new LatencyHistogram("bench");
+		long[] values = new long[1 << 16];
+		Random random = new Random(1);
+		for(int i = 0; i < values.length; i++)
+		{
+			values[i] = (long) (-Math.log(1 - random.nextDouble()) * 50000);
+		}
+		for(int round = 0; round < 3; round++)
+		{
+			long start = System.nanoTime();
+			for(int i = 0; i < 10000000; i++)
+			{
+				histogram.record(values[i & (values.length - 1)]);
+			}
+			double record = (System.nanoTime() - start) / 1e7;
+
+			long sink = 0;
+			start = System.nanoTime();
+			for(int i = 0; i < 10000000; i++)
+			{
+				sink += System.nanoTime();
+			}
+			double clock = (System.nanoTime() - start) / 1e7;
+			System.out.println(String.format("record %.1f ns, System.nanoTime %.1f ns%s", record, clock, sink == 42 ? " " : ""));
+		}
+
+		ShortMessage[] messages = new ShortMessage[128];
+		for(int i = 0; i < messages.length; i++)
+		{
+			messages[i] = new ShortMessage(ShortMessage.NOTE_ON, 0, i, 1 + i % 127);
+		}
+		for(int round = 0; round < 2; round++)
+		{
+			for(boolean on : new boolean[] {false, true})
+			{
+				SculptureSession session = session(bench, "send" + on);
+				session.getLatency().setEnabled(on);
+				MidiInputReceiver receiver = new MidiInputReceiver(session);
+				long start = System.nanoTime();
+				for(int i = 0; i < notes; i++)
+				{
+					receiver.send(messages[i & 127], -1);
+				}
+				double send = (System.nanoTime() - start) / (double) notes;
+				session.safeSculpture();
+				session.close();
+				System.out.println(String.format("send() with measuring %-3s %.1f ns", on ? "on" : "off", send));
+			}
+		}
+
+		SculptureSession session = session(bench, "paced");
+		session.getLatency().setEnabled(true);
+		File csv = bench.file("paced/latency.csv");
+		session.getLatency().startCsv(csv, 200, 1024);
+		MidiInputReceiver receiver = new MidiInputReceiver(session);
+		for(int i = 0; i < 2000; i++)
+		{
+			receiver.send(messages[random.nextInt(88) + 21], -1);
+			LockSupport.parkNanos(1000000);
+		}
+		session.safeSculpture();
+		LockSupport.parkNanos(500000000);
+		System.out.print(session.getLatency().dump());
+		session.close();
+
+		List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.US_ASCII);
+		boolean rolled = bench.file("paced/latency.csv.1").exists();
+		System.out.println(csv + ": " + lines.size() + " lines, rolled over: " + rolled);
+		//the header and at least a row of every interval
+		bench.check(lines.size() > 1 || rolled, csv + " has no rows");
+		for(String line : lines.subList(0, Math.min(5, lines.size())))
+		{
+			System.out.println("  " + line);
+		}
+	}
+
+	private static SculptureSession session(Bench bench, String name)
+	{
+		SculptureSession session = bench.session(name, new MidiEventRing(1 << 16, MidiEventRing.Overflow.BLOCK, 1000), 20);
+		session.setMode(SculptureMode.CUBE);
+		session.startRecording();
+		return session;
+	}
+}
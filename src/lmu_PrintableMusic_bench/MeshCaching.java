@@ -0,0 +1,110 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import lmu_PrintableMusic_object.MeshCache;
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.ParallelStlWriter;
+import lmu_PrintableMusic_object.Sculpture;
+
+//Facet generation per note in the STL export, every model tessellated on its own against
+//the meshes taken from a MeshCache: cold (a new cache), warm (the second export with it)
+//and with a cache too small for the shapes, so it keeps evicting. Every STL has to be
+//byte-identical to the one without cache. Prisms are exported as plates, not stacked.
+//
+//  MeshCaching [notes] [rounds]
+public class MeshCaching
+{
+	public static void main(String[] args) throws Exception
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Bench bench = new Bench("meshes");
+		ForkJoinPool pool = new ForkJoinPool();
+		try
+		{
+			run(bench, pool, notes, rounds);
+		}
+		finally
+		{
+			pool.shutdown();
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, ForkJoinPool pool, int notes, int rounds) throws Exception
+	{
+		File root = bench.getDirectory();
+		System.out.println(notes + " notes, best of " + rounds + " rounds, " + pool.getParallelism() + " threads");
+		System.out.println(String.format("%-7s %-10s %10s %9s %9s %8s %9s %9s", "mode", "cache", "total ms", "us/note", "hits", "misses", "evicted", "identical"));
+
+		for(String mode : new String[] {"cube", "prism"})
+		{
+			Sculpture sculpture = play(mode, notes, root);
+			File plain = new File(root, mode + "_plain.stl");
+			double none = time(sculpture, plain, pool, null, rounds, false);
+			print(bench, mode, "none", none, notes, null, true);
+			byte[] expected = Files.readAllBytes(plain.toPath());
+
+			MeshCache cache = new MeshCache(MeshCache.DEFAULT_CAPACITY);
+			File cold = new File(root, mode + "_cold.stl");
+			print(bench, mode, "cold", time(sculpture, cold, pool, cache, 1, false), notes, cache, Arrays.equals(expected, Files.readAllBytes(cold.toPath())));
+
+			File warm = new File(root, mode + "_warm.stl");
+			print(bench, mode, "warm", time(sculpture, warm, pool, cache, rounds, false), notes, cache, Arrays.equals(expected, Files.readAllBytes(warm.toPath())));
+
+			//room for a handful of shapes only
+			MeshCache small = new MeshCache(mode.equals("cube") ? 24 : 200);
+			File tight = new File(root, mode + "_small.stl");
+			print(bench, mode, "too small", time(sculpture, tight, pool, small, rounds, true), notes, small, Arrays.equals(expected, Files.readAllBytes(tight.toPath())));
+		}
+	}
+
+	private static Sculpture play(String mode, int notes, File root)
+	{
+		File current = new File(root, "current");
+		Sculpture sculpture;
+		if(mode.equals("cube"))
+		{
+			sculpture = new ModelCube("meshes", current, root);
+		}
+		else
+		{
+			ModelPrism prism = new ModelPrism("meshes", current, root);
+			prism.setStacking(false);
+			sculpture = prism;
+		}
+		return Bench.play(sculpture, Bench.played(notes, 1));
+	}
+
+	//ms of the fastest export; clear empties the cache before each one
+	private static double time(Sculpture sculpture, File file, ForkJoinPool pool, MeshCache cache, int rounds, boolean clear) throws Exception
+	{
+		double best = Double.MAX_VALUE;
+		for(int r = 0; r < rounds; r++)
+		{
+			if(clear)
+			{
+				cache.clear();
+			}
+			long start = System.nanoTime();
+			new ParallelStlWriter(pool, cache).writeStl(sculpture, file);
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+
+	private static void print(Bench bench, String mode, String label, double ms, int notes, MeshCache cache, boolean identical)
+	{
+		bench.check(identical, mode + ", " + label + " cache: STL differs from the one without cache");
+		System.out.println(String.format("%-7s %-10s %10.1f %9.1f %9s %8s %9s %9s", mode, label, ms, ms * 1000 / notes,
+				cache == null ? "-" : String.valueOf(cache.getHits()), cache == null ? "-" : String.valueOf(cache.getMisses()),
+				cache == null ? "-" : String.valueOf(cache.getEvictions()), identical));
+	}
+}
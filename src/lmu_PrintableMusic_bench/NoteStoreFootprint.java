@@ -0,0 +1,68 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.coords.Dims3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.models.Cube;
+import lmu_PrintableMusic_object.ModelCube;
+
+//Heap used by 100k recorded notes: the old List<Abstract3dModel> against the NoteStore.
+//Run with a fixed heap (e.g. -Xms1g -Xmx1g) so the numbers are stable. The store has to
+//take less than the list.
+public class NoteStoreFootprint
+{
+	public static void main(String[] args) throws IOException
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+		Bench bench = new Bench("footprint");
+		try
+		{
+			run(bench, notes);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes)
+	{
+		//played before measuring, the notes are no part of either
+		int[][] played = Bench.random(notes, 1);
+
+		long before = usedHeap();
+		List<Abstract3dModel> list = new ArrayList<>();
+		Random random = new Random(1);
+		for(int i = 0; i < notes; i++)
+		{
+			double size = Math.max(1.0, (1 + random.nextInt(127)) % 4);
+			list.add(new Cube(new Dims3d(size, size, size)).move(new Coords3d(random.nextDouble(), random.nextDouble(), random.nextDouble())));
+		}
+		long listBytes = usedHeap() - before;
+		System.out.println("list:       " + listBytes / notes + " bytes/note, " + listBytes / (1024 * 1024) + " MB (" + list.size() + " models)");
+		list = null;
+
+		before = usedHeap();
+		ModelCube cube = Bench.play(new ModelCube("Footprint", bench.file("current"), bench.getDirectory()), played);
+		long storeBytes = usedHeap() - before;
+		System.out.println("note store: " + storeBytes / notes + " bytes/note, " + storeBytes / (1024 * 1024) + " MB (" + cube.getNotes().size() + " notes)");
+		bench.check(storeBytes < listBytes, "the note store takes " + storeBytes + " bytes, the list " + listBytes);
+	}
+
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 5; i++)
+		{
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
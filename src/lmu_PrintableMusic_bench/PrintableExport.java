@@ -0,0 +1,113 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//safePrintable on sample sessions of every mode: triangles per second, and whether the STL
+//is watertight, i.e. every directed edge a->b has exactly as many partners b->a.
+//Exits 1 if one of them is not.
+//
+//  PrintableExport [notes per session] [sessions]
+public class PrintableExport
+{
+	public static void main(String[] args) throws IOException
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		Bench bench = new Bench("stl");
+		try
+		{
+			run(bench, notes, sessions);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes, int sessions) throws IOException
+	{
+		File root = bench.getDirectory();
+		System.out.println(notes + " notes per session on " + Runtime.getRuntime().availableProcessors() + " cores");
+		System.out.println(String.format("%-8s %8s %12s %10s %14s %11s", "mode", "session", "triangles", "s", "triangles/s", "watertight"));
+
+		for(SculptureMode mode : SculptureMode.values())
+		{
+			for(int s = 0; s < sessions; s++)
+			{
+				Sculpture sculpture = Bench.play(mode.create("sample", new File(root, "current"), root), Bench.random(notes, s));
+
+				File stl = new File(root, mode.name().toLowerCase() + s + ".stl");
+				long start = System.nanoTime();
+				sculpture.safePrintable(stl);
+				double seconds = (System.nanoTime() - start) / 1e9;
+
+				long triangles = (stl.length() - 84) / 50;
+				boolean closed = watertight(stl);
+				System.out.println(String.format("%-8s %8d %12d %10.2f %14.0f %11s", mode.name().toLowerCase(), s, triangles, seconds, triangles / seconds, closed));
+				bench.check(closed, mode.name().toLowerCase() + " session " + s + ": STL is not watertight");
+				stl.delete();
+			}
+		}
+	}
+
+	//one 64 bit hash per directed edge; sorted, the edges and their reverses must be the same list
+	static boolean watertight(File stl) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(stl, "r");
+		try
+		{
+			MappedByteBuffer map = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			int triangles = map.getInt(80);
+			if(84L + triangles * 50L != in.length())
+			{
+				return false;
+			}
+
+			long[] edges = new long[triangles * 3];
+			long[] reverse = new long[triangles * 3];
+			long[] vertex = new long[3];
+			for(int t = 0; t < triangles; t++)
+			{
+				int offset = 84 + t * 50 + 12;
+				for(int v = 0; v < 3; v++)
+				{
+					vertex[v] = hash(map.getInt(offset + v * 12), map.getInt(offset + v * 12 + 4), map.getInt(offset + v * 12 + 8));
+				}
+				for(int v = 0; v < 3; v++)
+				{
+					long a = vertex[v];
+					long b = vertex[(v + 1) % 3];
+					edges[t * 3 + v] = a * 31 + Long.rotateLeft(b, 17);
+					reverse[t * 3 + v] = b * 31 + Long.rotateLeft(a, 17);
+				}
+			}
+			Arrays.sort(edges);
+			Arrays.sort(reverse);
+			return Arrays.equals(edges, reverse);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static long hash(int x, int y, int z)
+	{
+		long h = x * 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 29) ^ y) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 31) ^ z) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 32);
+	}
+}
@@ -0,0 +1,72 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.PrismBudget;
+import lmu_PrintableMusic_object.PrismStack;
+
+//The same played session into prism sculptures without budget and with budgets of a half,
+//a quarter and a tenth of its full triangle count. For each: the triangles the budget
+//counted while the notes came in against those of the exported PrismStack, the plates
+//that continued the run below, and how far their outlines are off the full resolution.
+//
+//  PrismBudgeting [notes] [max tolerance mm]
+public class PrismBudgeting
+{
+	public static void main(String[] args) throws Exception
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		double tolerance = args.length > 1 ? Double.parseDouble(args[1]) : PrismBudget.DEFAULT_MAX_TOLERANCE;
+
+		Bench bench = new Bench("budget");
+		try
+		{
+			run(bench, notes, tolerance);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes, double tolerance) throws Exception
+	{
+		File root = bench.getDirectory();
+		int[][] played = Bench.played(notes, 1);
+
+		//no limit, the budget only counts
+		ModelPrism full = play(played, Long.MAX_VALUE, tolerance, root);
+		long all = full.getBudget().getTriangles();
+
+		System.out.println(notes + " notes, max tolerance " + tolerance + " mm");
+		System.out.println(String.format("%-10s %10s %10s %10s %8s %8s %9s %9s %9s", "budget", "counted", "exported", "of full", "joined", "forced", "max mm", "mean mm", "SCAD KB"));
+		print(bench, "none", full, Long.MAX_VALUE, tolerance, all);
+		for(int divisor : new int[] {2, 4, 10})
+		{
+			print(bench, "1/" + divisor, play(played, all / divisor, tolerance, root), all / divisor, tolerance, all);
+		}
+	}
+
+	private static ModelPrism play(int[][] played, long budget, double tolerance, File root)
+	{
+		ModelPrism prism = new ModelPrism("budget", new File(root, "current"), root);
+		prism.setBudget(budget, tolerance);
+		return Bench.play(prism, played);
+	}
+
+	private static void print(Bench bench, String label, ModelPrism prism, long limit, double tolerance, long all) throws Exception
+	{
+		PrismBudget budget = prism.getBudget();
+		PrismStack stack = (PrismStack) prism.getModel(0);
+		bench.check(budget.getTriangles() == stack.getTriangleCount(), label + ": " + budget.getTriangles() + " triangles counted, " + stack.getTriangleCount() + " exported");
+		bench.check(stack.getTriangleCount() <= all, label + ": " + stack.getTriangleCount() + " triangles exported, more than the " + all + " without budget");
+		//only the plates past the budget may be off by more than a recessed plate
+		bench.check(budget.getForced() > 0 || budget.getMaxDeviation() <= 2 * tolerance, label + ": plates off by " + budget.getMaxDeviation() + " mm, before the budget of " + limit + " was used up");
+		File scad = new File(bench.getDirectory(), "budget_" + label.replace('/', '_') + ".scad");
+		prism.safeForGood(scad);
+		System.out.println(String.format("%-10s %10d %10d %9.1f%% %8d %8d %9.3f %9.4f %9d", label, budget.getTriangles(), stack.getTriangleCount(),
+				100.0 * stack.getTriangleCount() / all, budget.getJoined(), budget.getForced(), budget.getMaxDeviation(), budget.getMeanDeviation(), scad.length() / 1024));
+	}
+}
@@ -0,0 +1,118 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import eu.printingin3d.javascad.vrl.CSG;
+import lmu_PrintableMusic_object.ModelCreate;
+import lmu_PrintableMusic_object.ModelPrism;
+import lmu_PrintableMusic_object.NoteStore;
+import lmu_PrintableMusic_object.PrismStack;
+
+//Prism export as single plates against one lofted PrismStack: SCAD (safeForGood) time
+//and size, STL (safePrintable) time and whether it is watertight, and the CSG a printable
+//union needs, which for the plates is the union itself. The volume of the stack has to be
+//close to the plates' polygons times their height, only the STEP bands between runs differ,
+//and every STL has to be watertight.
+//
+//  PrismStacking [max notes for the plate union] [note counts...]
+public class PrismStacking
+{
+	//share of the plates' volume the STEP bands may add or take
+	private static final double TOLERANCE = 0.01;
+
+	public static void main(String[] args) throws IOException
+	{
+		int unionLimit = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int[] counts = {300, 1000, 5000, 20000};
+		if(args.length > 1)
+		{
+			counts = new int[args.length - 1];
+			for(int i = 1; i < args.length; i++)
+			{
+				counts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		Bench bench = new Bench("stacking");
+		try
+		{
+			run(bench, unionLimit, counts);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int unionLimit, int[] counts) throws IOException
+	{
+		System.out.println(String.format("%7s %-7s %8s %10s %8s %10s %8s %10s %10s %11s",
+				"notes", "export", "SCAD s", "SCAD KB", "STL s", "triangles", "closed", "union s", "volume", "plates vol"));
+		for(int notes : counts)
+		{
+			//a few pitches and velocities over and over, so equal plates follow each other now and then
+			int[][] song = Bench.song(notes, 1);
+			for(boolean stacking : new boolean[] {false, true})
+			{
+				ModelPrism prism = new ModelPrism("stacking", bench.file("current"), bench.getDirectory());
+				prism.setStacking(stacking);
+				Bench.play(prism, song);
+				String name = notes + (stacking ? "_stack" : "_plates");
+
+				File scad = bench.file(name + ".scad");
+				long start = System.nanoTime();
+				prism.safeForGood(scad);
+				double scadSeconds = (System.nanoTime() - start) / 1e9;
+
+				File stl = bench.file(name + ".stl");
+				start = System.nanoTime();
+				prism.safePrintable(stl);
+				double stlSeconds = (System.nanoTime() - start) / 1e9;
+				long triangles = (stl.length() - 84) / 50;
+				boolean closed = PrintableExport.watertight(stl);
+				double plates = platesVolume(prism.getNotes());
+
+				String unionSeconds = "-";
+				String volume = "-";
+				if(stacking || notes <= unionLimit)
+				{
+					start = System.nanoTime();
+					CSG union = new ModelCreate(prism.getModels()).toCSG();
+					unionSeconds = String.format("%.2f", (System.nanoTime() - start) / 1e9);
+					double v = Bench.volume(union);
+					volume = String.format("%.1f", v);
+					if(stacking)
+					{
+						bench.check(Math.abs(v - plates) <= TOLERANCE * plates, name + ": volume " + volume + " against " + String.format("%.1f", plates) + " of the plates");
+					}
+				}
+
+				System.out.println(String.format("%7d %-7s %8.2f %10d %8.2f %10d %8s %10s %10s %11.1f",
+						notes, stacking ? "stack" : "plates", scadSeconds, scad.length() / 1024, stlSeconds, triangles,
+						closed, unionSeconds, volume, plates));
+				bench.check(closed, name + ": STL not watertight");
+
+				if(stacking)
+				{
+					PrismStack stack = (PrismStack) prism.getModel(0);
+					System.out.println(String.format("%7s %-7s %d points, %d triangles", "", "", stack.getPointCount(), stack.getTriangleCount()));
+				}
+			}
+		}
+	}
+
+	//the regular polygons of openSCAD's cylinders times the plate height
+	private static double platesVolume(NoteStore notes)
+	{
+		double volume = 0;
+		for(int i = 0; i < notes.size(); i++)
+		{
+			int n = notes.getSides(i);
+			double r = notes.getSize(i);
+			volume += n / 2.0 * r * r * Math.sin(2 * Math.PI / n) * 0.2;
+		}
+		return volume;
+	}
+}
@@ -0,0 +1,139 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sound.midi.ShortMessage;
+
+import lmu_PrintableMusic.MidiEventRing;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SessionJournal;
+import lmu_PrintableMusic_object.Sculpture;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//16 sessions recording at the same time, each fed by its own thread as fast as it can.
+//Afterwards every session's final model must be byte-identical to the same notes
+//rendered alone, otherwise the sessions leaked into each other, and its journal deleted.
+//
+//  SessionStress [sessions] [notes per session]
+public class SessionStress
+{
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int notes = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+
+		Bench bench = new Bench("sessions");
+		try
+		{
+			run(bench, sessions, notes);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int sessions, final int notes) throws IOException, InterruptedException
+	{
+		File root = bench.getDirectory();
+		final SculptureSession[] session = new SculptureSession[sessions];
+		for(int i = 0; i < sessions; i++)
+		{
+			//blocks as long as a snapshot of a big sculpture can take on a busy machine
+			session[i] = bench.session("session" + i, new MidiEventRing(4096, MidiEventRing.Overflow.BLOCK, 10000), 20);
+			//journaled like a recording of the installation
+			session[i].setJournaling(true);
+			session[i].setMode(i % 2 == 0 ? SculptureMode.CUBE : SculptureMode.PRISM);
+			session[i].startRecording();
+		}
+
+		final CountDownLatch go = new CountDownLatch(1);
+		Thread[] players = new Thread[sessions];
+		for(int i = 0; i < sessions; i++)
+		{
+			final int index = i;
+			players[i] = new Thread("player" + i)
+			{
+				@Override
+				public void run()
+				{
+					Random random = new Random(index);
+					try
+					{
+						go.await();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+					for(int n = 0; n < notes; n++)
+					{
+						session[index].noteOn(ShortMessage.NOTE_ON, 21 + random.nextInt(88), 1 + random.nextInt(127), System.nanoTime());
+					}
+				}
+			};
+			players[i].start();
+		}
+
+		long start = System.nanoTime();
+		go.countDown();
+		for(Thread player : players)
+		{
+			player.join();
+		}
+		for(SculptureSession s : session)
+		{
+			s.safeSculpture();
+		}
+		for(SculptureSession s : session)
+		{
+			s.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		int broken = 0;
+		long dropped = 0;
+		long snapshots = 0;
+		for(int i = 0; i < sessions; i++)
+		{
+			dropped += session[i].getRing().getOverflows();
+			snapshots += session[i].getWriter().getWrittenSnapshots();
+
+			File[] models = new File(root, "session" + i + "/models").listFiles();
+			Random random = new Random(i);
+			Sculpture reference = session[i].getMode().create("reference", new File(root, "reference/current"), new File(root, "reference"));
+			for(int n = 0; n < notes; n++)
+			{
+				reference.addNote(21 + random.nextInt(88), 1 + random.nextInt(127), 0);
+			}
+			File expected = new File(root, "reference/session" + i + ".scad");
+			reference.safeForGood(expected);
+
+			if(!bench.check(models != null && models.length == 1 && Arrays.equals(Files.readAllBytes(models[0].toPath()), Files.readAllBytes(expected.toPath())),
+					"session" + i + ": model differs from the reference"))
+			{
+				broken++;
+			}
+			//saved for good, the journal is gone
+			File[] journals = new File(root, "session" + i + "/current").listFiles();
+			int kept = 0;
+			for(File f : journals == null ? new File[0] : journals)
+			{
+				kept += f.getName().endsWith(SessionJournal.EXTENSION) ? 1 : 0;
+			}
+			bench.check(kept == 0, "session" + i + ": " + kept + " journals kept after the model was saved");
+		}
+
+		long total = (long) sessions * notes;
+		System.out.println(sessions + " sessions x " + notes + " notes on " + Runtime.getRuntime().availableProcessors() + " cores");
+		System.out.println(String.format("%.2f s, %.0f notes/s in total, %.0f notes/s per session", seconds, total / seconds, notes / seconds));
+		System.out.println("snapshots written: " + snapshots + ", dropped events: " + dropped + ", sessions not isolated: " + broken);
+		bench.check(dropped == 0, dropped + " events dropped although the rings block");
+	}
+}
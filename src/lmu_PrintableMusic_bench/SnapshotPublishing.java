@@ -0,0 +1,187 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import eu.printingin3d.javascad.context.ScadGenerationContextFactory;
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ModelFiles;
+import lmu_PrintableMusic_object.SnapshotPublisher;
+
+//What openSCAD sees of the live preview. A reader thread keeps reading the top file and
+//every body chunk it includes, like an auto-reload, and counts the reads that found a
+//file cut off or a chunk missing. The same snapshots are written once by overwriting
+//the files in place and once through the SnapshotPublisher, with and without interval.
+//Then publish count, held back versions and time per publish for the sync policies.
+//
+//  SnapshotPublishing [notes] [ms between notes]
+public class SnapshotPublishing
+{
+	private static final String NAME = "publish";
+	//the top file openSCAD would watch
+	private static final String PREVIEW = ModelFiles.preview(NAME);
+
+	private static volatile boolean reading;
+
+	public static void main(String[] args) throws Exception
+	{
+		int notes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		long gap = args.length > 1 ? Long.parseLong(args[1]) : 2;
+
+		Bench bench = new Bench("publish");
+		try
+		{
+			run(bench, notes, gap);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int notes, long gap) throws Exception
+	{
+		File root = bench.getDirectory();
+		System.out.println(notes + " notes, one snapshot every " + gap + " ms");
+		System.out.println(String.format("%-22s %8s %8s %8s %9s %9s %9s", "writes", "reads", "torn", "publish", "held back", "mean ms", "max ms"));
+
+		//torn reads are what the publisher is there against, in place they are expected
+		run(bench, "in place", new File(root, "inplace"), notes, gap, -1, SnapshotPublisher.Sync.NONE);
+		run(bench, "rename, no interval", new File(root, "rename0"), notes, gap, 0, SnapshotPublisher.Sync.NONE);
+		run(bench, "rename, 100 ms", new File(root, "rename100"), notes, gap, 100, SnapshotPublisher.Sync.NONE);
+		run(bench, "rename, 100 ms, data", new File(root, "data"), notes, gap, 100, SnapshotPublisher.Sync.DATA);
+		run(bench, "rename, 100 ms, full", new File(root, "full"), notes, gap, 100, SnapshotPublisher.Sync.FULL);
+	}
+
+	//interval -1 overwrites the files in place instead of publishing them
+	private static void run(Bench bench, String label, File dir, int notes, long gap, long interval, SnapshotPublisher.Sync sync) throws Exception
+	{
+		final File current = new File(dir, "current");
+		current.mkdirs();
+		ModelCube cube = new ModelCube(NAME, current, new File(dir, "models"));
+		SnapshotPublisher publisher = SnapshotPublisher.forDirectory(current);
+		publisher.setMinInterval(Math.max(0, interval));
+		publisher.setSync(sync);
+
+		final AtomicLong reads = new AtomicLong();
+		final AtomicLong torn = new AtomicLong();
+		reading = true;
+		Thread reader = new Thread("reader")
+		{
+			@Override
+			public void run()
+			{
+				while(reading)
+				{
+					if(!complete(new File(current, PREVIEW + ".scad")))
+					{
+						torn.incrementAndGet();
+					}
+					reads.incrementAndGet();
+					Thread.yield();
+				}
+			}
+		};
+		reader.start();
+
+		Random random = new Random(1);
+		for(int i = 0; i < notes; i++)
+		{
+			cube.addNote(21 + random.nextInt(88), 1 + random.nextInt(127), i * 1000000L);
+			if(interval < 0)
+			{
+				writeInPlace(cube, current);
+			}
+			else
+			{
+				cube.safeModel();
+			}
+			LockSupport.parkNanos(gap * 1000000);
+		}
+		cube.closeSnapshot();
+		reading = false;
+		reader.join();
+
+		if(interval < 0)
+		{
+			System.out.println(String.format("%-22s %8d %8d %8d %9s %9s %9s", label, reads.get(), torn.get(), notes, "-", "-", "-"));
+		}
+		else
+		{
+			System.out.println(String.format("%-22s %8d %8d %8d %9d %9.3f %9.3f", label, reads.get(), torn.get(), publisher.getPublishes(),
+					publisher.getHeldBack(), publisher.getMeanPublishTime(), publisher.getMaxPublishTime()));
+			bench.check(torn.get() == 0, label + ": " + torn.get() + " of " + reads.get() + " reads found the published preview torn");
+		}
+	}
+
+	//the whole preview rewritten over the old files, what happens without the publisher
+	private static void writeInPlace(ModelCube cube, File current) throws IOException
+	{
+		StringBuilder body = new StringBuilder();
+		for(int i = 0; i < cube.getPrimitiveCount(); i++)
+		{
+			body.append(cube.getPrimitive(i).toScad(ScadGenerationContextFactory.DEFAULT).getScad().replace('\n', ' ').trim()).append('\n');
+		}
+		OutputStream out = new FileOutputStream(new File(current, PREVIEW + "_body_0.scad"));
+		try
+		{
+			out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		finally
+		{
+			out.close();
+		}
+		out = new FileOutputStream(new File(current, PREVIEW + ".scad"));
+		try
+		{
+			out.write(("union()\n{\ninclude <" + PREVIEW + "_body_0.scad>\n}\n").getBytes(StandardCharsets.UTF_8));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	//the top file and every chunk it includes end with a full line, an empty one renders nothing
+	private static boolean complete(File top)
+	{
+		try
+		{
+			if(!top.exists())
+			{
+				return true;
+			}
+			String text = new String(Files.readAllBytes(top.toPath()), StandardCharsets.UTF_8);
+			if(!text.endsWith("}\n"))
+			{
+				return false;
+			}
+			for(String line : text.split("\n"))
+			{
+				if(line.startsWith("include <"))
+				{
+					File chunk = new File(top.getParentFile(), line.substring(9, line.length() - 1));
+					byte[] body = Files.readAllBytes(chunk.toPath());
+					if(body.length == 0 || body[body.length - 1] != '\n')
+					{
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			//a missing chunk is as bad as a cut one
+			return false;
+		}
+	}
+}
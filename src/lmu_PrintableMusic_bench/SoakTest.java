@@ -0,0 +1,282 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import lmu_PrintableMusic.LatencyHistogram;
+import lmu_PrintableMusic.MidiInputReceiver;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SyntheticMidiDevice;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Hours of playing on several keyboards, without the keyboards: SyntheticMidiDevices feed
+//one session each, every recording is saved and a new one started after a cycle, like
+//visitor after visitor. Every sample prints the notes, the heap, the GC pauses, the p99 of
+//the snapshot writes (send to file written) and the dropped events.
+//At the end of every cycle the live heap is measured after a full GC, at the same point of
+//the recording, so it has to stay flat. The run fails if the live heap of the last cycles
+//is more than the allowed growth above the first one, if there are fewer than three cycles
+//to tell, or if a sample's p99 is too slow. The samples leave out the switch to the next
+//recording: saving, the heap measurement and a second for the writers to catch up.
+//
+//  SoakTest [--duration s] [--devices n] [--pattern random|scale|chords|trill[:notes/s]|file:song.mid[:speed]]
+//           [--mode cube|prism|voxel] [--cycle s] [--sample s] [--max-heap-growth MB] [--max-p99 ms]
+public class SoakTest
+{
+	private long duration = 60;
+	private int devices = 2;
+	private String pattern = "chords:200";
+	private SculptureMode mode = SculptureMode.CUBE;
+	private long cycle = 10;
+	private long sample = 5;
+	private double maxHeapGrowth = 32;
+	private double maxP99 = 500;
+
+	private static final long SETTLE = 1000; //ms
+
+	//GC pauses in ns, explicit ones of the heap measurement left out
+	private final LatencyHistogram pauses = new LatencyHistogram("gc");
+
+
+	public static void main(String[] args) throws Exception
+	{
+		SoakTest soak = new SoakTest();
+		for(int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			String value = i + 1 < args.length ? args[++i] : "";
+			if(arg.equals("--duration"))
+			{
+				soak.duration = Long.parseLong(value);
+			}
+			else if(arg.equals("--devices"))
+			{
+				soak.devices = Integer.parseInt(value);
+			}
+			else if(arg.equals("--pattern"))
+			{
+				soak.pattern = value;
+			}
+			else if(arg.equals("--mode"))
+			{
+				soak.mode = SculptureMode.valueOf(value.toUpperCase());
+			}
+			else if(arg.equals("--cycle"))
+			{
+				soak.cycle = Long.parseLong(value);
+			}
+			else if(arg.equals("--sample"))
+			{
+				soak.sample = Long.parseLong(value);
+			}
+			else if(arg.equals("--max-heap-growth"))
+			{
+				soak.maxHeapGrowth = Double.parseDouble(value);
+			}
+			else if(arg.equals("--max-p99"))
+			{
+				soak.maxP99 = Double.parseDouble(value);
+			}
+			else
+			{
+				System.err.println("unknown option " + arg);
+				System.exit(2);
+			}
+		}
+		Bench bench = new Bench("soak");
+		try
+		{
+			soak.run(bench);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private void run(Bench bench) throws Exception
+	{
+		listenToGc();
+
+		SyntheticMidiDevice[] device = new SyntheticMidiDevice[devices];
+		SculptureSession[] session = new SculptureSession[devices];
+		for(int i = 0; i < devices; i++)
+		{
+			device[i] = SyntheticMidiDevice.fromSpec("soak" + i, pattern);
+			session[i] = bench.session("soak" + i);
+			//journaled like a recording of the installation
+			session[i].setJournaling(true);
+			session[i].setMode(mode);
+			session[i].startRecording();
+			device[i].getTransmitter().setReceiver(new MidiInputReceiver(session[i]));
+		}
+		System.out.println(devices + " x " + device[0].getDeviceInfo().getDescription() + " into " + mode + " for " + duration + " s, a new sculpture every " + cycle + " s");
+		for(SyntheticMidiDevice d : device)
+		{
+			d.open();
+		}
+
+		List<Double> liveHeap = new ArrayList<>();
+		LatencyHistogram.Snapshot[] previous = new LatencyHistogram.Snapshot[devices];
+		double worstP99 = 0;
+		long start = System.nanoTime();
+		long nextSample = sample;
+		long nextCycle = cycle;
+		long lastNotes = 0;
+		while(true)
+		{
+			long elapsed = (System.nanoTime() - start) / 1000000000L;
+			if(elapsed >= duration)
+			{
+				break;
+			}
+			if(elapsed >= nextSample)
+			{
+				long notes = 0;
+				long dropped = 0;
+				double p99 = 0;
+				for(int i = 0; i < devices; i++)
+				{
+					notes += device[i].getNotes();
+					dropped += session[i].getRing().getOverflows();
+					LatencyHistogram.Snapshot disk = session[i].getLatency().getHistogram("disk").snapshot();
+					LatencyHistogram.Snapshot delta = previous[i] == null ? disk : disk.minus(previous[i]);
+					previous[i] = disk;
+					p99 = Math.max(p99, delta.percentile(0.99) / 1e6);
+				}
+				worstP99 = Math.max(worstP99, p99);
+				MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+				LatencyHistogram.Snapshot gc = pauses.snapshot();
+				System.out.println(String.format("%6d s  notes %9d (%5.0f/s)  heap %6.1f MB  gc %5d pauses, p99 %6.1f ms, max %6.1f ms  snapshot p99 %7.1f ms  dropped %d",
+						elapsed, notes, (notes - lastNotes) / (double) sample, heap.getUsed() / 1048576.0, gc.getCount(), gc.percentile(0.99) / 1e6, gc.getMax() / 1e6, p99, dropped));
+				lastNotes = notes;
+				nextSample += sample;
+			}
+			if(elapsed >= nextCycle)
+			{
+				liveHeap.add(liveHeap());
+				for(int i = 0; i < devices; i++)
+				{
+					session[i].safeSculpture();
+					session[i].startRecording();
+					deleteOld(bench.file("soak" + i + "/models"), cycle * 2000);
+					deleteOld(bench.file("soak" + i + "/current"), cycle * 2000);
+				}
+				//what waited for the switch is no latency of the writers, the next sample starts after it
+				Thread.sleep(SETTLE);
+				for(int i = 0; i < devices; i++)
+				{
+					previous[i] = session[i].getLatency().getHistogram("disk").snapshot();
+				}
+				nextCycle += cycle;
+			}
+			Thread.sleep(100);
+		}
+
+		for(SyntheticMidiDevice d : device)
+		{
+			d.close();
+		}
+		for(SculptureSession s : session)
+		{
+			s.close();
+		}
+
+		//the first cycle warms up, the last third is compared with it
+		boolean heapOk = false;
+		String heapVerdict = liveHeap.size() + " cycles, not enough for a heap verdict";
+		if(liveHeap.size() >= 3)
+		{
+			double first = liveHeap.get(0);
+			double last = Double.MAX_VALUE;
+			for(int i = liveHeap.size() - Math.max(1, liveHeap.size() / 3); i < liveHeap.size(); i++)
+			{
+				last = Math.min(last, liveHeap.get(i));
+			}
+			heapOk = last - first <= maxHeapGrowth;
+			heapVerdict = String.format("live heap %.1f MB after the first cycle, %.1f MB at the end, allowed growth %.1f MB", first, last, maxHeapGrowth);
+		}
+		boolean latencyOk = worstP99 <= maxP99;
+
+		System.out.println("live heap per cycle (MB): " + format(liveHeap));
+		System.out.println(heapVerdict);
+		System.out.println(String.format("worst snapshot p99 %.1f ms, allowed %.1f ms", worstP99, maxP99));
+		bench.check(liveHeap.size() >= 3, "fewer than 3 cycles of " + cycle + " s in " + duration + " s");
+		bench.check(heapOk || liveHeap.size() < 3, "the live heap grew by more than " + maxHeapGrowth + " MB");
+		bench.check(latencyOk, "a snapshot p99 took more than " + maxP99 + " ms");
+	}
+
+	//MB in use right after a full collection
+	private static double liveHeap()
+	{
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1048576.0;
+	}
+
+	private void listenToGc()
+	{
+		NotificationListener listener = new NotificationListener()
+		{
+			@Override
+			public void handleNotification(Notification notification, Object handback)
+			{
+				if(!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+				{
+					return;
+				}
+				GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+				if(!info.getGcCause().equals("System.gc()"))
+				{
+					pauses.record(info.getGcInfo().getDuration() * 1000000L);
+				}
+			}
+		};
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			if(gc instanceof NotificationEmitter)
+			{
+				((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+			}
+		}
+	}
+
+	//keeps the disk from filling up over hours, the recent files stay
+	private static void deleteOld(File dir, long ageMillis)
+	{
+		File[] files = dir.listFiles();
+		if(files == null)
+		{
+			return;
+		}
+		long limit = System.currentTimeMillis() - ageMillis;
+		for(File f : files)
+		{
+			if(f.isFile() && f.lastModified() < limit)
+			{
+				f.delete();
+			}
+		}
+	}
+
+	private static String format(List<Double> values)
+	{
+		StringBuilder text = new StringBuilder();
+		for(double v : values)
+		{
+			text.append(text.length() > 0 ? ", " : "").append(String.format("%.1f", v));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,215 @@
+package lmu_PrintableMusic_bench;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.sound.midi.MidiUnavailableException;
+
+import lmu_PrintableMusic.Frontend;
+import lmu_PrintableMusic.FrontendResources;
+import lmu_PrintableMusic.MidiEventRing;
+import lmu_PrintableMusic.MidiHandler;
+import lmu_PrintableMusic.MidiInputReceiver;
+import lmu_PrintableMusic.SculptureSession;
+import lmu_PrintableMusic.SculptureWriter;
+import lmu_PrintableMusic.SyntheticMidiDevice;
+import lmu_PrintableMusic_object.SculptureMode;
+
+//Time to first note: from the start of a fresh JVM until every keyboard has had its first
+//note recorded, with SyntheticMidiDevices for keyboards. Each variant runs in its own JVM:
+//  before     the old frontend's work on the connecting thread, for every keyboard: the font
+//             read twice, four JPEGs read from the Resources folder and scaled smoothly
+//  cold       the shared frontend, loading from the classpath into an empty picture cache
+//  warm       the same with the pictures cached by the run before
+//  headless   no frontend at all (-Dprintablemusic.headless=true)
+//The frontend variants also say when font and pictures were ready. Without a display no
+//window is shown, the loading is the same.
+//
+//  StartupTime [keyboards] [runs]
+public class StartupTime
+{
+	private static final String PICTURES = "Resources" + File.separator + "PRINTABLE_MUSIC" + File.separator;
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length > 0 && args[0].equals("--probe"))
+		{
+			probe(args[1], Integer.parseInt(args[2]), new File(args[3]));
+			return;
+		}
+		int keyboards = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		Bench bench = new Bench("startup");
+		try
+		{
+			run(bench, keyboards, runs);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int keyboards, int runs) throws IOException, InterruptedException
+	{
+		File root = bench.getDirectory();
+		System.out.println(keyboards + " keyboards, median of " + runs + " fresh JVMs, display " + (GraphicsEnvironment.isHeadless() ? "none" : "yes"));
+		System.out.println(String.format("%-10s %16s %16s", "variant", "first note ms", "resources ms"));
+		for(String variant : new String[] {"before", "cold", "warm", "headless"})
+		{
+			long[] note = new long[runs];
+			long[] ready = new long[runs];
+			for(int r = 0; r < runs; r++)
+			{
+				File cache = new File(root, "cache");
+				if(variant.equals("cold"))
+				{
+					Bench.delete(cache);
+				}
+				String[] result = child(variant, keyboards, root, cache);
+				note[r] = Long.parseLong(result[0]);
+				ready[r] = Long.parseLong(result[1]);
+				bench.check(note[r] >= 0, variant + ": run " + r + " recorded no first note on every keyboard");
+			}
+			System.out.println(String.format("%-10s %16d %16s", variant, median(note), median(ready) < 0 ? "-" : String.valueOf(median(ready))));
+		}
+	}
+
+	//the probe's "first note" and "resources" lines
+	private static String[] child(String variant, int keyboards, File root, File cache) throws IOException, InterruptedException
+	{
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-Dprintablemusic.imageCache=" + cache);
+		command.add("-Dprintablemusic.headless=" + variant.equals("headless"));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path") + File.pathSeparator + "Resources");
+		command.addAll(Arrays.asList(StartupTime.class.getName(), "--probe", variant, String.valueOf(keyboards), root.getPath()));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String[] result = {"-1", "-1"};
+		String line;
+		while((line = out.readLine()) != null)
+		{
+			if(line.startsWith("first note "))
+			{
+				result[0] = line.substring("first note ".length());
+			}
+			else if(line.startsWith("resources "))
+			{
+				result[1] = line.substring("resources ".length());
+			}
+		}
+		process.waitFor();
+		return result;
+	}
+
+	private static void probe(String variant, int keyboards, File root) throws Exception
+	{
+		long start = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+		//like Main: the hardware first, then the stand-ins
+		MidiHandler midi = new MidiHandler();
+		SculptureSession[] sessions = new SculptureSession[keyboards];
+		for(int i = 0; i < keyboards; i++)
+		{
+			SyntheticMidiDevice device = SyntheticMidiDevice.fromSpec("Synthetic " + i, "chords:200");
+			File dir = new File(root, variant + i);
+			sessions[i] = new SculptureSession("startup" + i, new File(dir, "current"), new File(dir, "models"),
+					new MidiEventRing(SculptureSession.DEFAULT_RING_CAPACITY, MidiEventRing.Overflow.DROP_NEWEST, 0), SculptureWriter.DEFAULT_MIN_WRITE_INTERVAL);
+			sessions[i].setJournaling(false);
+			if(variant.equals("before"))
+			{
+				MidiInputReceiver receiver = new MidiInputReceiver(sessions[i]);
+				try
+				{
+					receiver.initSynth();
+				}
+				catch (MidiUnavailableException e)
+				{
+					//the same as connect() does
+					System.out.println("no synthesizer");
+				}
+				oldFrontend();
+				record(receiver);
+				device.getTransmitter().setReceiver(receiver);
+				device.open();
+			}
+			else
+			{
+				MidiInputReceiver receiver = midi.connect(device, sessions[i]);
+				if(!variant.equals("headless"))
+				{
+					record(receiver);
+				}
+			}
+		}
+
+		for(SculptureSession session : sessions)
+		{
+			while(session.getRing().getPublished() == 0)
+			{
+				Thread.sleep(0, 100000);
+			}
+		}
+		System.out.println("first note " + (System.currentTimeMillis() - start));
+
+		if(!variant.equals("before") && !variant.equals("headless"))
+		{
+			while(!Frontend.shared().isLoaded())
+			{
+				Thread.sleep(1);
+			}
+			System.out.println("resources " + (System.currentTimeMillis() - start));
+		}
+		for(SculptureSession session : sessions)
+		{
+			session.close();
+		}
+		System.exit(0);
+	}
+
+	//the buttons are not pressed here
+	private static void record(MidiInputReceiver receiver)
+	{
+		receiver.setMode(SculptureMode.CUBE);
+		receiver.startRecording();
+	}
+
+	//what initFrontend did for every keyboard before, without the window
+	private static void oldFrontend() throws Exception
+	{
+		File font = new File(PICTURES + "HFJ_Gotham_1" + File.separator + "HFJ_Gotham_1" + File.separator + "Gotham-Book.otf");
+		Font.createFont(Font.TRUETYPE_FONT, font).deriveFont(24f);
+		GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(Font.createFont(Font.TRUETYPE_FONT, font));
+
+		BufferedImage welcome = ImageIO.read(new File(PICTURES + "welcome_neu2.jpg"));
+		BufferedImage first = ImageIO.read(new File(PICTURES + "erstens.jpg"));
+		BufferedImage second = ImageIO.read(new File(PICTURES + "zweitens.jpg"));
+		BufferedImage third = ImageIO.read(new File(PICTURES + "drittens.jpg"));
+		FrontendResources.resize(welcome, 800, 400);
+		FrontendResources.resize(first, 200, 200);
+		FrontendResources.resize(second, 200, 200);
+		FrontendResources.resize(third, 200, 200);
+	}
+
+	private static long median(long[] values)
+	{
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+}
@@ -0,0 +1,97 @@
+package lmu_PrintableMusic_bench;
+
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.tranzitions.Union;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ParallelUnion;
+
+//CSG union of a cube sculpture: JavaScad's left-fold Union against the balanced
+//ParallelUnion, over note counts and pool sizes. The volume of both results is
+//printed, they have to agree within TOLERANCE. The fold is only run up to a note count.
+//
+//  UnionScaling [max notes for the fold] [note counts...]
+public class UnionScaling
+{
+	//relative, JavaScad's CSG snaps vertices to its epsilon in either order of the unions
+	private static final double TOLERANCE = 1e-4;
+
+	public static void main(String[] args) throws Exception
+	{
+		int foldLimit = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int[] counts = {100, 300, 1000, 3000};
+		if(args.length > 1)
+		{
+			counts = new int[args.length - 1];
+			for(int i = 1; i < args.length; i++)
+			{
+				counts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		TreeSet<Integer> pools = new TreeSet<>();
+		for(int p = 1; p <= cores; p *= 2)
+		{
+			pools.add(p);
+		}
+		pools.add(cores);
+
+		Bench bench = new Bench("union");
+		try
+		{
+			run(bench, foldLimit, counts, pools);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int foldLimit, int[] counts, TreeSet<Integer> pools)
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println(cores + " cores");
+		System.out.println(String.format("%8s %8s %10s %12s %10s %12s", "notes", "threads", "fold s", "fold volume", "tree s", "tree volume"));
+		for(int notes : counts)
+		{
+			ModelCube cube = Bench.play(new ModelCube("union", bench.file("current"), bench.getDirectory()), Bench.random(notes, 1));
+			List<Abstract3dModel> models = cube.getModels();
+
+			String foldSeconds = "-";
+			String foldVolume = "-";
+			double expected = Double.NaN;
+			if(notes <= foldLimit)
+			{
+				long start = System.nanoTime();
+				CSG fold = new Union(models).toCSG();
+				foldSeconds = String.format("%.2f", (System.nanoTime() - start) / 1e9);
+				expected = Bench.volume(fold);
+				foldVolume = String.format("%.3f", expected);
+			}
+
+			for(int threads : pools)
+			{
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				long start = System.nanoTime();
+				CSG tree = new ParallelUnion(pool).toCSG(models, FacetGenerationContext.DEFAULT);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				pool.shutdown();
+
+				double volume = Bench.volume(tree);
+				System.out.println(String.format("%8d %8d %10s %12s %10.2f %12.3f", notes, threads, foldSeconds, foldVolume, seconds, volume));
+				//above the fold's limit the pool sizes have to agree among each other
+				if(Double.isNaN(expected))
+				{
+					expected = volume;
+				}
+				bench.check(Math.abs(volume - expected) <= TOLERANCE * Math.abs(expected), notes + " notes, " + threads + " threads: volume " + volume + " instead of " + expected);
+			}
+		}
+	}
+}
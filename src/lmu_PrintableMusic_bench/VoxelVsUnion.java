@@ -0,0 +1,76 @@
+package lmu_PrintableMusic_bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import eu.printingin3d.javascad.vrl.export.FileExporterFactory;
+import lmu_PrintableMusic_object.ModelCreate;
+import lmu_PrintableMusic_object.ModelCube;
+import lmu_PrintableMusic_object.ModelVoxel;
+
+//Time from the first note to a printable STL, for the same notes:
+//  union: ModelCube, ModelCreate union through JavaScad's CSG, STL export (BatchRenderer --stl)
+//  voxel: ModelVoxel, voxel grid meshed with surface nets
+//The union path is only run up to a note count, above that it does not finish in useful time.
+//The voxel STL has to be watertight.
+//
+//  VoxelVsUnion [max notes for the union path] [resolution] [note counts...]
+public class VoxelVsUnion
+{
+	public static void main(String[] args) throws IOException
+	{
+		int unionLimit = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		double resolution = args.length > 1 ? Double.parseDouble(args[1]) : ModelVoxel.DEFAULT_RESOLUTION;
+		int[] counts = {1000, 10000, 100000};
+		if(args.length > 2)
+		{
+			counts = new int[args.length - 2];
+			for(int i = 2; i < args.length; i++)
+			{
+				counts[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+
+		Bench bench = new Bench("voxel");
+		try
+		{
+			run(bench, unionLimit, resolution, counts);
+		}
+		finally
+		{
+			bench.close();
+		}
+		bench.exit();
+	}
+
+	private static void run(Bench bench, int unionLimit, double resolution, int[] counts) throws IOException
+	{
+		File root = bench.getDirectory();
+		System.out.println("resolution " + resolution + " mm");
+		System.out.println(String.format("%8s %12s %12s %14s %10s", "notes", "union s", "voxel s", "triangles", "STL MB"));
+
+		for(int notes : counts)
+		{
+			String union = "-";
+			if(notes <= unionLimit)
+			{
+				long start = System.nanoTime();
+				ModelCube cube = Bench.play(new ModelCube("union" + notes, new File(root, "current"), root), Bench.random(notes, 1));
+				File stl = new File(root, "union" + notes + ".stl");
+				FileExporterFactory.createExporter(stl).writeToFile(new ModelCreate(cube.getModels()).toCSG().toFacets());
+				union = String.format("%.2f", (System.nanoTime() - start) / 1e9);
+			}
+
+			long start = System.nanoTime();
+			ModelVoxel voxel = Bench.play(new ModelVoxel("voxel" + notes, new File(root, "current"), root, resolution), Bench.random(notes, 1));
+			File stl = new File(root, "voxel" + notes + ".stl");
+			voxel.safeForGood(stl);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			long triangles = (stl.length() - 84) / 50;
+			System.out.println(String.format("%8d %12s %12.2f %14d %10.1f", notes, union, seconds, triangles, stl.length() / 1e6));
+			bench.check(PrintableExport.watertight(stl), notes + " notes: voxel STL is not watertight");
+			stl.delete();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package lmu_PrintableMusic_object;
+
+//The smallest box around everything a sculpture has added so far, widened by every
+//new primitive in constant time. Only the writer thread adds to it.
+public class BoundingBox
+{
+	private double minX = Double.MAX_VALUE;
+	private double minY = Double.MAX_VALUE;
+	private double minZ = Double.MAX_VALUE;
+	private double maxX = -Double.MAX_VALUE;
+	private double maxY = -Double.MAX_VALUE;
+	private double maxZ = -Double.MAX_VALUE;
+
+
+	public void add(double minX, double minY, double minZ, double maxX, double maxY, double maxZ)
+	{
+		if(minX < this.minX) this.minX = minX;
+		if(minY < this.minY) this.minY = minY;
+		if(minZ < this.minZ) this.minZ = minZ;
+		if(maxX > this.maxX) this.maxX = maxX;
+		if(maxY > this.maxY) this.maxY = maxY;
+		if(maxZ > this.maxZ) this.maxZ = maxZ;
+	}
+
+	//a box of the given edges around x, y, z
+	public void addCentered(double x, double y, double z, double dx, double dy, double dz)
+	{
+		add(x - dx / 2, y - dy / 2, z - dz / 2, x + dx / 2, y + dy / 2, z + dz / 2);
+	}
+
+	public boolean isEmpty()
+	{
+		return minX > maxX;
+	}
+
+	public double getMinX() {
+		return minX;
+	}
+
+	public double getMinY() {
+		return minY;
+	}
+
+	public double getMinZ() {
+		return minZ;
+	}
+
+	public double getMaxX() {
+		return maxX;
+	}
+
+	public double getMaxY() {
+		return maxY;
+	}
+
+	public double getMaxZ() {
+		return maxZ;
+	}
+
+	public double getWidth() {
+		return isEmpty() ? 0 : maxX - minX;
+	}
+
+	public double getDepth() {
+		return isEmpty() ? 0 : maxY - minY;
+	}
+
+	public double getHeight() {
+		return isEmpty() ? 0 : maxZ - minZ;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%.1f x %.1f x %.1f mm", getWidth(), getDepth(), getHeight());
+	}
+}
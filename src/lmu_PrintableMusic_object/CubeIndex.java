@@ -0,0 +1,293 @@
+package lmu_PrintableMusic_object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Uniform hash grid over the boxes of a sculpture, kept up to date as they are added.
+//A new box that lies completely inside an earlier one (or is an exact duplicate of it)
+//is hidden right away, earlier boxes the new one swallows are hidden as well.
+//Hidden boxes add nothing to the union, so the export leaves them out.
+public class CubeIndex
+{
+	//edge of a grid cell in mm, about the size of the largest note cube
+	public static final double CELL = 4.0;
+
+	private double[][] box = new double[1024][];
+	private boolean[] hidden = new boolean[1024];
+	private int count = 0;
+
+	private final Map<Long, int[]> cells = new HashMap<>();
+
+	private int duplicates = 0;
+	private int contained = 0;
+	private int covered = 0;
+
+
+	//registers box number id (ids have to be added in order 0, 1, 2...);
+	//returns false if the box is hidden from the start
+	public boolean add(int id, double minX, double minY, double minZ, double maxX, double maxY, double maxZ)
+	{
+		if(id != count)
+		{
+			throw new IllegalArgumentException("boxes have to be added in order, expected " + count + " but got " + id);
+		}
+		if(count == box.length)
+		{
+			box = Arrays.copyOf(box, count * 2);
+			hidden = Arrays.copyOf(hidden, count * 2);
+		}
+		double[] b = {minX, minY, minZ, maxX, maxY, maxZ};
+		box[count] = b;
+		count++;
+
+		//a box holding the new one covers its centre, so that cell is enough
+		int[] candidates = cells.get(key(cell((minX + maxX) / 2), cell((minY + maxY) / 2), cell((minZ + maxZ) / 2)));
+		if(candidates != null)
+		{
+			for(int i = 1; i <= candidates[0]; i++)
+			{
+				int other = candidates[i];
+				if(!hidden[other] && inside(b, box[other]))
+				{
+					hidden[id] = true;
+					if(inside(box[other], b))
+					{
+						duplicates++;
+					}
+					else
+					{
+						contained++;
+					}
+					return false;
+				}
+			}
+		}
+
+		int x0 = cell(minX), y0 = cell(minY), z0 = cell(minZ);
+		int x1 = cell(maxX), y1 = cell(maxY), z1 = cell(maxZ);
+		for(int x = x0; x <= x1; x++)
+		{
+			for(int y = y0; y <= y1; y++)
+			{
+				for(int z = z0; z <= z1; z++)
+				{
+					int[] list = insert(key(x, y, z), id);
+
+					//earlier boxes the new one swallows
+					for(int i = 1; i < list[0]; i++)
+					{
+						int other = list[i];
+						if(!hidden[other] && inside(box[other], b))
+						{
+							hidden[other] = true;
+							covered++;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	public boolean isHidden(int id)
+	{
+		return hidden[id];
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	//ids of the boxes still visible, in the order they were added
+	public int[] visible()
+	{
+		int[] ids = new int[count - getCulled()];
+		int n = 0;
+		for(int id = 0; id < count; id++)
+		{
+			if(!hidden[id])
+			{
+				ids[n++] = id;
+			}
+		}
+		return ids;
+	}
+
+	//joins visible boxes with the same cross section that touch or overlap in a row,
+	//along x, then y, then z; returns the joined boxes and marks their parts in the given array
+	public List<double[]> merge(int[] ids, boolean[] joined)
+	{
+		List<double[]> result = new ArrayList<>();
+		for(int i = 0; i < ids.length; i++)
+		{
+			result.add(box[ids[i]].clone());
+		}
+		List<List<Integer>> parts = new ArrayList<>();
+		for(int i = 0; i < ids.length; i++)
+		{
+			List<Integer> part = new ArrayList<>();
+			part.add(i);
+			parts.add(part);
+		}
+
+		for(int axis = 0; axis < 3; axis++)
+		{
+			mergeAlong(axis, result, parts);
+		}
+
+		List<double[]> merged = new ArrayList<>();
+		for(int i = 0; i < result.size(); i++)
+		{
+			if(parts.get(i).size() > 1)
+			{
+				merged.add(result.get(i));
+				for(int part : parts.get(i))
+				{
+					joined[part] = true;
+				}
+			}
+		}
+		return merged;
+	}
+
+	private static void mergeAlong(final int axis, List<double[]> boxes, List<List<Integer>> parts)
+	{
+		Integer[] order = new Integer[boxes.size()];
+		for(int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+		}
+		final List<double[]> b = boxes;
+		//same cross section next to each other, sorted along the axis
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer i, Integer j)
+			{
+				double[] p = b.get(i);
+				double[] q = b.get(j);
+				for(int a = 0; a < 3; a++)
+				{
+					if(a != axis)
+					{
+						int c = Double.compare(p[a], q[a]);
+						if(c == 0)
+						{
+							c = Double.compare(p[a + 3], q[a + 3]);
+						}
+						if(c != 0)
+						{
+							return c;
+						}
+					}
+				}
+				return Double.compare(p[axis], q[axis]);
+			}
+		});
+
+		List<double[]> mergedBoxes = new ArrayList<>();
+		List<List<Integer>> mergedParts = new ArrayList<>();
+		double[] run = null;
+		List<Integer> runParts = null;
+		for(int index : order)
+		{
+			double[] next = b.get(index);
+			if(run != null && sameSection(run, next, axis) && next[axis] <= run[axis + 3])
+			{
+				run[axis + 3] = Math.max(run[axis + 3], next[axis + 3]);
+				runParts.addAll(parts.get(index));
+			}
+			else
+			{
+				run = next.clone();
+				runParts = new ArrayList<>(parts.get(index));
+				mergedBoxes.add(run);
+				mergedParts.add(runParts);
+			}
+		}
+
+		boxes.clear();
+		boxes.addAll(mergedBoxes);
+		parts.clear();
+		parts.addAll(mergedParts);
+	}
+
+	private static boolean sameSection(double[] p, double[] q, int axis)
+	{
+		for(int a = 0; a < 3; a++)
+		{
+			if(a != axis && (p[a] != q[a] || p[a + 3] != q[a + 3]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getCulled() {
+		return duplicates + contained + covered;
+	}
+
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	public int getContained() {
+		return contained;
+	}
+
+	public int getCovered() {
+		return covered;
+	}
+
+	private int[] insert(long key, int id)
+	{
+		int[] list = cells.get(key);
+		if(list == null)
+		{
+			list = new int[4];
+			cells.put(key, list);
+		}
+		else if(list[0] + 1 == list.length)
+		{
+			//drop the hidden ones before growing
+			int n = 0;
+			for(int i = 1; i <= list[0]; i++)
+			{
+				if(!hidden[list[i]])
+				{
+					list[++n] = list[i];
+				}
+			}
+			list[0] = n;
+			if(n + 1 == list.length)
+			{
+				list = Arrays.copyOf(list, list.length * 2);
+				cells.put(key, list);
+			}
+		}
+		list[++list[0]] = id;
+		return list;
+	}
+
+	//a inside b
+	private static boolean inside(double[] a, double[] b)
+	{
+		return a[0] >= b[0] && a[1] >= b[1] && a[2] >= b[2] && a[3] <= b[3] && a[4] <= b[4] && a[5] <= b[5];
+	}
+
+	private static int cell(double v)
+	{
+		return (int) Math.floor(v / CELL);
+	}
+
+	private static long key(int x, int y, int z)
+	{
+		return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+	}
+}
@@ -0,0 +1,481 @@
+package lmu_PrintableMusic_object;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+//Prints a prism sculpture while it is being played, without a slicer: every plate is one
+//layer of the printer's layer height, turned into toolpaths the moment its note arrives and
+//streamed out, to a file or straight to the printer's device. A layer is the perimeters of
+//the plate's polygon, offset inwards by one line width each, and straight infill lines
+//clipped to the polygon, turned by 90 degrees from layer to layer; the lowest layers are
+//solid. Nothing depends on the layers before except the current height, so every layer
+//costs the same however many came before. The sculpture sits in the middle of the bed;
+//plates above the bed's height are left out. A file or device takes one live stream at a
+//time, a second one is refused until the first is closed.
+//
+//  -Dprintablemusic.gcode=<file, device or directory>   directory gets <sculpture name>.gcode
+public class GcodeStream implements Closeable
+{
+	public static final String CONFIGURED = System.getProperty("printablemusic.gcode");
+
+	public static final double LAYER = 0.2; //mm, one plate of ModelPrism
+	public static final double LINE_WIDTH = 0.45; //mm
+	public static final double FILAMENT = 1.75; //mm
+	public static final int PERIMETERS = 2;
+	public static final double INFILL = 0.2; //of the area inside the perimeters
+	public static final int SOLID_LAYERS = 3;
+	public static final int NOZZLE_TEMPERATURE = 210;
+	public static final int BED_TEMPERATURE = 60;
+
+	//mm/min
+	private static final int FIRST_LAYER_FEED = 1200;
+	private static final int PRINT_FEED = 2400;
+	private static final int TRAVEL_FEED = 7200;
+	private static final int RETRACT_FEED = 2100;
+	private static final int Z_FEED = 600;
+
+	private static final double RETRACT = 1.0; //mm of filament
+	private static final double RETRACT_TRAVEL = 2.0; //travels longer than this retract first
+	//infill reaches this far into the innermost perimeter, so they bond
+	private static final double OVERLAP = 0.15 * LINE_WIDTH;
+	//mm of filament per mm of line
+	private static final double FLOW = LINE_WIDTH * LAYER / (Math.PI * FILAMENT * FILAMENT / 4);
+
+	//the files and devices of the live streams opened by configured()
+	private static final Set<File> targets = new HashSet<>();
+
+	private final Writer out;
+	private File target = null;
+	private final PrinterBed bed;
+	private final double centerX;
+	private final double centerY;
+	private final StringBuilder line = new StringBuilder(64);
+
+	//where the nozzle is
+	private double x = 0;
+	private double y = 0;
+	private double z = 0;
+	private boolean retracted = false;
+	private int feed = 0;
+
+	//written by the thread playing the sculpture, read by report() from any other
+	private volatile int layers = 0;
+	private volatile int skipped = 0;
+	private volatile double filament = 0;
+	private volatile double seconds = 0;
+	private long maxLayerNanos = 0;
+	private long sumLayerNanos = 0;
+	private boolean closed = false;
+
+
+	public GcodeStream(OutputStream out, PrinterBed bed) throws IOException
+	{
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 16 * 1024);
+		this.bed = bed;
+		this.centerX = bed.getWidth() / 2;
+		this.centerY = bed.getDepth() / 2;
+		start();
+	}
+
+	//a file, or the device of a printer
+	public static GcodeStream open(File file) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)
+		{
+			parent.mkdirs();
+		}
+		return new GcodeStream(new FileOutputStream(file), PrinterBed.CONFIGURED);
+	}
+
+	//the stream -Dprintablemusic.gcode asks for, null if none; refused while another one prints there
+	public static GcodeStream configured(String name) throws IOException
+	{
+		if(CONFIGURED == null || CONFIGURED.isEmpty())
+		{
+			return null;
+		}
+		File file = new File(CONFIGURED);
+		return claim(file.isDirectory() ? new File(file, name + ".gcode") : file);
+	}
+
+	private static GcodeStream claim(File file) throws IOException
+	{
+		File key = file.getAbsoluteFile();
+		synchronized(targets)
+		{
+			if(!targets.add(key))
+			{
+				throw new IOException(file + " is printing another sculpture already");
+			}
+		}
+		boolean opened = false;
+		try
+		{
+			GcodeStream stream = open(file);
+			stream.target = key;
+			opened = true;
+			return stream;
+		}
+		finally
+		{
+			if(!opened)
+			{
+				release(key);
+			}
+		}
+	}
+
+	private static void release(File key)
+	{
+		synchronized(targets)
+		{
+			targets.remove(key);
+		}
+	}
+
+
+	private void start() throws IOException
+	{
+		comment("PrintableMusic prism sculpture, streamed layer by layer");
+		comment(String.format("bed %s, layer %.2f mm, line %.2f mm", bed, LAYER, LINE_WIDTH));
+		command("M140 S" + BED_TEMPERATURE);
+		command("M104 S" + NOZZLE_TEMPERATURE);
+		command("M190 S" + BED_TEMPERATURE);
+		command("M109 S" + NOZZLE_TEMPERATURE);
+		command("G28");
+		command("G90");
+		command("M83");
+
+		//a line along the front edge gets the melt flowing
+		lift(LAYER);
+		travel(5, 5);
+		extrude(Math.min(bed.getWidth() - 5, 65), 5, FIRST_LAYER_FEED);
+		retract();
+		out.flush();
+	}
+
+	//one plate, a regular polygon around x, y with its first corner at angle 0; nothing once closed
+	public synchronized void layer(double x, double y, double radius, int sides) throws IOException
+	{
+		if(closed)
+		{
+			return;
+		}
+		long begin = System.nanoTime();
+		double height = (layers + skipped + 1) * LAYER;
+		if(height > bed.getHeight())
+		{
+			skipped++;
+			return;
+		}
+
+		x += centerX;
+		y += centerY;
+		int feed = layers < 1 ? FIRST_LAYER_FEED : PRINT_FEED;
+		retract();
+		lift(height);
+		if(layers == 1)
+		{
+			command("M106 S255");
+		}
+		comment("layer " + (layers + 1));
+
+		double half = Math.PI / sides;
+		double apothem = radius * Math.cos(half);
+
+		//innermost perimeter first, the outer one goes on top of a stable inside
+		for(int p = PERIMETERS - 1; p >= 0; p--)
+		{
+			double inset = apothem - LINE_WIDTH / 2 - p * LINE_WIDTH;
+			if(inset <= 0)
+			{
+				continue;
+			}
+			double corner = inset / Math.cos(half);
+			travel(x + corner, y);
+			for(int k = 1; k <= sides; k++)
+			{
+				double angle = 2 * Math.PI * k / sides;
+				extrude(x + corner * Math.cos(angle), y + corner * Math.sin(angle), feed);
+			}
+		}
+
+		infill(x, y, apothem - PERIMETERS * LINE_WIDTH + OVERLAP, sides, layers < SOLID_LAYERS ? 1 : INFILL, feed);
+
+		layers++;
+		out.flush();
+
+		long nanos = System.nanoTime() - begin;
+		sumLayerNanos += nanos;
+		maxLayerNanos = Math.max(maxLayerNanos, nanos);
+	}
+
+	//lines across the polygon of the given apothem, one every LINE_WIDTH / density mm;
+	//the lines sit on the same grid in every layer, so sparse infill stacks into walls
+	private void infill(double x, double y, double apothem, int sides, double density, int feed) throws IOException
+	{
+		if(apothem <= LINE_WIDTH / 2)
+		{
+			return;
+		}
+		double spacing = LINE_WIDTH / density;
+		double direction = (layers % 2 == 0 ? 1 : 3) * Math.PI / 4;
+		double dx = Math.cos(direction);
+		double dy = Math.sin(direction);
+		//across the lines
+		double nx = -dy;
+		double ny = dx;
+
+		double reach = apothem / Math.cos(Math.PI / sides);
+		boolean forward = true;
+		for(long k = (long) Math.ceil((-reach + LINE_WIDTH / 2) / spacing); k * spacing <= reach - LINE_WIDTH / 2; k++)
+		{
+			double t = k * spacing;
+			//the part of the line t * n + s * d inside every edge of the polygon
+			double from = -reach;
+			double to = reach;
+			for(int e = 0; e < sides; e++)
+			{
+				double angle = (2 * e + 1) * Math.PI / sides;
+				double mx = Math.cos(angle);
+				double my = Math.sin(angle);
+				double along = dx * mx + dy * my;
+				double limit = apothem - t * (nx * mx + ny * my);
+				if(Math.abs(along) < 1e-12)
+				{
+					if(limit < 0)
+					{
+						from = to;
+					}
+				}
+				else if(along > 0)
+				{
+					to = Math.min(to, limit / along);
+				}
+				else
+				{
+					from = Math.max(from, limit / along);
+				}
+			}
+			//the line's ends stay half a line inside
+			from += LINE_WIDTH / 2;
+			to -= LINE_WIDTH / 2;
+			if(to - from < LINE_WIDTH)
+			{
+				continue;
+			}
+
+			double s0 = forward ? from : to;
+			double s1 = forward ? to : from;
+			travel(x + t * nx + s0 * dx, y + t * ny + s0 * dy);
+			extrude(x + t * nx + s1 * dx, y + t * ny + s1 * dy, feed);
+			forward = !forward;
+		}
+	}
+
+	private void travel(double toX, double toY) throws IOException
+	{
+		double length = Math.hypot(toX - x, toY - y);
+		if(length > RETRACT_TRAVEL)
+		{
+			retract();
+		}
+		line.setLength(0);
+		line.append("G0");
+		feed(TRAVEL_FEED);
+		line.append(" X");
+		number(toX, 1000);
+		line.append(" Y");
+		number(toY, 1000);
+		write();
+		seconds += length / TRAVEL_FEED * 60;
+		x = toX;
+		y = toY;
+	}
+
+	private void extrude(double toX, double toY, int speed) throws IOException
+	{
+		unretract();
+		double length = Math.hypot(toX - x, toY - y);
+		double e = length * FLOW;
+		line.setLength(0);
+		line.append("G1");
+		feed(speed);
+		line.append(" X");
+		number(toX, 1000);
+		line.append(" Y");
+		number(toY, 1000);
+		line.append(" E");
+		number(e, 100000);
+		write();
+		filament += e;
+		seconds += length / speed * 60;
+		x = toX;
+		y = toY;
+	}
+
+	private void lift(double toZ) throws IOException
+	{
+		line.setLength(0);
+		line.append("G0");
+		feed(Z_FEED);
+		line.append(" Z");
+		number(toZ, 1000);
+		write();
+		seconds += Math.abs(toZ - z) / Z_FEED * 60;
+		z = toZ;
+	}
+
+	private void retract() throws IOException
+	{
+		if(!retracted)
+		{
+			feed = RETRACT_FEED;
+			command("G1 E-" + RETRACT + " F" + RETRACT_FEED);
+			retracted = true;
+		}
+	}
+
+	private void unretract() throws IOException
+	{
+		if(retracted)
+		{
+			feed = RETRACT_FEED;
+			command("G1 E" + RETRACT + " F" + RETRACT_FEED);
+			retracted = false;
+		}
+	}
+
+	//the feed rate is modal, it is only written when it changes
+	private void feed(int speed)
+	{
+		if(speed != feed)
+		{
+			line.append(" F").append(speed);
+			feed = speed;
+		}
+	}
+
+	//fixed point with as many decimals as scale has zeros, trailing zeros left out
+	private void number(double value, long scale)
+	{
+		long fixed = Math.round(value * scale);
+		if(fixed < 0)
+		{
+			line.append('-');
+			fixed = -fixed;
+		}
+		line.append(fixed / scale);
+		long fraction = fixed % scale;
+		if(fraction != 0)
+		{
+			line.append('.');
+			for(long digit = scale / 10; fraction != 0; digit /= 10)
+			{
+				line.append((char) ('0' + fraction / digit));
+				fraction %= digit;
+			}
+		}
+	}
+
+	private void write() throws IOException
+	{
+		out.append(line).append('\n');
+	}
+
+	private void command(String command) throws IOException
+	{
+		out.write(command);
+		out.write('\n');
+	}
+
+	private void comment(String comment) throws IOException
+	{
+		out.write("; ");
+		out.write(comment);
+		out.write('\n');
+	}
+
+	//parks the nozzle above the sculpture and switches the printer off, any thread may close it
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if(closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			retract();
+			lift(Math.min(bed.getHeight(), z + 10));
+			command("M107");
+			command("M104 S0");
+			command("M140 S0");
+			command("M84");
+			comment(String.format("%d layers, %.0f mm of filament, about %.0f min", layers, filament, seconds / 60));
+		}
+		finally
+		{
+			try
+			{
+				out.close();
+			}
+			finally
+			{
+				if(target != null)
+				{
+					release(target);
+				}
+			}
+		}
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	public int getLayers() {
+		return layers;
+	}
+
+	//plates above the bed's height
+	public int getSkipped() {
+		return skipped;
+	}
+
+	//mm of filament
+	public double getFilament() {
+		return filament;
+	}
+
+	//estimate from the moves and feed rates, without acceleration
+	public double getPrintTime() {
+		return seconds;
+	}
+
+	//ns to generate and write one layer
+	public long getMaxLayerTime() {
+		return maxLayerNanos;
+	}
+
+	public double getMeanLayerTime() {
+		return layers == 0 ? 0 : (double) sumLayerNanos / layers;
+	}
+
+	public String report()
+	{
+		return String.format("%d layers, %.0f mm of filament, about %.0f min", layers, filament, seconds / 60)
+				+ (skipped > 0 ? ", reached the " + bed + " bed's height, " + skipped + " plates not printed" : "");
+	}
+}
@@ -0,0 +1,117 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import eu.printingin3d.javascad.context.ScadGenerationContextFactory;
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+
+//Live preview that only ever appends: every primitive becomes one line of a body chunk
+//<name>_body_<n>.scad of at most CHUNK lines, and the tiny <name>.scad wraps all chunks
+//into a union with include<>. With instancing the lines are calls of shape modules,
+//which are declared in the top file. A snapshot republishes the open chunk and the top file
+//through the directory's SnapshotPublisher; full chunks are never written again, so
+//adding a note costs the same no matter how long the session already is.
+public class IncrementalScadWriter
+{
+	public static final int CHUNK = 256;
+
+	private final File directory;
+	private final String name;
+	private final SnapshotPublisher publisher;
+
+	//the full chunks before it are published already
+	private final StringBuilder chunk = new StringBuilder();
+	private int chunks = 0;
+	private int lines = 0;
+	//chunks that filled up since the last flush, still to be published in their final form
+	private final Map<File, byte[]> finished = new LinkedHashMap<>();
+	private boolean dirty = false;
+	//set once the sculpture appends shape calls
+	private ShapeTable shapes = null;
+
+
+	public IncrementalScadWriter(File directory, String name)
+	{
+		this.directory = directory;
+		this.name = name;
+		this.publisher = SnapshotPublisher.forDirectory(directory);
+	}
+
+
+	public void append(Abstract3dModel model) throws IOException
+	{
+		String scad = model.toScad(ScadGenerationContextFactory.DEFAULT).getScad();
+		line(scad.replace('\n', ' ').trim());
+	}
+
+	//a call of one of the shapes instead of the whole primitive, the modules go into the top file
+	public void append(ShapeTable shapes, int shape, Coords3d position) throws IOException
+	{
+		this.shapes = shapes;
+		line(ShapeTable.call(shape, position));
+	}
+
+	private void line(String scad)
+	{
+		if(lines == CHUNK)
+		{
+			finished.put(chunkFile(chunks), chunk.toString().getBytes(StandardCharsets.UTF_8));
+			chunk.setLength(0);
+			chunks++;
+			lines = 0;
+		}
+
+		chunk.append(scad).append('\n');
+		lines++;
+		dirty = true;
+	}
+
+	//hands the open chunk and the top file to the publisher; openSCAD watches the
+	//top file, which is renamed last, so it reloads once everything it includes is in place
+	public void flush() throws IOException
+	{
+		Map<File, byte[]> files = new LinkedHashMap<>(finished);
+		finished.clear();
+		files.put(chunkFile(chunks), chunk.toString().getBytes(StandardCharsets.UTF_8));
+
+		StringBuilder top = new StringBuilder(shapes == null ? "" : shapes.modules(ScadGenerationContextFactory.DEFAULT));
+		top.append("union()\n{\n");
+		for(int i = 0; i <= chunks; i++)
+		{
+			top.append("include <").append(chunkFile(i).getName()).append(">\n");
+		}
+		top.append("}\n");
+		files.put(new File(directory, name + ".scad"), top.toString().getBytes(StandardCharsets.UTF_8));
+
+		publisher.submit(files);
+		dirty = false;
+	}
+
+	//publishes the last snapshot without waiting for the publisher's interval
+	public void close()
+	{
+		try
+		{
+			if(dirty)
+			{
+				flush();
+			}
+			publisher.flush();
+		}
+		catch (IOException e) {e.printStackTrace();}
+	}
+
+	public SnapshotPublisher getPublisher() {
+		return publisher;
+	}
+
+	private File chunkFile(int index)
+	{
+		return new File(directory, name + "_body_" + index + ".scad");
+	}
+}
@@ -0,0 +1,71 @@
+package lmu_PrintableMusic_object;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.printingin3d.javascad.context.IScadGenerationContext;
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.models.IModel;
+import eu.printingin3d.javascad.models.SCAD;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+
+//The final model with module instancing: the modules of the ShapeTable first, then the
+//same union as ModelCreate writes, only with a short call per note instead of the
+//whole primitive. Goes through SaveScadFiles like any other model.
+public class InstancedScad implements IModel
+{
+	private final ShapeTable shapes;
+	private final List<Integer> calls = new ArrayList<>();
+	private final List<Coords3d> positions = new ArrayList<>();
+
+
+	public InstancedScad(ShapeTable shapes)
+	{
+		this.shapes = shapes;
+	}
+
+
+	//a shape of the table, moved to the position
+	public void add(int shape, Coords3d position)
+	{
+		calls.add(shape);
+		positions.add(position);
+	}
+
+	public ShapeTable getShapes()
+	{
+		return shapes;
+	}
+
+	public int size()
+	{
+		return calls.size();
+	}
+
+	@Override
+	public SCAD toScad(IScadGenerationContext context)
+	{
+		StringBuilder scad = new StringBuilder(shapes.modules(context));
+		scad.append("union() {\n");
+		for(int i = 0; i < calls.size(); i++)
+		{
+			scad.append(ShapeTable.call(calls.get(i), positions.get(i))).append('\n');
+		}
+		scad.append("}\n");
+		return new SCAD(scad.toString());
+	}
+
+	//the same solid as the SCAD, each shape moved into place
+	@Override
+	public CSG toCSG(FacetGenerationContext context)
+	{
+		List<Abstract3dModel> models = new ArrayList<>(calls.size());
+		for(int i = 0; i < calls.size(); i++)
+		{
+			models.add(shapes.getShape(calls.get(i)).cloneModel().move(positions.get(i)));
+		}
+		return ParallelUnion.union(models, context);
+	}
+}
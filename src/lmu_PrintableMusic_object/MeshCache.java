@@ -0,0 +1,225 @@
+package lmu_PrintableMusic_object;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.vrl.Facet;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+import eu.printingin3d.javascad.vrl.Vertex;
+
+//Tessellated primitives, shared by all exports: a shape is turned into facets once and
+//every note of that shape only adds its position to the cached vertices while encoding.
+//The cache is bounded by triangles; when it is full, the meshes used longest ago go first.
+//A hit only reads the map and stamps the mesh, the eviction scan runs on misses only.
+//
+//  -Dprintablemusic.meshCache=<triangles>   (default 1M, 0 turns the cache off)
+public class MeshCache
+{
+	public static final long DEFAULT_CAPACITY = 1 << 20; //triangles
+
+	static final MeshCache SHARED = new MeshCache(Long.getLong("printablemusic.meshCache", DEFAULT_CAPACITY));
+
+	private final long capacity;
+	private final ConcurrentHashMap<String, Mesh> meshes = new ConcurrentHashMap<>();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong triangles = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+
+	public MeshCache(long capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	public static MeshCache shared()
+	{
+		return SHARED;
+	}
+
+	//exact, unlike the ShapeTable of the SCAD output the mesh must be the same to the bit
+	public static String key(String kind, double... parameters)
+	{
+		StringBuilder key = new StringBuilder(kind);
+		for(double p : parameters)
+		{
+			key.append(':').append(Double.doubleToLongBits(p + 0.0));
+		}
+		return key.toString();
+	}
+
+
+	//the mesh of the shape, tessellated from atOrigin if it is not cached
+	public Mesh get(String key, Abstract3dModel atOrigin)
+	{
+		Mesh mesh = meshes.get(key);
+		if(mesh != null)
+		{
+			hits.incrementAndGet();
+			mesh.used = clock.incrementAndGet();
+			return mesh;
+		}
+
+		misses.incrementAndGet();
+		mesh = new Mesh(atOrigin.toCSG(FacetGenerationContext.DEFAULT).toFacets());
+		mesh.used = clock.incrementAndGet();
+		if(capacity <= 0)
+		{
+			return mesh;
+		}
+		Mesh raced = meshes.putIfAbsent(key, mesh);
+		if(raced != null)
+		{
+			return raced;
+		}
+		if(triangles.addAndGet(mesh.size()) > capacity)
+		{
+			evict();
+		}
+		return mesh;
+	}
+
+	//least recently used first, until the cache fits again
+	private synchronized void evict()
+	{
+		while(triangles.get() > capacity && !meshes.isEmpty())
+		{
+			Map.Entry<String, Mesh> oldest = null;
+			for(Map.Entry<String, Mesh> e : meshes.entrySet())
+			{
+				if(oldest == null || e.getValue().used < oldest.getValue().used)
+				{
+					oldest = e;
+				}
+			}
+			if(meshes.remove(oldest.getKey(), oldest.getValue()))
+			{
+				triangles.addAndGet(-oldest.getValue().size());
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	public void clear()
+	{
+		meshes.clear();
+		triangles.set(0);
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public int getMeshCount() {
+		return meshes.size();
+	}
+
+	public long getTriangles() {
+		return triangles.get();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public double getHitRate() {
+		long all = hits.get() + misses.get();
+		return all == 0 ? 0 : (double) hits.get() / all;
+	}
+
+	public String report()
+	{
+		return String.format("%d meshes, %d of %d triangles, %d hits, %d misses (%.1f%% hits), %d evicted",
+				getMeshCount(), getTriangles(), capacity, getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+	}
+
+
+	//facets of a shape at the origin, never changed after tessellation
+	public static class Mesh
+	{
+		private final float[] normals;
+		private final double[] vertices;
+		volatile long used;
+
+		Mesh(List<Facet> facets)
+		{
+			normals = new float[facets.size() * 3];
+			vertices = new double[facets.size() * 9];
+			int n = 0;
+			int v = 0;
+			for(Facet facet : facets)
+			{
+				Coords3d normal = facet.getNormal();
+				normals[n++] = (float) normal.getX();
+				normals[n++] = (float) normal.getY();
+				normals[n++] = (float) normal.getZ();
+				for(Vertex vertex : facet.getVertexes())
+				{
+					Coords3d coords = vertex.getCoords();
+					vertices[v++] = coords.getX();
+					vertices[v++] = coords.getY();
+					vertices[v++] = coords.getZ();
+				}
+			}
+		}
+
+		public int size()
+		{
+			return normals.length / 3;
+		}
+
+		//binary STL triangles of the mesh moved to the position, the same bytes as tessellating it there
+		public void encode(ByteBuffer bytes, Coords3d position)
+		{
+			encode(bytes, position, null);
+		}
+
+		//the same, fitted to the printer bed afterwards unless fit is null
+		public void encode(ByteBuffer bytes, Coords3d position, PrinterBed.Fit fit)
+		{
+			double x = position.getX();
+			double y = position.getY();
+			double z = position.getZ();
+			for(int t = 0; t < size(); t++)
+			{
+				//a uniform scale keeps the normals, turning the sculpture turns them too
+				if(fit == null)
+				{
+					bytes.putFloat(normals[t * 3]).putFloat(normals[t * 3 + 1]).putFloat(normals[t * 3 + 2]);
+				}
+				else
+				{
+					bytes.putFloat((float) fit.normalX(normals[t * 3], normals[t * 3 + 1])).putFloat((float) fit.normalY(normals[t * 3], normals[t * 3 + 1])).putFloat(normals[t * 3 + 2]);
+				}
+				for(int v = t * 9; v < t * 9 + 9; v += 3)
+				{
+					if(fit == null)
+					{
+						bytes.putFloat(ParallelStlWriter.snap(vertices[v] + x)).putFloat(ParallelStlWriter.snap(vertices[v + 1] + y)).putFloat(ParallelStlWriter.snap(vertices[v + 2] + z));
+					}
+					else
+					{
+						double vx = vertices[v] + x;
+						double vy = vertices[v + 1] + y;
+						bytes.putFloat(ParallelStlWriter.snap(fit.x(vx, vy))).putFloat(ParallelStlWriter.snap(fit.y(vx, vy))).putFloat(ParallelStlWriter.snap(fit.z(vertices[v + 2] + z)));
+					}
+				}
+				bytes.putShort((short) 0);
+			}
+		}
+	}
+}
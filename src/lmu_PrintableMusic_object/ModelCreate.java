@@ -1,9 +1,12 @@
 package lmu_PrintableMusic_object;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import eu.printingin3d.javascad.models.Abstract3dModel;
 import eu.printingin3d.javascad.tranzitions.Union;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
 
 public class ModelCreate extends Union  
 {
@@ -12,4 +15,22 @@ public class ModelCreate extends Union
 		super(myModel);
 	}
 
+	//the SCAD stays one union for openSCAD, the CSG is built by the balanced parallel union
+	@Override
+	protected CSG toInnerCSG(FacetGenerationContext context)
+	{
+		return ParallelUnion.union(models, context);
+	}
+
+	@Override
+	protected Abstract3dModel innerCloneModel()
+	{
+		List<Abstract3dModel> clones = new ArrayList<>(models.size());
+		for(Abstract3dModel model : models)
+		{
+			clones.add(model.cloneModel());
+		}
+		return new ModelCreate(clones);
+	}
+
 }
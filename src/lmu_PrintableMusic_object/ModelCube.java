@@ -3,10 +3,8 @@ package lmu_PrintableMusic_object;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Date;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.List;
 
 import eu.printingin3d.javascad.context.IScadGenerationContext;
@@ -24,41 +22,82 @@ import eu.printingin3d.javascad.utils.SaveScadFiles;
 import eu.printingin3d.javascad.vrl.CSG;
 import eu.printingin3d.javascad.vrl.FacetGenerationContext;
 
-public class ModelCube 
+public class ModelCube implements ShapedSculpture
 {
-	private static List<Abstract3dModel> myModelList = new ArrayList<>();
-	static Coords3d[] maxima = new Coords3d[4]; 
+	//all state belongs to the instance, every sculpture grows on its own
+	private NoteStore notes = new NoteStore();
+	//x, y, z of the end of each arm
+	double[][] maxima = new double[4][3]; 
 	
 	
-	private static String name = ""; 
-	private static Coords3d currPos = new Coords3d(0.0, 0.5, 0);
-	public static Integer count = 0;
+	private String name = ""; 
+	private double currX = 0.0;
+	private double currY = 0.5;
+	private double currZ = 0;
+	public int count = 0;
+	
+	//live preview, only the primitives added since the last snapshot get written
+	private final IncrementalScadWriter snapshot;
+	private int written = 0;
+	private final File modelDirectory;
+	
+	//cubes hidden inside others are left out of the export, the preview keeps all of them
+	private final CubeIndex index = new CubeIndex();
+	private boolean culling = true;
+	private boolean merging = false;
+	private Export export = null;
+	
+	//below 0 the SCAD repeats every primitive, otherwise it calls one module per distinct cube
+	private double instancing = ShapeTable.CONFIGURED_TOLERANCE;
+	private ShapeTable previewShapes = null;
+	
+	//grows with every cube, the export is fitted to the printer bed by it
+	private final BoundingBox bounds = new BoundingBox();
 	
 	
 	
 	public ModelCube(String name)
+	{
+		this(name, CURRENT_DIRECTORY, MODEL_DIRECTORY);
+	}
+	
+	public ModelCube(String name, File currentDirectory, File modelDirectory)
 	{
 		this.setName(name);
-		myModelList = new ArrayList<>();
+		this.snapshot = new IncrementalScadWriter(currentDirectory, ModelFiles.preview(name));
+		this.modelDirectory = modelDirectory;
 		
-		currPos = new Coords3d(0.0, 0.0, 0);
+		currX = 0.0;
+		currY = 0.0;
+		currZ = 0;
 		
-		//add Base
-		myModelList.add(new Cube(new Dims3d(15.0, 15.0, 5.0)).move(new Coords3d(0, 0, 0)));
-		currPos = new Coords3d(currPos.getX(), currPos.getY(), currPos.getZ());
-		maxima[0] = new Coords3d(4.0, 0, 2.0); //x
-		maxima[1] = new Coords3d(0, 4.0, 2.0); //y
-		maxima[2] = new Coords3d(-4.0, 0, 2.0); //-x		
-		maxima[3] = new Coords3d(0, -4.0, 2.0); //-x	
+		//the Base is not a note, it is always model 0
+		maxima[0] = new double[] {4.0, 0, 2.0}; //x
+		maxima[1] = new double[] {0, 4.0, 2.0}; //y
+		maxima[2] = new double[] {-4.0, 0, 2.0}; //-x		
+		maxima[3] = new double[] {0, -4.0, 2.0}; //-x	
 		
+		index.add(0, -7.5, -7.5, -2.5, 7.5, 7.5, 2.5);
+		bounds.add(-7.5, -7.5, -2.5, 7.5, 7.5, 2.5);
 	}
 	
 	
 	
 	
-	public void addCube(Double x, Double y, Double z)
+	@Override
+	public void addNote(int pitch, int velocity, long timeStamp)
 	{
-		Integer factor = 1;
+		addCube(pitch, velocity, pitch, timeStamp);
+	}
+	
+	public void addCube(double x, double y, double z)
+	{
+		addCube(x, y, z, 0);
+	}
+	
+	private void addCube(double x, double y, double z, long timeStamp)
+	{
+		int factor = 1;
 		if((count % 2) == 0)
 		{
 			factor = 1;
@@ -74,33 +113,32 @@ public class ModelCube
 		
 		if(x < 42)
 		{
-			currPos = new Coords3d(maxima[0].getX()+(x/100)*factor, maxima[0].getY()+(x/100)*factor, maxima[0].getZ()+(x/300));
-			maxima[0] = currPos;
-			
+			moveArm(0, (x/100)*factor, (x/100)*factor, x/300);
 		}
 		else if(x >= 42 && x < 64)
 		{
-			currPos = new Coords3d(maxima[1].getX()-(x/100)*factor, maxima[1].getY()+(x/100)*factor, maxima[1].getZ()+(x/300));
-			maxima[1] = currPos;
+			moveArm(1, -(x/100)*factor, (x/100)*factor, x/300);
 		}
 		else if(x >= 64 && x < 86)
 		{
-			currPos = new Coords3d(maxima[2].getX()+(x/100)*factor, maxima[2].getY()-(x/100)*factor, maxima[2].getZ()+(x/300));
-			maxima[2] = currPos;
+			moveArm(2, (x/100)*factor, -(x/100)*factor, x/300);
 		}
 		else if(x >= 84 && x <= 108)
 		{
-			currPos = new Coords3d(maxima[3].getX()-(x/100)*factor, maxima[3].getY()-(x/100)*factor, maxima[3].getZ()+(x/300));
-			maxima[3] = currPos;
+			moveArm(3, -(x/100)*factor, -(x/100)*factor, x/300);
 		}
 		
-		Double size = y % 4;
+		double size = y % 4;
 		if(size < 1.0)
 		{
 			size = 1.0;
 		}
 		
-		myModelList.add(new Cube(new Dims3d(size, size, size)).move(new Coords3d(currPos.getX(), currPos.getY(), currPos.getZ())));
+		int note = notes.add(currX, currY, currZ, size, 0, timeStamp, (int) x, (int) y);
+		double half = size / 2;
+		index.add(note + 1, currX - half, currY - half, currZ - half, currX + half, currY + half, currZ + half);
+		bounds.add(currX - half, currY - half, currZ - half, currX + half, currY + half, currZ + half);
+		invalidateExport();
 		
 		
 		
@@ -121,47 +159,275 @@ public class ModelCube
 		 */
 		count++;
 		
-		//System.out.println("X: " + currPos.getX());
-		//System.out.println("Y: " + currPos.getY());
-		//System.out.println("Z: " + currPos.getZ());
+		//System.out.println("X: " + currX);
+		//System.out.println("Y: " + currY);
+		//System.out.println("Z: " + currZ);
 	}
 	
-	public void safeModel()
+	private void moveArm(int arm, double dx, double dy, double dz)
+	{
+		currX = maxima[arm][0] + dx;
+		currY = maxima[arm][1] + dy;
+		currZ = maxima[arm][2] + dz;
+		maxima[arm][0] = currX;
+		maxima[arm][1] = currY;
+		maxima[arm][2] = currZ;
+	}
+	
+	//the JavaScad models are only built here, when a snapshot or an export needs them;
+	//primitives are all cubes ever played, models only the ones that go into the export
+	public int getPrimitiveCount()
+	{
+		return notes.size() + 1;
+	}
+	
+	public Abstract3dModel getPrimitive(int index)
 	{
-		ModelCreate update = new ModelCreate(myModelList);
+		double[] b = primitiveBox(index);
+		return new Cube(new Dims3d(b[3], b[4], b[5])).move(new Coords3d(b[0], b[1], b[2]));
+	}
+	
+	//center x, y, z and edges x, y, z
+	private double[] primitiveBox(int index)
+	{
+		if(index == 0)
+		{
+			return new double[] {0, 0, 0, 15.0, 15.0, 5.0};
+		}
 		
+		int note = index - 1;
+		double size = notes.getSize(note);
+		return new double[] {notes.getX(note), notes.getY(note), notes.getZ(note), size, size, size};
+	}
+	
+	private static int shape(ShapeTable shapes, double[] b)
+	{
+		return shapes.add("cube", new Cube(new Dims3d(b[3], b[4], b[5])), b[3], b[4], b[5]);
+	}
+	
+	//the export as calls of one module per distinct cube
+	public InstancedScad getInstanced(double tolerance)
+	{
+		InstancedScad scad = new InstancedScad(new ShapeTable(tolerance));
+		for(int i = 0; i < getModelCount(); i++)
+		{
+			double[] b = modelBox(i);
+			scad.add(shape(scad.getShapes(), b), new Coords3d(b[0], b[1], b[2]));
+		}
+		return scad;
+	}
+	
+	@Override
+	public int getModelCount()
+	{
+		Export e = export();
+		return e.primitives.length + e.boxes.size();
+	}
+	
+	@Override
+	public Abstract3dModel getModel(int i)
+	{
+		double[] b = modelBox(i);
+		return new Cube(new Dims3d(b[3], b[4], b[5])).move(new Coords3d(b[0], b[1], b[2]));
+	}
+	
+	//center and edges of export model i, a primitive or a merged box
+	private double[] modelBox(int i)
+	{
+		Export e = export();
+		if(i < e.primitives.length)
+		{
+			return primitiveBox(e.primitives[i]);
+		}
+		
+		double[] box = e.boxes.get(i - e.primitives.length);
+		return new double[] {(box[0] + box[3]) / 2, (box[1] + box[4]) / 2, (box[2] + box[5]) / 2, box[3] - box[0], box[4] - box[1], box[5] - box[2]};
+	}
+	
+	@Override
+	public String getShapeKey(int model)
+	{
+		double[] b = modelBox(model);
+		return MeshCache.key("cube", b[3], b[4], b[5]);
+	}
+	
+	@Override
+	public Abstract3dModel getShape(int model)
+	{
+		double[] b = modelBox(model);
+		return new Cube(new Dims3d(b[3], b[4], b[5]));
+	}
+	
+	@Override
+	public Coords3d getShapePosition(int model)
+	{
+		double[] b = modelBox(model);
+		return new Coords3d(b[0], b[1], b[2]);
+	}
+	
+	//built once after the last note, the export threads share it
+	private synchronized Export export()
+	{
+		if(export == null)
+		{
+			export = new Export();
+			if(culling)
+			{
+				export.primitives = index.visible();
+			}
+			else
+			{
+				export.primitives = new int[getPrimitiveCount()];
+				for(int i = 0; i < export.primitives.length; i++)
+				{
+					export.primitives[i] = i;
+				}
+			}
+			
+			if(merging && culling)
+			{
+				boolean[] joined = new boolean[export.primitives.length];
+				export.boxes = index.merge(export.primitives, joined);
+				int n = 0;
+				for(int i = 0; i < joined.length; i++)
+				{
+					if(!joined[i])
+					{
+						export.primitives[n++] = export.primitives[i];
+					}
+				}
+				export.primitives = Arrays.copyOf(export.primitives, n);
+			}
+		}
+		return export;
+	}
+	
+	private synchronized void invalidateExport()
+	{
+		export = null;
+	}
+	
+	//leave hidden cubes out of the export (default on)
+	public void setCulling(boolean culling)
+	{
+		this.culling = culling;
+		invalidateExport();
+	}
+	
+	//SCAD with one module per distinct cube, cubes within the tolerance in mm count as one (default off)
+	public void setInstancing(boolean instancing, double tolerance)
+	{
+		this.instancing = instancing ? tolerance : -1;
+	}
+	
+	//also join cubes of the same cross section that touch in a row (default off)
+	public void setMerging(boolean merging)
+	{
+		this.merging = merging;
+		invalidateExport();
+	}
+	
+	public CubeIndex getIndex()
+	{
+		return index;
+	}
+	
+	@Override
+	public List<Abstract3dModel> getModels()
+	{
+		List<Abstract3dModel> models = new ArrayList<>(getModelCount());
+		for(int i = 0; i < getModelCount(); i++)
+		{
+			models.add(getModel(i));
+		}
+		return models;
+	}
+	
+	public NoteStore getNotes()
+	{
+		return notes;
+	}
+	
+	@Override
+	public void safeModel()
+	{
 		try 
 		{
-			//System.out.println(File.separator + "media" + File.separator + "sebastian" + File.separator + "Stuff" + File.separator + "LMU/15_SS/Kunst/reources/current");
-			new SaveScadFiles(new File(File.separator + "media" + File.separator + "sebastian" + File.separator + "Stuff" + File.separator + "LMU/15_SS/Kunst/reources/current")).
-			addModel("current_model.scad", update).
-			saveScadFiles();
+			for(; written < getPrimitiveCount(); written++)
+			{
+				if(instancing > 0)
+				{
+					if(previewShapes == null)
+					{
+						previewShapes = new ShapeTable(instancing);
+					}
+					double[] b = primitiveBox(written);
+					snapshot.append(previewShapes, shape(previewShapes, b), new Coords3d(b[0], b[1], b[2]));
+				}
+				else
+				{
+					snapshot.append(getPrimitive(written));
+				}
+			}
+			snapshot.flush();
 		} 
-		catch (IllegalValueException e) {e.printStackTrace();} 
 		catch (IOException e) {e.printStackTrace();}
 	}
 	
-	public void safeForGood()
+	@Override
+	public boolean safeForGood()
 	{
-		DateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-		Calendar cal = Calendar.getInstance();
-		
-		ModelCreate update = new ModelCreate(myModelList);
-		
 		try 
 		{
-			new SaveScadFiles(new File("/media/sebastian/Stuff/LMU/15_SS/Kunst/Modelle")).
-			addModel(dateFormat.format(cal.getTime()) + "_cube_model.scad", update).
-			saveScadFiles();
+			safeForGood(ModelFiles.model(modelDirectory, name, "cube", "scad"));
+			return true;
 		} 
 		catch (IllegalValueException e) {e.printStackTrace();} 
 		catch (IOException e) {e.printStackTrace();}
+		return false;
+	}
+	
+	@Override
+	public void safeForGood(File file) throws IOException
+	{
+		closeSnapshot();
+		IModel update = instancing > 0 ? getInstanced(instancing) : new ModelCreate(getModels());
+		PrinterBed.Fit fit = PrinterBed.CONFIGURED.fit(bounds);
+		if(fit != null)
+		{
+			update = fit.apply(update);
+		}
+		
+		new SaveScadFiles(file.getAbsoluteFile().getParentFile()).
+		addModel(file.getName(), update).
+		saveScadFiles();
+	}
+	
+	@Override
+	public void safePrintable(File file) throws IOException
+	{
+		ParallelStlWriter.write(this, file);
+	}
+	
+	@Override
+	public void closeSnapshot()
+	{
+		snapshot.close();
+	}
+	
+	@Override
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+	
+	public File getModelDirectory() {
+		return modelDirectory;
 	}
 
 
 
 
-	public static String getName() {
+	public String getName() {
 		return name;
 	}
 
@@ -169,7 +435,13 @@ public class ModelCube
 
 
 	public void setName(String name) {
-		ModelCube.name = name;
+		this.name = name;
 	}
 
+	
+	private static class Export
+	{
+		int[] primitives;
+		List<double[]> boxes = new ArrayList<>();
+	}
 }
@@ -16,9 +16,9 @@ import eu.printingin3d.javascad.utils.SaveScadFiles;
 
 public class ModelDisc 
 {
-	private static List<Abstract3dModel> myModelList = new ArrayList<>();
-	private static String name = ""; 
-	private static Coords3d currPos = new Coords3d(0.0, 0.5, 0);
+	private List<Abstract3dModel> myModelList = new ArrayList<>();
+	private String name = ""; 
+	private Coords3d currPos = new Coords3d(0.0, 0.5, 0);
 	
 	
 	
@@ -61,7 +61,7 @@ public class ModelDisc
 
 
 
-	public static String getName() {
+	public String getName() {
 		return name;
 	}
 
@@ -69,7 +69,7 @@ public class ModelDisc
 
 
 	public void setName(String name) {
-		ModelDisc.name = name;
+		this.name = name;
 	}
 
 }
@@ -0,0 +1,36 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+//The names of the files a sculpture writes. Sessions record side by side into the same
+//directories, so the preview carries the sculpture's name, which a session makes its own,
+//and a final model carries the name and the ms it was saved, counted through if that file
+//is there already.
+public class ModelFiles
+{
+	//what a name keeps of itself in a file name
+	public static String safe(String name)
+	{
+		return name.replaceAll("[^A-Za-z0-9_-]+", "_");
+	}
+
+	//the top file of the live preview, without .scad
+	public static String preview(String name)
+	{
+		return "current_model_" + safe(name);
+	}
+
+	//<yyyyMMddHHmmssSSS>_<name>_<kind>_model.<extension>
+	public static File model(File directory, String name, String kind, String extension)
+	{
+		String base = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(Calendar.getInstance().getTime()) + "_" + safe(name) + "_" + kind + "_model";
+		File file = new File(directory, base + "." + extension);
+		for(int n = 2; file.exists(); n++)
+		{
+			file = new File(directory, base + "_" + n + "." + extension);
+		}
+		return file;
+	}
+}
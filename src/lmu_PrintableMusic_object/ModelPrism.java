@@ -2,10 +2,7 @@ package lmu_PrintableMusic_object;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 
 import eu.printingin3d.javascad.coords.Coords3d;
@@ -13,26 +10,56 @@ import eu.printingin3d.javascad.coords.Dims3d;
 import eu.printingin3d.javascad.exceptions.IllegalValueException;
 import eu.printingin3d.javascad.models.Abstract3dModel;
 import eu.printingin3d.javascad.models.Cube;
+import eu.printingin3d.javascad.models.IModel;
 import eu.printingin3d.javascad.models.Prism;
 import eu.printingin3d.javascad.utils.SaveScadFiles;
 
-public class ModelPrism 
+public class ModelPrism implements ShapedSculpture
 {
-	private static List<Abstract3dModel> myModelList = new ArrayList<>();
-	private static String name = ""; 
-	private static String timeStamp = ""; 
-	private static String current = "current";
-	private static Coords3d currPos = new Coords3d(0.0, 0.0, 0);
+	//all state belongs to the instance, every sculpture grows on its own
+	private NoteStore notes = new NoteStore();
+	private String name = ""; 
+	private String timeStamp = ""; 
+	private double currZ = 0;
+	
+	//live preview, only the primitives added since the last snapshot get written
+	private final IncrementalScadWriter snapshot;
+	private int written = 0;
+	private final File modelDirectory;
+	
+	//the export is one lofted PrismStack instead of a union of plates, the preview keeps the plates
+	private static final double PLATE = 0.2;
+	private boolean stacking = true;
+	private PrismStack stack = null;
+	
+	//coarser plates once the stack gets near this many triangles, null is no limit
+	private PrismBudget budget = PrismBudget.CONFIGURED > 0 ? new PrismBudget(PrismBudget.CONFIGURED, PrismBudget.DEFAULT_MAX_TOLERANCE) : null;
+	
+	//below 0 the SCAD repeats every plate, otherwise it calls one module per distinct plate;
+	//the stacked export is one polyhedron and stays as it is
+	private double instancing = ShapeTable.CONFIGURED_TOLERANCE;
+	private ShapeTable previewShapes = null;
+	
+	//grows with every plate, the export is fitted to the printer bed by it
+	private final BoundingBox bounds = new BoundingBox();
+	
+	//every plate is printed as a layer the moment it is added, null prints nothing;
+	//the session recording the sculpture opens it
+	private GcodeStream gcode = null;
 	
 	
 	
 	public ModelPrism(String name)
+	{
+		this(name, CURRENT_DIRECTORY, MODEL_DIRECTORY);
+	}
+	
+	public ModelPrism(String name, File currentDirectory, File modelDirectory)
 	{
 		this.setName(name);
-		myModelList = new ArrayList<>();
-		currPos = new Coords3d(0.0, 0.0, 0);
-	    
-	    
+		this.snapshot = new IncrementalScadWriter(currentDirectory, ModelFiles.preview(name));
+		this.modelDirectory = modelDirectory;
+		currZ = 0;
 		
 		//add Base
 		addPrism(10.0, 100);
@@ -42,52 +69,301 @@ public class ModelPrism
 	
 	
 	
-	public void addPrism(Double radius, Integer sides)
+	@Override
+	public void addNote(int pitch, int velocity, long timeStamp)
 	{
+		double strength = velocity / 100.0;
+		if(strength < 0.5)
+		{
+			strength = strength + 0.75;
+		}
 		
+		int tone = pitch % 7;
+		if(tone < 4)
+		{
+			tone = tone + 7;
+		}
 		
-		myModelList.add(new Prism(0.2, radius, sides).move(new Coords3d(currPos.getX(), currPos.getY(), currPos.getZ())));
+		addPrism(strength*strength*3.5, tone, timeStamp, pitch, velocity);
+	}
+	
+	public void addPrism(double radius, int sides)
+	{
+		addPrism(radius, sides, 0, 0, 0);
+	}
+	
+	private void addPrism(double radius, int sides, long timeStamp, int pitch, int velocity)
+	{
+		int last = notes.size() - 1;
+		//the base never takes part, it is not a note
+		if(budget != null && last > 0 && budget.joins(notes.getSize(last), notes.getSides(last), radius, sides))
+		{
+			radius = notes.getSize(last);
+			sides = notes.getSides(last);
+		}
+		if(budget != null && (last < 0 || notes.getSize(last) != radius || notes.getSides(last) != sides))
+		{
+			budget.run(sides, last < 0);
+		}
 		
+		notes.add(0.0, 0.0, currZ, radius, sides, timeStamp, pitch, velocity);
+		//the facets of every plate reach out to its radius
+		bounds.add(-radius, -radius, currZ - PLATE / 2, radius, radius, currZ + PLATE / 2);
+		invalidateStack();
+		print(notes.size() - 1);
 		
-		currPos = new Coords3d(currPos.getX(), currPos.getY(), currPos.getZ() + 0.2);
-		//System.out.println(currPos.getZ());
+		currZ = currZ + PLATE;
+		//System.out.println(currZ);
+	}
+	
+	//the JavaScad models are only built here, when a snapshot or an export needs them;
+	//primitives are the single plates, models what goes into the export
+	public int getPrimitiveCount()
+	{
+		return notes.size();
+	}
+	
+	public Abstract3dModel getPrimitive(int index)
+	{
+		return new Prism(PLATE, notes.getSize(index), notes.getSides(index)).move(new Coords3d(notes.getX(index), notes.getY(index), notes.getZ(index)));
+	}
+	
+	private int shape(ShapeTable shapes, int index)
+	{
+		double radius = notes.getSize(index);
+		int sides = notes.getSides(index);
+		return shapes.add("prism", new Prism(PLATE, radius, sides), radius, sides);
 	}
 	
+	//the plates as calls of one module per distinct radius and number of sides
+	public InstancedScad getInstanced(double tolerance)
+	{
+		InstancedScad scad = new InstancedScad(new ShapeTable(tolerance));
+		for(int i = 0; i < getPrimitiveCount(); i++)
+		{
+			scad.add(shape(scad.getShapes(), i), new Coords3d(notes.getX(i), notes.getY(i), notes.getZ(i)));
+		}
+		return scad;
+	}
+	
+	@Override
+	public int getModelCount()
+	{
+		if(stacking)
+		{
+			return notes.size() > 0 ? 1 : 0;
+		}
+		return notes.size();
+	}
+	
+	@Override
+	public Abstract3dModel getModel(int index)
+	{
+		if(stacking)
+		{
+			return stack();
+		}
+		return getPrimitive(index);
+	}
+	
+	//the stack is one of a kind, the plates are shapes
+	@Override
+	public String getShapeKey(int model)
+	{
+		return stacking ? null : MeshCache.key("prism", notes.getSize(model), notes.getSides(model));
+	}
+	
+	@Override
+	public Abstract3dModel getShape(int model)
+	{
+		return new Prism(PLATE, notes.getSize(model), notes.getSides(model));
+	}
+	
+	@Override
+	public Coords3d getShapePosition(int model)
+	{
+		return new Coords3d(notes.getX(model), notes.getY(model), notes.getZ(model));
+	}
+	
+	//built once after the last note, the export threads share it
+	private synchronized PrismStack stack()
+	{
+		if(stack == null)
+		{
+			stack = PrismStack.of(notes, 0, notes.size(), PLATE);
+		}
+		return stack;
+	}
+	
+	private synchronized void invalidateStack()
+	{
+		stack = null;
+	}
+	
+	private void print(int plate)
+	{
+		if(gcode == null)
+		{
+			return;
+		}
+		try
+		{
+			gcode.layer(notes.getX(plate), notes.getY(plate), notes.getSize(plate), notes.getSides(plate));
+		}
+		catch (IOException e)
+		{
+			//a lost printer must not end the session, the plates are still recorded
+			e.printStackTrace();
+			gcode = null;
+		}
+	}
+	
+	//streams the plates as G-code from now on, the ones added so far first; null stops it
+	public void setGcode(GcodeStream gcode)
+	{
+		this.gcode = gcode;
+		for(int i = 0; i < notes.size(); i++)
+		{
+			print(i);
+		}
+	}
+	
+	public GcodeStream getGcode() {
+		return gcode;
+	}
+	
+	//limits the triangles of the stacked export, from the next note on; 0 is no limit (default)
+	public void setBudget(long triangles, double maxTolerance)
+	{
+		if(triangles <= 0)
+		{
+			budget = null;
+			return;
+		}
+		budget = new PrismBudget(triangles, maxTolerance);
+		for(int i = 0; i < notes.size(); i++)
+		{
+			if(i == 0 || notes.getSize(i - 1) != notes.getSize(i) || notes.getSides(i - 1) != notes.getSides(i))
+			{
+				budget.run(notes.getSides(i), i == 0);
+			}
+		}
+	}
+	
+	public PrismBudget getBudget() {
+		return budget;
+	}
+	
+	//export one lofted polyhedron instead of the plates (default on)
+	public void setStacking(boolean stacking)
+	{
+		this.stacking = stacking;
+	}
+	
+	//SCAD with one module per distinct plate, radii within the tolerance in mm count as one (default off)
+	public void setInstancing(boolean instancing, double tolerance)
+	{
+		this.instancing = instancing ? tolerance : -1;
+	}
+	
+	@Override
+	public List<Abstract3dModel> getModels()
+	{
+		List<Abstract3dModel> models = new ArrayList<>(getModelCount());
+		for(int i = 0; i < getModelCount(); i++)
+		{
+			models.add(getModel(i));
+		}
+		return models;
+	}
+	
+	public NoteStore getNotes()
+	{
+		return notes;
+	}
+	
+	@Override
 	public void safeModel()
 	{
-		ModelCreate update = new ModelCreate(myModelList);
-		
 		try 
 		{
-			new SaveScadFiles(new File("/media/sebastian/Stuff/LMU/15_SS/Kunst/reources/current")).
-			addModel(current + "_model.scad", update).
-			saveScadFiles();
+			for(; written < getPrimitiveCount(); written++)
+			{
+				if(instancing > 0)
+				{
+					if(previewShapes == null)
+					{
+						previewShapes = new ShapeTable(instancing);
+					}
+					snapshot.append(previewShapes, shape(previewShapes, written), new Coords3d(notes.getX(written), notes.getY(written), notes.getZ(written)));
+				}
+				else
+				{
+					snapshot.append(getPrimitive(written));
+				}
+			}
+			snapshot.flush();
 		} 
-		catch (IllegalValueException e) {e.printStackTrace();} 
 		catch (IOException e) {e.printStackTrace();}
 	}
 	
-	public void safeForGood()
+	@Override
+	public boolean safeForGood()
 	{
-		DateFormat dateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-		Calendar cal = Calendar.getInstance();
-		
-		ModelCreate update = new ModelCreate(myModelList);
-		
 		try 
 		{
-			new SaveScadFiles(new File("/media/sebastian/Stuff/LMU/15_SS/Kunst/Modelle")).
-			addModel(dateFormat.format(cal.getTime()) + "_prism_model.scad", update).
-			saveScadFiles();
+			safeForGood(ModelFiles.model(modelDirectory, name, "prism", "scad"));
+			return true;
 		} 
 		catch (IllegalValueException e) {e.printStackTrace();} 
 		catch (IOException e) {e.printStackTrace();}
+		return false;
+	}
+	
+	@Override
+	public void closeSnapshot()
+	{
+		snapshot.close();
+	}
+	
+	@Override
+	public void safeForGood(File file) throws IOException
+	{
+		snapshot.close();
+		if(gcode != null)
+		{
+			gcode.close();
+		}
+		IModel update = instancing > 0 && !stacking ? getInstanced(instancing) : new ModelCreate(getModels());
+		PrinterBed.Fit fit = PrinterBed.CONFIGURED.fit(bounds);
+		if(fit != null)
+		{
+			update = fit.apply(update);
+		}
+		
+		new SaveScadFiles(file.getAbsoluteFile().getParentFile()).
+		addModel(file.getName(), update).
+		saveScadFiles();
+	}
+	
+	@Override
+	public void safePrintable(File file) throws IOException
+	{
+		ParallelStlWriter.write(this, file);
+	}
+
+
+
+
+	@Override
+	public BoundingBox getBounds() {
+		return bounds;
 	}
 
 
 
 
-	public static String getName() {
+	public String getName() {
 		return name;
 	}
 
@@ -95,7 +371,7 @@ public class ModelPrism
 
 
 	public void setName(String name) {
-		ModelPrism.name = name;
+		this.name = name;
 	}
 
 
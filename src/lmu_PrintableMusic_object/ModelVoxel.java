@@ -0,0 +1,97 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.io.IOException;
+
+//The cube sculpture, printed without the boolean union: every cube is drawn into a
+//sparse VoxelGrid the moment its note arrives, and the final model is the surface
+//of that grid, meshed with SurfaceNets straight into a binary STL.
+//Placement and the live SCAD preview are the ones of ModelCube.
+public class ModelVoxel extends ModelCube
+{
+	//edge of one voxel in mm, finer than the smallest cube (1mm)
+	public static final double DEFAULT_RESOLUTION = 0.25;
+
+	private final VoxelGrid grid;
+
+
+	public ModelVoxel(String name)
+	{
+		this(name, CURRENT_DIRECTORY, MODEL_DIRECTORY);
+	}
+
+	public ModelVoxel(String name, File currentDirectory, File modelDirectory)
+	{
+		this(name, currentDirectory, modelDirectory, DEFAULT_RESOLUTION);
+	}
+
+	public ModelVoxel(String name, File currentDirectory, File modelDirectory, double resolution)
+	{
+		super(name, currentDirectory, modelDirectory);
+		this.grid = new VoxelGrid(resolution);
+
+		//the base, same as model 0 of the cubes
+		grid.fillCentered(0, 0, 0, 15.0, 15.0, 5.0);
+	}
+
+
+	@Override
+	public void addNote(int pitch, int velocity, long timeStamp)
+	{
+		super.addNote(pitch, velocity, timeStamp);
+		rasterize(getNotes().size() - 1);
+	}
+
+	@Override
+	public void addCube(double x, double y, double z)
+	{
+		super.addCube(x, y, z);
+		rasterize(getNotes().size() - 1);
+	}
+
+	private void rasterize(int note)
+	{
+		NoteStore notes = getNotes();
+		double size = notes.getSize(note);
+		grid.fillCentered(notes.getX(note), notes.getY(note), notes.getZ(note), size, size, size);
+	}
+
+	//the voxels reach past the cubes by up to half a voxel, the box is the one of the grid
+	@Override
+	public BoundingBox getBounds()
+	{
+		return grid.getBounds();
+	}
+
+	public VoxelGrid getGrid()
+	{
+		return grid;
+	}
+
+	@Override
+	public boolean safeForGood()
+	{
+		try
+		{
+			safeForGood(ModelFiles.model(getModelDirectory(), getName(), "voxel", "stl"));
+			return true;
+		}
+		catch (IOException e) {e.printStackTrace();}
+		return false;
+	}
+
+	//writes the surface of the grid as binary STL, no SCAD and no union involved
+	@Override
+	public void safeForGood(File file) throws IOException
+	{
+		closeSnapshot();
+		SurfaceNets.writeStl(grid, file, PrinterBed.CONFIGURED.fit(getBounds()));
+	}
+
+	//the voxel surface is the printable model already
+	@Override
+	public void safePrintable(File file) throws IOException
+	{
+		safeForGood(file);
+	}
+}
@@ -0,0 +1,109 @@
+package lmu_PrintableMusic_object;
+
+import java.util.Arrays;
+
+//Recording store for the notes of one sculpture, kept in parallel primitive arrays.
+//The arrays grow in fixed chunks, so adding a note never copies the old notes
+//and costs no objects apart from a new chunk every CHUNK notes.
+//JavaScad models are built from it only when a snapshot or an export needs them.
+public class NoteStore
+{
+	private static final int CHUNK_BITS = 12;
+	public static final int CHUNK = 1 << CHUNK_BITS;
+	private static final int MASK = CHUNK - 1;
+
+	private double[][] x = new double[4][];
+	private double[][] y = new double[4][];
+	private double[][] z = new double[4][];
+	private double[][] size = new double[4][];
+	private int[][] sides = new int[4][];
+	private long[][] timeStamp = new long[4][];
+	private byte[][] pitch = new byte[4][];
+	private byte[][] velocity = new byte[4][];
+
+	private int count = 0;
+
+
+	public int add(double x, double y, double z, double size, int sides, long timeStamp, int pitch, int velocity)
+	{
+		int chunk = count >>> CHUNK_BITS;
+		int i = count & MASK;
+		if(i == 0)
+		{
+			grow(chunk);
+		}
+
+		this.x[chunk][i] = x;
+		this.y[chunk][i] = y;
+		this.z[chunk][i] = z;
+		this.size[chunk][i] = size;
+		this.sides[chunk][i] = sides;
+		this.timeStamp[chunk][i] = timeStamp;
+		this.pitch[chunk][i] = (byte) pitch;
+		this.velocity[chunk][i] = (byte) velocity;
+
+		return count++;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	public double getX(int note) {
+		return x[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public double getY(int note) {
+		return y[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public double getZ(int note) {
+		return z[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public double getSize(int note) {
+		return size[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public int getSides(int note) {
+		return sides[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public long getTimeStamp(int note) {
+		return timeStamp[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public int getPitch(int note) {
+		return pitch[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	public int getVelocity(int note) {
+		return velocity[note >>> CHUNK_BITS][note & MASK];
+	}
+
+	private void grow(int chunk)
+	{
+		if(chunk == x.length)
+		{
+			int length = x.length * 2;
+			x = Arrays.copyOf(x, length);
+			y = Arrays.copyOf(y, length);
+			z = Arrays.copyOf(z, length);
+			size = Arrays.copyOf(size, length);
+			sides = Arrays.copyOf(sides, length);
+			timeStamp = Arrays.copyOf(timeStamp, length);
+			pitch = Arrays.copyOf(pitch, length);
+			velocity = Arrays.copyOf(velocity, length);
+		}
+
+		x[chunk] = new double[CHUNK];
+		y[chunk] = new double[CHUNK];
+		z[chunk] = new double[CHUNK];
+		size[chunk] = new double[CHUNK];
+		sides[chunk] = new int[CHUNK];
+		timeStamp[chunk] = new long[CHUNK];
+		pitch[chunk] = new byte[CHUNK];
+		velocity[chunk] = new byte[CHUNK];
+	}
+}
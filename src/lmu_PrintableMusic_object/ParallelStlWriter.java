@@ -0,0 +1,271 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.vrl.Facet;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+import eu.printingin3d.javascad.vrl.Vertex;
+
+//Printable output without OpenSCAD: every primitive of a sculpture is turned into
+//facets by JavaScad's CSG on a fork-join pool and encoded like StlBinaryFile does,
+//a window of primitives at a time. While one window is written through the channel
+//the next one is already being computed, so only two windows are ever in memory.
+//The primitives are not unioned, each one is its own closed shell; slicers merge
+//overlapping shells when they slice.
+//Models of a ShapedSculpture that share a shape take its mesh from the MeshCache.
+//A sculpture larger than the printer bed is shrunk onto it while its vertices are encoded.
+public class ParallelStlWriter
+{
+	public static final int WINDOW = 1024;
+	private static final int LEAF = 16;
+	private static final int HEADER = 80;
+	private static final int TRIANGLE = 50;
+
+	//vertices are snapped to this grid (1/SNAP mm): JavaScad closes a cylinder with
+	//sin(2 pi) = -2.4e-15 instead of 0, which leaves the seam open by a hair otherwise
+	private static final double SNAP = 1e6;
+
+	//shared by all exports; its workers are daemons, an export never keeps the program alive
+	static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private final ForkJoinPool pool;
+	private final MeshCache cache;
+	private PrinterBed bed = PrinterBed.CONFIGURED;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+
+	public ParallelStlWriter()
+	{
+		this(POOL);
+	}
+
+	public ParallelStlWriter(ForkJoinPool pool)
+	{
+		this(pool, MeshCache.shared());
+	}
+
+	//without a cache every model is tessellated on its own
+	public ParallelStlWriter(ForkJoinPool pool, MeshCache cache)
+	{
+		this.pool = pool;
+		this.cache = cache;
+	}
+
+
+	//null writes the sculpture at its own size, whatever it is
+	public void setBed(PrinterBed bed)
+	{
+		this.bed = bed;
+	}
+
+	//returns the number of triangles written
+	public static long write(Sculpture sculpture, File file) throws IOException
+	{
+		return new ParallelStlWriter().writeStl(sculpture, file);
+	}
+
+	public long writeStl(Sculpture sculpture, File file) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)
+		{
+			parent.mkdirs();
+		}
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try
+		{
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+
+			buffer.clear();
+			byte[] title = "PrintableMusic sculpture".getBytes(StandardCharsets.US_ASCII);
+			buffer.put(title);
+			buffer.put(new byte[HEADER - title.length]);
+			buffer.putInt(0);
+
+			int count = sculpture.getModelCount();
+			PrinterBed.Fit fit = bed != null ? bed.fit(sculpture.getBounds()) : null;
+			long triangles = 0;
+			Window next = count > 0 ? submit(sculpture, fit, 0, Math.min(count, WINDOW)) : null;
+			while(next != null)
+			{
+				Window window = next;
+				next = window.end < count ? submit(sculpture, fit, window.end, Math.min(count, window.end + WINDOW)) : null;
+
+				join(window.task);
+				for(byte[] primitive : window.encoded)
+				{
+					triangles += primitive.length / TRIANGLE;
+					put(channel, primitive);
+				}
+			}
+			flush(channel);
+
+			ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt((int) triangles).flip();
+			channel.write(header, HEADER);
+			return triangles;
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private Window submit(Sculpture sculpture, PrinterBed.Fit fit, int start, int end)
+	{
+		Window window = new Window(start, end);
+		window.task = pool.submit(new Encode(sculpture, cache, fit, window.encoded, start, 0, end - start));
+		return window;
+	}
+
+	private static void join(ForkJoinTask<?> task) throws IOException
+	{
+		try
+		{
+			task.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while meshing", e);
+		}
+		catch (ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("meshing failed", e.getCause());
+		}
+	}
+
+	private void put(FileChannel channel, byte[] bytes) throws IOException
+	{
+		int offset = 0;
+		while(offset < bytes.length)
+		{
+			if(!buffer.hasRemaining())
+			{
+				flush(channel);
+			}
+			int n = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, n);
+			offset += n;
+		}
+	}
+
+	private void flush(FileChannel channel) throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	//facets of the primitives start + from .. start + to, each into its own slot
+	private static class Encode extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Sculpture sculpture;
+		private final MeshCache cache;
+		private final PrinterBed.Fit fit;
+		private final byte[][] encoded;
+		private final int start;
+		private final int from;
+		private final int to;
+
+		Encode(Sculpture sculpture, MeshCache cache, PrinterBed.Fit fit, byte[][] encoded, int start, int from, int to)
+		{
+			this.sculpture = sculpture;
+			this.cache = cache;
+			this.fit = fit;
+			this.encoded = encoded;
+			this.start = start;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > LEAF)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new Encode(sculpture, cache, fit, encoded, start, from, middle), new Encode(sculpture, cache, fit, encoded, start, middle, to));
+				return;
+			}
+
+			ShapedSculpture shaped = cache != null && sculpture instanceof ShapedSculpture ? (ShapedSculpture) sculpture : null;
+			for(int i = from; i < to; i++)
+			{
+				String key = shaped != null ? shaped.getShapeKey(start + i) : null;
+				if(key != null)
+				{
+					MeshCache.Mesh mesh = cache.get(key, shaped.getShape(start + i));
+					ByteBuffer bytes = ByteBuffer.allocate(mesh.size() * TRIANGLE).order(ByteOrder.LITTLE_ENDIAN);
+					mesh.encode(bytes, shaped.getShapePosition(start + i), fit);
+					encoded[i] = bytes.array();
+					continue;
+				}
+
+				List<Facet> facets = sculpture.getModel(start + i).toCSG(FacetGenerationContext.DEFAULT).toFacets();
+				ByteBuffer bytes = ByteBuffer.allocate(facets.size() * TRIANGLE).order(ByteOrder.LITTLE_ENDIAN);
+				for(Facet facet : facets)
+				{
+					Coords3d normal = facet.getNormal();
+					if(fit == null)
+					{
+						bytes.putFloat((float) normal.getX()).putFloat((float) normal.getY()).putFloat((float) normal.getZ());
+					}
+					else
+					{
+						bytes.putFloat((float) fit.normalX(normal.getX(), normal.getY())).putFloat((float) fit.normalY(normal.getX(), normal.getY())).putFloat((float) normal.getZ());
+					}
+					for(Vertex vertex : facet.getVertexes())
+					{
+						Coords3d coords = fit != null ? fit.transform(vertex.getCoords()) : vertex.getCoords();
+						bytes.putFloat(snap(coords.getX())).putFloat(snap(coords.getY())).putFloat(snap(coords.getZ()));
+					}
+					bytes.putShort((short) 0);
+				}
+				encoded[i] = bytes.array();
+			}
+		}
+	}
+
+	static float snap(double value)
+	{
+		//+ 0.0 turns -0.0 into 0.0, the same point must have the same bits
+		return (float) (Math.rint(value * SNAP) / SNAP + 0.0);
+	}
+
+	private static class Window
+	{
+		final int end;
+		final byte[][] encoded;
+		ForkJoinTask<?> task;
+
+		Window(int start, int end)
+		{
+			this.end = end;
+			this.encoded = new byte[end - start][];
+		}
+	}
+}
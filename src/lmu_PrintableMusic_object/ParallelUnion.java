@@ -0,0 +1,197 @@
+package lmu_PrintableMusic_object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import eu.printingin3d.javascad.coords.Boundaries3d;
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+import eu.printingin3d.javascad.vrl.Polygon;
+
+//CSG union of many primitives as a balanced binary tree instead of JavaScad's left fold,
+//where every step unions one primitive into the whole result so far.
+//The primitives are sorted along a Morton curve through their centres, so neighbours
+//in the tree are neighbours in space and the subtrees stay small and compact.
+//Both halves of a node are built in parallel on a fork-join pool; halves whose
+//bounding boxes do not overlap are simply put together, without any boolean step.
+public class ParallelUnion
+{
+	//JavaScad's BSP union breaks on faces and edges that coincide exactly, which the cubes
+	//have all the time (sizes are whole mm). Every primitive is moved by a few of these
+	//steps, at most 0.0005mm, far below what a printer resolves.
+	static final double JITTER = 2e-5;
+
+	private final ForkJoinPool pool;
+
+
+	public ParallelUnion()
+	{
+		this(ParallelStlWriter.POOL);
+	}
+
+	public ParallelUnion(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+
+	public static CSG union(List<Abstract3dModel> models, FacetGenerationContext context)
+	{
+		return new ParallelUnion().toCSG(models, context);
+	}
+
+	public CSG toCSG(List<Abstract3dModel> models, FacetGenerationContext context)
+	{
+		if(models.isEmpty())
+		{
+			return new CSG(new ArrayList<Polygon>());
+		}
+
+		Abstract3dModel[] sorted = mortonOrder(models);
+		return pool.invoke(new Node(sorted, context, 0, sorted.length)).csg;
+	}
+
+	static Abstract3dModel[] mortonOrder(List<Abstract3dModel> models)
+	{
+		int n = models.size();
+		double[][] center = new double[n][3];
+		double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+		double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+		for(int i = 0; i < n; i++)
+		{
+			Boundaries3d bounds = models.get(i).getBoundaries();
+			center[i][0] = bounds.getX().getMiddle();
+			center[i][1] = bounds.getY().getMiddle();
+			center[i][2] = bounds.getZ().getMiddle();
+			for(int a = 0; a < 3; a++)
+			{
+				min[a] = Math.min(min[a], center[i][a]);
+				max[a] = Math.max(max[a], center[i][a]);
+			}
+		}
+
+		//upper 42 bits the code, lower 21 bits the index, so one sort does it
+		long[] keys = new long[n];
+		for(int i = 0; i < n; i++)
+		{
+			long code = 0;
+			for(int a = 0; a < 3; a++)
+			{
+				double extent = max[a] - min[a];
+				long cell = extent > 0 ? (long) ((center[i][a] - min[a]) / extent * 0x3FFF) : 0;
+				code |= spread(cell) << a;
+			}
+			keys[i] = (code << 21) | i;
+		}
+		Arrays.sort(keys);
+
+		Abstract3dModel[] sorted = new Abstract3dModel[n];
+		for(int i = 0; i < n; i++)
+		{
+			sorted[i] = models.get((int) (keys[i] & 0x1FFFFF));
+		}
+		return sorted;
+	}
+
+	//14 bits, every one followed by two zeros
+	private static long spread(long v)
+	{
+		long r = 0;
+		for(int bit = 0; bit < 14; bit++)
+		{
+			r |= ((v >> bit) & 1) << (3 * bit);
+		}
+		return r;
+	}
+
+	static Coords3d jitter(int index)
+	{
+		long h = (index + 1) * 0x9E3779B97F4A7C15L;
+		double[] d = new double[3];
+		for(int axis = 0; axis < 3; axis++)
+		{
+			h ^= h >>> 29;
+			h *= 0xBF58476D1CE4E5B9L;
+			d[axis] = ((int) ((h >>> 40) % 51) - 25) * JITTER;
+		}
+		return new Coords3d(d[0], d[1], d[2]);
+	}
+
+	static boolean overlap(double[] a, double[] b)
+	{
+		for(int axis = 0; axis < 3; axis++)
+		{
+			//touching boxes still go through the union, their faces have to be merged
+			if(a[axis + 3] < b[axis] || b[axis + 3] < a[axis])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class Node extends RecursiveTask<Node>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Abstract3dModel[] models;
+		private final FacetGenerationContext context;
+		private final int from;
+		private final int to;
+
+		CSG csg;
+		//min x, y, z, max x, y, z
+		double[] bounds;
+
+		Node(Abstract3dModel[] models, FacetGenerationContext context, int from, int to)
+		{
+			this.models = models;
+			this.context = context;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Node compute()
+		{
+			if(to - from == 1)
+			{
+				Abstract3dModel model = models[from].cloneModel().move(jitter(from));
+				Boundaries3d b = model.getBoundaries();
+				csg = model.toCSG(context);
+				bounds = new double[] {b.getX().getMin(), b.getY().getMin(), b.getZ().getMin(), b.getX().getMax(), b.getY().getMax(), b.getZ().getMax()};
+				return this;
+			}
+
+			int middle = (from + to) >>> 1;
+			Node left = new Node(models, context, from, middle);
+			Node right = new Node(models, context, middle, to);
+			invokeAll(left, right);
+
+			if(overlap(left.bounds, right.bounds))
+			{
+				csg = left.csg.union(right.csg);
+			}
+			else
+			{
+				List<Polygon> polygons = new ArrayList<>(left.csg.getPolygons().size() + right.csg.getPolygons().size());
+				polygons.addAll(left.csg.getPolygons());
+				polygons.addAll(right.csg.getPolygons());
+				csg = new CSG(polygons);
+			}
+
+			bounds = new double[6];
+			for(int axis = 0; axis < 3; axis++)
+			{
+				bounds[axis] = Math.min(left.bounds[axis], right.bounds[axis]);
+				bounds[axis + 3] = Math.max(left.bounds[axis + 3], right.bounds[axis + 3]);
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package lmu_PrintableMusic_object;
+
+import eu.printingin3d.javascad.context.IScadGenerationContext;
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.IModel;
+import eu.printingin3d.javascad.models.SCAD;
+import eu.printingin3d.javascad.tranform.ITransformation;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+
+//The build volume of the printer the sculptures go to. A sculpture fits if its bounding
+//box fits, turned by 90 degrees on the bed if need be. One that does not fit is shrunk
+//at export by a single transform: the largest uniform scale that fits, turned by 90 degrees
+//if it fits larger that way, and the middle of its bottom set onto the middle of the bed,
+//where GcodeStream prints too; the model itself is not rebuilt. Sculptures that fit are
+//exported as they are.
+//
+//  -Dprintablemusic.bed=<width>x<depth>x<height>   in mm (default 200x200x200)
+//  -Dprintablemusic.fit=off                        exports without shrinking
+public class PrinterBed
+{
+	public static final PrinterBed CONFIGURED = parse(System.getProperty("printablemusic.bed", "200x200x200"));
+	public static final boolean FIT = !"off".equals(System.getProperty("printablemusic.fit"));
+
+	private final double width;
+	private final double depth;
+	private final double height;
+
+
+	public PrinterBed(double width, double depth, double height)
+	{
+		this.width = width;
+		this.depth = depth;
+		this.height = height;
+	}
+
+	//200x200x200
+	public static PrinterBed parse(String size)
+	{
+		String[] parts = size.toLowerCase().split("x");
+		if(parts.length != 3)
+		{
+			throw new IllegalArgumentException("printer bed must be <width>x<depth>x<height>: " + size);
+		}
+		return new PrinterBed(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+	}
+
+
+	public boolean fits(BoundingBox box)
+	{
+		return scale(box) >= 1;
+	}
+
+	//the largest uniform scale that fits the box onto the bed, 1 or more if it fits already
+	public double scale(BoundingBox box)
+	{
+		if(box.isEmpty())
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		double up = height / box.getHeight();
+		return Math.min(up, Math.max(straight(box), turned(box)));
+	}
+
+	private double straight(BoundingBox box)
+	{
+		return Math.min(width / box.getWidth(), depth / box.getDepth());
+	}
+
+	//the width of the box along the depth of the bed
+	private double turned(BoundingBox box)
+	{
+		return Math.min(width / box.getDepth(), depth / box.getWidth());
+	}
+
+	//the transform for the export, null if the sculpture fits or fitting is off
+	public Fit fit(BoundingBox box)
+	{
+		double scale = scale(box);
+		if(!FIT || scale >= 1)
+		{
+			return null;
+		}
+		return new Fit(scale, turned(box) > straight(box), (box.getMinX() + box.getMaxX()) / 2, (box.getMinY() + box.getMaxY()) / 2, box.getMinZ(), width / 2, depth / 2);
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+	public double getDepth() {
+		return depth;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%.0f x %.0f x %.0f mm", width, depth, height);
+	}
+
+
+	//scales around the middle of the bottom of the box, turns it around that point if need be
+	//and moves the point to the middle of the bed. x and y take both coordinates, turned
+	//they swap; the normals only turn.
+	public static class Fit implements ITransformation
+	{
+		private final double scale;
+		private final boolean turned;
+		private final double x;
+		private final double y;
+		private final double z;
+		private final double centerX;
+		private final double centerY;
+
+		public Fit(double scale, boolean turned, double x, double y, double z, double centerX, double centerY)
+		{
+			this.scale = scale;
+			this.turned = turned;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.centerX = centerX;
+			this.centerY = centerY;
+		}
+
+		public double x(double x, double y)
+		{
+			return centerX + scale * (turned ? this.y - y : x - this.x);
+		}
+
+		public double y(double x, double y)
+		{
+			return centerY + scale * (turned ? x - this.x : y - this.y);
+		}
+
+		public double z(double value)
+		{
+			return scale * (value - z);
+		}
+
+		public double normalX(double x, double y)
+		{
+			return turned ? -y : x;
+		}
+
+		public double normalY(double x, double y)
+		{
+			return turned ? x : y;
+		}
+
+		public double getScale() {
+			return scale;
+		}
+
+		//by 90 degrees, counterclockwise
+		public boolean isTurned() {
+			return turned;
+		}
+
+		@Override
+		public Coords3d transform(Coords3d c)
+		{
+			return new Coords3d(x(c.getX(), c.getY()), y(c.getX(), c.getY()), z(c.getZ()));
+		}
+
+		@Override
+		public boolean isMirror()
+		{
+			return false;
+		}
+
+		//the model inside one multmatrix()
+		public IModel apply(final IModel model)
+		{
+			return new IModel()
+			{
+				@Override
+				public SCAD toScad(IScadGenerationContext context)
+				{
+					//turned, x comes from -y and y from x
+					double straight = turned ? 0 : scale;
+					return new SCAD(String.format(java.util.Locale.US, "multmatrix([[%s,%s,0,%s],[%s,%s,0,%s],[0,0,%s,%s],[0,0,0,1]])\n{\n",
+							straight, turned ? -scale : 0, x(0, 0), turned ? scale : 0, straight, y(0, 0), scale, -scale * z) + model.toScad(context).getScad() + "}\n");
+				}
+
+				@Override
+				public CSG toCSG(FacetGenerationContext context)
+				{
+					return model.toCSG(context).transformed(Fit.this);
+				}
+			};
+		}
+	}
+}
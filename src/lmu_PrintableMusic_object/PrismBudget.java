@@ -0,0 +1,142 @@
+package lmu_PrintableMusic_object;
+
+//Keeps the stacked prism export of a sculpture near a number of triangles. The stack
+//costs 4 * sides triangles for every run of equal plates and nothing for a plate that
+//continues a run, so the budget is kept by letting a new plate continue the run below
+//when it looks close enough to it. Until half of the budget is used every plate is
+//exact; from there the allowed deviation grows to the maximum tolerance at the full
+//budget, and once the budget is used up every plate continues the run below. Plates
+//that lie inside the outline of the run below sit in a recess and may deviate twice as
+//much. Only the plate being added is decided, nothing played before changes.
+//
+//  -Dprintablemusic.prismBudget=<triangles>   (default 0, no budget)
+public class PrismBudget
+{
+	public static final double START = 0.5; //of the budget
+	public static final double DEFAULT_MAX_TOLERANCE = 0.5; //mm
+	public static final long CONFIGURED = Long.getLong("printablemusic.prismBudget", 0);
+
+	//angles the outlines are compared at, on top of the corners of both
+	private static final int SAMPLES = 72;
+
+	private final long budget;
+	private final double maxTolerance;
+
+	private long triangles = 0;
+	private int plates = 0;
+	private int joined = 0;
+	private int forced = 0;
+	private double maxDeviation = 0;
+	private double sumDeviation = 0;
+
+
+	public PrismBudget(long budget, double maxTolerance)
+	{
+		this.budget = budget;
+		this.maxTolerance = maxTolerance;
+	}
+
+
+	//a new plate starts a run of the given number of sides
+	public void run(int sides, boolean first)
+	{
+		//the first run also gets its caps, every further one takes over the top cap
+		triangles += first ? 4 * sides - 4 : 4 * sides;
+	}
+
+	//whether a plate of radius and sides should continue the run below instead
+	public boolean joins(double runRadius, int runSides, double radius, int sides)
+	{
+		plates++;
+		double fill = (double) triangles / budget;
+		if(fill < START || (runRadius == radius && runSides == sides))
+		{
+			return false;
+		}
+
+		double[] deviation = deviation(runRadius, runSides, radius, sides);
+		double tolerance = fill >= 1 ? Double.POSITIVE_INFINITY : maxTolerance * (fill - START) / (1 - START);
+		if(deviation[0] <= 0)
+		{
+			tolerance *= 2;
+		}
+		double worst = Math.max(deviation[0], deviation[1]);
+		if(worst > tolerance)
+		{
+			return false;
+		}
+
+		joined++;
+		if(fill >= 1)
+		{
+			forced++;
+		}
+		maxDeviation = Math.max(maxDeviation, worst);
+		sumDeviation += worst;
+		return true;
+	}
+
+	//how far the plate's outline reaches out of and stays inside the run's outline, in mm
+	static double[] deviation(double runRadius, int runSides, double radius, int sides)
+	{
+		double out = -Double.MAX_VALUE;
+		double in = -Double.MAX_VALUE;
+		for(int k = 0; k < SAMPLES + runSides + sides; k++)
+		{
+			double angle;
+			if(k < SAMPLES)
+			{
+				angle = 2 * Math.PI * k / SAMPLES;
+			}
+			else if(k < SAMPLES + runSides)
+			{
+				angle = 2 * Math.PI * (k - SAMPLES) / runSides;
+			}
+			else
+			{
+				angle = 2 * Math.PI * (k - SAMPLES - runSides) / sides;
+			}
+			double difference = outline(radius, sides, angle) - outline(runRadius, runSides, angle);
+			out = Math.max(out, difference);
+			in = Math.max(in, -difference);
+		}
+		return new double[] {out, in};
+	}
+
+	//distance from the axis to the edge of a regular polygon with its first corner at angle 0
+	private static double outline(double radius, int sides, double angle)
+	{
+		double sector = 2 * Math.PI / sides;
+		double within = angle - Math.floor(angle / sector) * sector;
+		return radius * Math.cos(Math.PI / sides) / Math.cos(within - Math.PI / sides);
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	//of the stacked export so far
+	public long getTriangles() {
+		return triangles;
+	}
+
+	//plates that continue the run below instead of their own outline
+	public int getJoined() {
+		return joined;
+	}
+
+	//of them, the ones joined only because the budget is used up, whatever the deviation
+	public int getForced() {
+		return forced;
+	}
+
+	//mm, the most a plate's outline is off its full resolution one
+	public double getMaxDeviation() {
+		return maxDeviation;
+	}
+
+	//mm, over all plates decided, exact ones count as 0
+	public double getMeanDeviation() {
+		return plates == 0 ? 0 : sumDeviation / plates;
+	}
+}
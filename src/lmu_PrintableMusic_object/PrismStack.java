@@ -0,0 +1,259 @@
+package lmu_PrintableMusic_object;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import eu.printingin3d.javascad.context.IScadGenerationContext;
+import eu.printingin3d.javascad.coords.Boundaries3d;
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+import eu.printingin3d.javascad.models.Atomic3dModel;
+import eu.printingin3d.javascad.models.SCAD;
+import eu.printingin3d.javascad.vrl.CSG;
+import eu.printingin3d.javascad.vrl.FacetGenerationContext;
+import eu.printingin3d.javascad.vrl.Polygon;
+
+//A stack of prism plates as one lofted polyhedron instead of a union of thin prisms.
+//Every run of equal plates becomes two rings of its polygon, the rings of neighbouring
+//runs are stitched together directly, merged by angle when their side counts differ,
+//and the lowest and highest ring get a cap. The result is one closed mesh whose
+//vertex count grows linearly with the notes, nothing is left for a boolean union.
+//JavaScad's Polyhedron looks up every point with indexOf, so the SCAD is written here.
+public class PrismStack extends Atomic3dModel
+{
+	//rings of neighbouring runs are this far apart, so the step between them stays a real face
+	public static final double STEP = 0.01;
+
+	//x, y, z of every vertex, and three vertex numbers per triangle, counter-clockwise from outside
+	private final double[] points;
+	private final int[] triangles;
+
+
+	private PrismStack(double[] points, int[] triangles)
+	{
+		this.points = points;
+		this.triangles = triangles;
+	}
+
+
+	//plates from .. to of the store, each one height high and centred on its z
+	public static PrismStack of(NoteStore plates, int from, int to, double height)
+	{
+		Builder builder = new Builder();
+
+		int run = from;
+		while(run < to)
+		{
+			//equal plates directly on top of each other are one run
+			int end = run + 1;
+			while(end < to && same(plates, end - 1, end) && Math.abs(plates.getZ(end) - plates.getZ(end - 1) - height) < 1e-9)
+			{
+				end++;
+			}
+
+			boolean first = run == from || Math.abs(plates.getZ(run) - plates.getZ(run - 1) - height) > 1e-9;
+			boolean last = end == to || Math.abs(plates.getZ(end) - plates.getZ(end - 1) - height) > 1e-9;
+			double bottom = plates.getZ(run) - height / 2 + (first ? 0 : STEP / 2);
+			double top = plates.getZ(end - 1) + height / 2 - (last ? 0 : STEP / 2);
+
+			int lower = builder.ring(plates.getX(run), plates.getY(run), bottom, plates.getSize(run), plates.getSides(run));
+			if(first)
+			{
+				builder.cap(lower, false);
+			}
+			else
+			{
+				builder.stitch(builder.previousTop, lower);
+			}
+			int upper = builder.ring(plates.getX(run), plates.getY(run), top, plates.getSize(run), plates.getSides(run));
+			builder.stitch(lower, upper);
+			if(last)
+			{
+				builder.cap(upper, true);
+			}
+			builder.previousTop = upper;
+
+			run = end;
+		}
+		return new PrismStack(Arrays.copyOf(builder.points, builder.pointCount * 3), Arrays.copyOf(builder.triangles, builder.triangleCount * 3));
+	}
+
+	private static boolean same(NoteStore plates, int a, int b)
+	{
+		return plates.getX(a) == plates.getX(b) && plates.getY(a) == plates.getY(b) && plates.getSize(a) == plates.getSize(b) && plates.getSides(a) == plates.getSides(b);
+	}
+
+	public int getPointCount()
+	{
+		return points.length / 3;
+	}
+
+	public int getTriangleCount()
+	{
+		return triangles.length / 3;
+	}
+
+	@Override
+	protected SCAD innerToScad(IScadGenerationContext context)
+	{
+		StringBuilder scad = new StringBuilder(points.length * 8 + triangles.length * 6);
+		scad.append("polyhedron(\n  points=[");
+		for(int p = 0; p < points.length; p += 3)
+		{
+			if(p > 0)
+			{
+				scad.append(", ");
+			}
+			scad.append(point(p));
+		}
+		//openSCAD wants the faces clockwise seen from outside
+		scad.append("],\n  faces=[");
+		for(int t = 0; t < triangles.length; t += 3)
+		{
+			if(t > 0)
+			{
+				scad.append(", ");
+			}
+			scad.append('[').append(triangles[t]).append(',').append(triangles[t + 2]).append(',').append(triangles[t + 1]).append(']');
+		}
+		scad.append("]\n);\n");
+		return new SCAD(scad.toString());
+	}
+
+	@Override
+	protected CSG toInnerCSG(FacetGenerationContext context)
+	{
+		List<Polygon> polygons = new ArrayList<>(triangles.length / 3);
+		for(int t = 0; t < triangles.length; t += 3)
+		{
+			polygons.add(Polygon.fromPolygons(Arrays.asList(point(triangles[t] * 3), point(triangles[t + 1] * 3), point(triangles[t + 2] * 3)), context.getColor()));
+		}
+		return new CSG(polygons);
+	}
+
+	@Override
+	protected Boundaries3d getModelBoundaries()
+	{
+		double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+		double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+		for(int p = 0; p < points.length; p++)
+		{
+			min[p % 3] = Math.min(min[p % 3], points[p]);
+			max[p % 3] = Math.max(max[p % 3], points[p]);
+		}
+		return new Boundaries3d(new Coords3d(min[0], min[1], min[2]), new Coords3d(max[0], max[1], max[2]));
+	}
+
+	@Override
+	protected Abstract3dModel innerCloneModel()
+	{
+		return new PrismStack(points, triangles);
+	}
+
+	private Coords3d point(int p)
+	{
+		return new Coords3d(points[p], points[p + 1], points[p + 2]);
+	}
+
+
+	private static class Builder
+	{
+		double[] points = new double[3 * 1024];
+		int pointCount = 0;
+		int[] triangles = new int[3 * 2048];
+		int triangleCount = 0;
+
+		//first point and size of every ring
+		int[] ringStart = new int[256];
+		int[] ringSides = new int[256];
+		int rings = 0;
+		int previousTop = -1;
+
+		//a regular polygon like openSCAD's cylinder with $fn=sides, first corner at angle 0
+		int ring(double x, double y, double z, double radius, int sides)
+		{
+			if(rings == ringStart.length)
+			{
+				ringStart = Arrays.copyOf(ringStart, rings * 2);
+				ringSides = Arrays.copyOf(ringSides, rings * 2);
+			}
+			ringStart[rings] = pointCount;
+			ringSides[rings] = sides;
+
+			for(int i = 0; i < sides; i++)
+			{
+				double angle = 2 * Math.PI * i / sides;
+				point(x + radius * Math.cos(angle), y + radius * Math.sin(angle), z);
+			}
+			return rings++;
+		}
+
+		//side faces between a lower and an upper ring, walking both by angle
+		void stitch(int lower, int upper)
+		{
+			int n = ringSides[lower];
+			int m = ringSides[upper];
+			int i = 0;
+			int j = 0;
+			while(i < n || j < m)
+			{
+				//advance on the ring whose next corner comes first, i/n against j/m
+				if(j == m || (i < n && (long) (i + 1) * m <= (long) (j + 1) * n))
+				{
+					triangle(corner(lower, i), corner(lower, i + 1), corner(upper, j));
+					i++;
+				}
+				else
+				{
+					triangle(corner(lower, i), corner(upper, j + 1), corner(upper, j));
+					j++;
+				}
+			}
+		}
+
+		void cap(int ring, boolean top)
+		{
+			for(int k = 1; k + 1 < ringSides[ring]; k++)
+			{
+				if(top)
+				{
+					triangle(corner(ring, 0), corner(ring, k), corner(ring, k + 1));
+				}
+				else
+				{
+					triangle(corner(ring, 0), corner(ring, k + 1), corner(ring, k));
+				}
+			}
+		}
+
+		int corner(int ring, int i)
+		{
+			return ringStart[ring] + i % ringSides[ring];
+		}
+
+		void point(double x, double y, double z)
+		{
+			if(pointCount * 3 == points.length)
+			{
+				points = Arrays.copyOf(points, points.length * 2);
+			}
+			points[pointCount * 3] = x;
+			points[pointCount * 3 + 1] = y;
+			points[pointCount * 3 + 2] = z;
+			pointCount++;
+		}
+
+		void triangle(int a, int b, int c)
+		{
+			if(triangleCount * 3 == triangles.length)
+			{
+				triangles = Arrays.copyOf(triangles, triangles.length * 2);
+			}
+			triangles[triangleCount * 3] = a;
+			triangles[triangleCount * 3 + 1] = b;
+			triangles[triangleCount * 3 + 2] = c;
+			triangleCount++;
+		}
+	}
+}
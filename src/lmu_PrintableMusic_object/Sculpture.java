@@ -0,0 +1,44 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import eu.printingin3d.javascad.models.Abstract3dModel;
+
+//A sculpture grows by one element per played note.
+//Implementations map pitch and velocity to their own geometry.
+public interface Sculpture
+{
+	//where the live preview and the final models go unless a session says otherwise
+	public static final File CURRENT_DIRECTORY = new File(File.separator + "media" + File.separator + "sebastian" + File.separator + "Stuff" + File.separator + "LMU/15_SS/Kunst/reources/current");
+	public static final File MODEL_DIRECTORY = new File("/media/sebastian/Stuff/LMU/15_SS/Kunst/Modelle");
+
+	public void addNote(int pitch, int velocity, long timeStamp);
+
+	//writes the live preview
+	public void safeModel();
+
+	//publishes what is still held back of the live preview
+	public void closeSnapshot();
+
+	//writes the final, timestamped model; false if it could not be written
+	public boolean safeForGood();
+
+	//writes the final model to the given file
+	public void safeForGood(File file) throws IOException;
+
+	//writes a binary STL that can go to the slicer directly
+	public void safePrintable(File file) throws IOException;
+
+	//builds the JavaScad models of everything recorded so far
+	public List<Abstract3dModel> getModels();
+
+	public int getModelCount();
+
+	//around everything added so far, kept up to date note by note
+	public BoundingBox getBounds();
+
+	//builds a single one of them
+	public Abstract3dModel getModel(int index);
+}
@@ -0,0 +1,53 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+
+//The sculpture kinds the frontend offers; each one creates its own Sculpture,
+//which then does the note mapping.
+public enum SculptureMode
+{
+	CUBE
+	{
+		@Override
+		public Sculpture create(String name, File currentDirectory, File modelDirectory)
+		{
+			return new ModelCube(name, currentDirectory, modelDirectory);
+		}
+	},
+	PRISM
+	{
+		@Override
+		public Sculpture create(String name, File currentDirectory, File modelDirectory)
+		{
+			return new ModelPrism(name, currentDirectory, modelDirectory);
+		}
+	},
+	//the cubes again, but printed from a voxel grid instead of a union
+	VOXEL
+	{
+		@Override
+		public Sculpture create(String name, File currentDirectory, File modelDirectory)
+		{
+			return new ModelVoxel(name, currentDirectory, modelDirectory);
+		}
+
+		@Override
+		public String getExtension()
+		{
+			return "stl";
+		}
+	};
+
+	public Sculpture create(String name)
+	{
+		return create(name, Sculpture.CURRENT_DIRECTORY, Sculpture.MODEL_DIRECTORY);
+	}
+
+	//of the file safeForGood writes
+	public String getExtension()
+	{
+		return "scad";
+	}
+
+	public abstract Sculpture create(String name, File currentDirectory, File modelDirectory);
+}
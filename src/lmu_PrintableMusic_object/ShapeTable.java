@@ -0,0 +1,114 @@
+package lmu_PrintableMusic_object;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.printingin3d.javascad.context.IScadGenerationContext;
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+
+//The distinct primitive shapes of a sculpture, each one becomes a SCAD module shape_<n>()
+//and every note only a call of it. Two primitives are the same shape if their kind matches
+//and every parameter is equal within the tolerance; the first one played defines the module.
+//
+//  -Dprintablemusic.instancing=on|off|<tolerance in mm>   (default off)
+public class ShapeTable
+{
+	//the precision of the SCAD output, so the file does not change
+	public static final double DEFAULT_TOLERANCE = 0.0001; //mm
+	//what new sculptures start with, below 0 is off
+	public static final double CONFIGURED_TOLERANCE = configured(System.getProperty("printablemusic.instancing", "off"));
+
+	private final double tolerance;
+	private final Map<String, Integer> index = new HashMap<>();
+	private final List<Abstract3dModel> shapes = new ArrayList<>();
+
+
+	public ShapeTable(double tolerance)
+	{
+		if(tolerance <= 0)
+		{
+			throw new IllegalArgumentException("tolerance must be positive: " + tolerance);
+		}
+		this.tolerance = tolerance;
+	}
+
+
+	//the number of the shape, atOrigin is only kept if it is a new one
+	public int add(String kind, Abstract3dModel atOrigin, double... parameters)
+	{
+		StringBuilder key = new StringBuilder(kind);
+		for(double p : parameters)
+		{
+			key.append(':').append(Math.round(p / tolerance));
+		}
+		Integer shape = index.get(key.toString());
+		if(shape == null)
+		{
+			shape = shapes.size();
+			index.put(key.toString(), shape);
+			shapes.add(atOrigin);
+		}
+		return shape;
+	}
+
+	public int size()
+	{
+		return shapes.size();
+	}
+
+	public Abstract3dModel getShape(int shape)
+	{
+		return shapes.get(shape);
+	}
+
+	public double getTolerance()
+	{
+		return tolerance;
+	}
+
+	//one module per shape, for the head of the file
+	public String modules(IScadGenerationContext context)
+	{
+		return modules(context, 0);
+	}
+
+	//the modules from the given shape on
+	public String modules(IScadGenerationContext context, int from)
+	{
+		StringBuilder scad = new StringBuilder();
+		for(int i = from; i < shapes.size(); i++)
+		{
+			scad.append("module ").append(name(i)).append("() {").append(shapes.get(i).toScad(context).getScad().replace('\n', ' ').trim()).append("}\n");
+		}
+		return scad.toString();
+	}
+
+	//formatted like JavaScad's own move(), so the union lines look the same
+	public static String call(int shape, Coords3d position)
+	{
+		String call = name(shape) + "();";
+		return position.equals(Coords3d.ZERO) ? call : "translate(" + position + ")" + call;
+	}
+
+	public static String name(int shape)
+	{
+		return "shape_" + shape;
+	}
+
+	//on, off or a tolerance in mm
+	static double configured(String value)
+	{
+		if(value.equals("off"))
+		{
+			return -1;
+		}
+		if(value.equals("on"))
+		{
+			return DEFAULT_TOLERANCE;
+		}
+		return Double.parseDouble(value);
+	}
+}
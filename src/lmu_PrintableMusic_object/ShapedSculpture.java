@@ -0,0 +1,19 @@
+package lmu_PrintableMusic_object;
+
+import eu.printingin3d.javascad.coords.Coords3d;
+import eu.printingin3d.javascad.models.Abstract3dModel;
+
+//A sculpture whose export models are a few shapes moved into place. The STL export
+//then takes each shape's mesh from the MeshCache and only moves it, instead of
+//tessellating every model on its own.
+public interface ShapedSculpture extends Sculpture
+{
+	//equal for models of exactly the same shape (see MeshCache.key), null if the model is one of a kind
+	public String getShapeKey(int model);
+
+	//the shape of the model at the origin
+	public Abstract3dModel getShape(int model);
+
+	//where the shape goes
+	public Coords3d getShapePosition(int model);
+}
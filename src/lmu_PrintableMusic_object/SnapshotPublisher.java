@@ -0,0 +1,394 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Puts the files of the live preview into place so openSCAD never sees half of one:
+//every file is written to a temp file in the same directory and then renamed over the
+//target in one step. Files submitted together are renamed in that order, the file
+//openSCAD watches goes last.
+//Publishes closer together than the minimum interval are held back and only the
+//latest content of each file is written, by a timer at the end of the interval, so
+//openSCAD reloads at most once per interval. There is one publisher per directory,
+//shared by all sculptures writing there; the lock only guards what is pending, the
+//files are written outside it. whenPublished() tells a writer once the files it
+//submitted are in place, which is what the latency of the disk is measured up to.
+//
+//  -Dprintablemusic.sync=none|data|full      (default none)
+//  -Dprintablemusic.publishInterval=ms       (default 100)
+public class SnapshotPublisher
+{
+	public enum Sync
+	{
+		//leaves it to the OS, a crash may lose the last snapshots but never shows a torn one
+		NONE,
+		//forces the temp file to disk before the rename
+		DATA,
+		//also forces the directory, so the rename itself survives a crash
+		FULL
+	}
+
+	public static final long DEFAULT_MIN_INTERVAL = 100; //ms
+
+	public interface Published
+	{
+		//nanos is the System.nanoTime() right after the last rename
+		public void published(long nanos);
+	}
+
+	private static final ConcurrentHashMap<File, SnapshotPublisher> publishers = new ConcurrentHashMap<>();
+	private static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+	{
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "snapshot-publisher");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final File directory;
+	private volatile Sync sync = Sync.valueOf(System.getProperty("printablemusic.sync", "none").toUpperCase());
+	private volatile long minInterval = Long.getLong("printablemusic.publishInterval", DEFAULT_MIN_INTERVAL) * 1000000;
+
+	//guarded by this
+	private final Map<File, byte[]> pending = new LinkedHashMap<>();
+	private final List<Published> waiting = new ArrayList<>();
+	private boolean scheduled = false;
+	//a batch is being written
+	private boolean publishing = false;
+	private long lastPublish = 0;
+
+	private final AtomicLong publishes = new AtomicLong();
+	private final AtomicLong files = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong held = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final long created = System.nanoTime();
+
+
+	private SnapshotPublisher(File directory)
+	{
+		this.directory = directory;
+	}
+
+	public static SnapshotPublisher forDirectory(File directory)
+	{
+		File key = directory.getAbsoluteFile();
+		SnapshotPublisher publisher = publishers.get(key);
+		if(publisher == null)
+		{
+			publisher = new SnapshotPublisher(key);
+			SnapshotPublisher raced = publishers.putIfAbsent(key, publisher);
+			if(raced != null)
+			{
+				publisher = raced;
+			}
+		}
+		return publisher;
+	}
+
+
+	//publishes the files in the given order, now or at the end of the interval
+	public void submit(Map<File, byte[]> contents) throws IOException
+	{
+		boolean now;
+		synchronized(this)
+		{
+			for(Map.Entry<File, byte[]> e : contents.entrySet())
+			{
+				//moved to the end, so the order of the latest submit wins
+				if(pending.remove(e.getKey()) != null)
+				{
+					held.incrementAndGet();
+				}
+				pending.put(e.getKey(), e.getValue());
+			}
+			long wait = lastPublish + minInterval - System.nanoTime();
+			now = lastPublish == 0 || wait <= 0;
+			if(!now)
+			{
+				schedule(wait);
+			}
+		}
+		if(now)
+		{
+			publishPending(false);
+		}
+	}
+
+	//calls back once everything submitted so far is in place, right away if nothing is held back
+	public synchronized void whenPublished(Published callback)
+	{
+		if(pending.isEmpty() && !publishing)
+		{
+			callback.published(System.nanoTime());
+		}
+		else
+		{
+			waiting.add(callback);
+		}
+	}
+
+	//publishes what is held back right away, e.g. before the final model is written; returns
+	//once everything submitted before is in place
+	public void flush() throws IOException
+	{
+		synchronized(this)
+		{
+			scheduled = false;
+		}
+		publishPending(true);
+	}
+
+	//at the end of the interval, called under the lock
+	private void schedule(long wait)
+	{
+		if(scheduled || pending.isEmpty())
+		{
+			return;
+		}
+		scheduled = true;
+		timer.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				synchronized(SnapshotPublisher.this)
+				{
+					scheduled = false;
+				}
+				try
+				{
+					publishPending(false);
+				}
+				catch (IOException e) {e.printStackTrace();}
+			}
+		}, Math.max(0, wait), TimeUnit.NANOSECONDS);
+	}
+
+	//writes the files outside the lock, one batch at a time, so submitting never waits for the
+	//disk; what comes in meanwhile goes with the next batch. A batch that fails part-way puts
+	//what it did not write back in front of what is pending, its callbacks wait for the next one.
+	//With wait false a publish already under way is left to publish the rest after it.
+	private void publishPending(boolean wait) throws IOException
+	{
+		List<Map.Entry<File, byte[]>> batch;
+		List<Published> callbacks;
+		synchronized(this)
+		{
+			while(wait && publishing)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if(publishing || pending.isEmpty())
+			{
+				return;
+			}
+			publishing = true;
+			batch = new ArrayList<>(pending.entrySet());
+			pending.clear();
+			callbacks = new ArrayList<>(waiting);
+			waiting.clear();
+		}
+
+		long start = System.nanoTime();
+		int done = 0;
+		long written = 0;
+		try
+		{
+			directory.mkdirs();
+			for(Map.Entry<File, byte[]> e : batch)
+			{
+				write(e.getKey(), e.getValue());
+				written += e.getValue().length;
+				done++;
+			}
+			if(sync == Sync.FULL)
+			{
+				forceDirectory();
+			}
+		}
+		finally
+		{
+			long end = System.nanoTime();
+			synchronized(this)
+			{
+				publishing = false;
+				if(done < batch.size())
+				{
+					Map<File, byte[]> rest = new LinkedHashMap<>();
+					for(Map.Entry<File, byte[]> e : batch.subList(done, batch.size()))
+					{
+						if(!pending.containsKey(e.getKey()))
+						{
+							rest.put(e.getKey(), e.getValue());
+						}
+					}
+					rest.putAll(pending);
+					pending.clear();
+					pending.putAll(rest);
+					waiting.addAll(0, callbacks);
+					callbacks.clear();
+				}
+				else
+				{
+					lastPublish = end;
+					publishes.incrementAndGet();
+					files.addAndGet(batch.size());
+					bytes.addAndGet(written);
+					totalNanos.addAndGet(end - start);
+					if(end - start > maxNanos.get())
+					{
+						maxNanos.set(end - start);
+					}
+					//waited for this batch or for nothing held back
+					if(pending.isEmpty())
+					{
+						callbacks.addAll(waiting);
+						waiting.clear();
+					}
+					schedule(lastPublish + minInterval - end);
+				}
+				notifyAll();
+			}
+			for(Published callback : callbacks)
+			{
+				callback.published(end);
+			}
+		}
+	}
+
+	private void write(File target, byte[] content) throws IOException
+	{
+		File temp = new File(target.getParentFile(), "." + target.getName() + ".tmp");
+		FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			if(sync != Sync.NONE)
+			{
+				channel.force(false);
+			}
+		}
+		finally
+		{
+			channel.close();
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			//some network shares, better a plain replace than no preview
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void forceDirectory()
+	{
+		//not every platform can open a directory, Windows cannot
+		try
+		{
+			FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+			try
+			{
+				channel.force(true);
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+		catch (IOException e)
+		{
+			//the files themselves are forced already
+		}
+	}
+
+	public void setSync(Sync sync)
+	{
+		this.sync = sync;
+	}
+
+	//ms between two publishes, 0 publishes every submit
+	public void setMinInterval(long millis)
+	{
+		minInterval = millis * 1000000;
+	}
+
+	public Sync getSync() {
+		return sync;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getPublishes() {
+		return publishes.get();
+	}
+
+	//file versions replaced by a newer one before they were published
+	public long getHeldBack() {
+		return held.get();
+	}
+
+	public long getPublishedBytes() {
+		return bytes.get();
+	}
+
+	//publishes per second since the publisher was created
+	public double getPublishRate() {
+		return publishes.get() / ((System.nanoTime() - created) / 1e9);
+	}
+
+	//ms
+	public double getMeanPublishTime() {
+		long n = publishes.get();
+		return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+	}
+
+	//ms
+	public double getMaxPublishTime() {
+		return maxNanos.get() / 1e6;
+	}
+
+	public String report()
+	{
+		return String.format("%d publishes (%.1f/s), %d files, %d KB, %d held back, %.2f ms mean, %.2f ms max, sync %s",
+				getPublishes(), getPublishRate(), files.get(), getPublishedBytes() / 1024, getHeldBack(), getMeanPublishTime(), getMaxPublishTime(), sync.name().toLowerCase());
+	}
+}
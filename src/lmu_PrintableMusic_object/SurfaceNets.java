@@ -0,0 +1,226 @@
+package lmu_PrintableMusic_object;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+//Meshes a VoxelGrid with naive surface nets and streams the surface into a binary STL.
+//Every cell between 8 voxel centres that has both filled and empty corners gets one vertex,
+//the mean of its crossed edges, and every filled voxel gets one quad per empty neighbour,
+//spanned by the vertices of the 4 cells around that edge. That gives one closed surface
+//without any boolean union; the triangle count is patched into the header at the end.
+//Given a PrinterBed.Fit, every vertex is shrunk onto the bed as it is written.
+public class SurfaceNets
+{
+	private static final int HEADER = 80;
+	private static final int TRIANGLE = 50;
+	private static final int BUFFER = 4096 * TRIANGLE;
+
+	//vertex of a cell as offset from its lowest corner, for every corner pattern;
+	//corner c of the cell is (c & 1, c >> 1 & 1, c >> 2 & 1)
+	private static final float[][] VERTEX = new float[256][];
+
+	static
+	{
+		for(int mask = 0; mask < 256; mask++)
+		{
+			float[] sum = new float[3];
+			int crossed = 0;
+			for(int corner = 0; corner < 8; corner++)
+			{
+				for(int axis = 0; axis < 3; axis++)
+				{
+					int other = corner | (1 << axis);
+					if(other != corner && ((mask >> corner) & 1) != ((mask >> other) & 1))
+					{
+						for(int a = 0; a < 3; a++)
+						{
+							sum[a] += a == axis ? 0.5f : (corner >> a) & 1;
+						}
+						crossed++;
+					}
+				}
+			}
+			if(crossed > 0)
+			{
+				for(int a = 0; a < 3; a++)
+				{
+					sum[a] /= crossed;
+				}
+			}
+			VERTEX[mask] = sum;
+		}
+	}
+
+	private final VoxelGrid grid;
+	private final double resolution;
+	private final PrinterBed.Fit fit;
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+	private long triangles = 0;
+
+	//the 4 cell vertices of the current quad
+	private final double[][] quad = new double[4][3];
+	private final int[] cell = new int[3];
+
+
+	private SurfaceNets(VoxelGrid grid, PrinterBed.Fit fit)
+	{
+		this.grid = grid;
+		this.resolution = grid.getResolution();
+		this.fit = fit;
+	}
+
+
+	//returns the number of triangles written
+	public static long writeStl(VoxelGrid grid, File file) throws IOException
+	{
+		return writeStl(grid, file, null);
+	}
+
+	public static long writeStl(VoxelGrid grid, File file, PrinterBed.Fit fit) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if(parent != null)
+		{
+			parent.mkdirs();
+		}
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try
+		{
+			out.setLength(0);
+			return new SurfaceNets(grid, fit).write(out.getChannel());
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private long write(FileChannel channel) throws IOException
+	{
+		this.channel = channel;
+
+		byte[] title = "PrintableMusic voxel sculpture".getBytes(StandardCharsets.US_ASCII);
+		buffer.put(title);
+		buffer.put(new byte[HEADER - title.length]);
+		buffer.putInt(0);
+
+		grid.forEach(new VoxelGrid.Visitor()
+		{
+			@Override
+			public void voxel(int i, int j, int k) throws IOException
+			{
+				//one quad for every side of the voxel that faces an empty one
+				if(!grid.get(i - 1, j, k)) face(0, i - 1, j, k, false);
+				if(!grid.get(i + 1, j, k)) face(0, i, j, k, true);
+				if(!grid.get(i, j - 1, k)) face(1, i, j - 1, k, false);
+				if(!grid.get(i, j + 1, k)) face(1, i, j, k, true);
+				if(!grid.get(i, j, k - 1)) face(2, i, j, k - 1, false);
+				if(!grid.get(i, j, k + 1)) face(2, i, j, k, true);
+			}
+		});
+
+		flush();
+		ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		count.putInt((int) triangles).flip();
+		channel.write(count, HEADER);
+		return triangles;
+	}
+
+	//the grid edge from voxel (i, j, k) to its neighbour along axis; insideLow tells which end is filled
+	private void face(int axis, int i, int j, int k, boolean insideLow) throws IOException
+	{
+		int u = (axis + 1) % 3;
+		int v = (axis + 2) % 3;
+
+		//cells around the edge in the order (-u,-v) (0,-v) (0,0) (-u,0), counter-clockwise seen from +axis
+		for(int corner = 0; corner < 4; corner++)
+		{
+			cell[0] = i;
+			cell[1] = j;
+			cell[2] = k;
+			cell[u] -= (corner == 0 || corner == 3) ? 1 : 0;
+			cell[v] -= (corner == 0 || corner == 1) ? 1 : 0;
+			vertex(cell[0], cell[1], cell[2], quad[corner]);
+		}
+
+		if(insideLow)
+		{
+			triangle(quad[0], quad[1], quad[2]);
+			triangle(quad[0], quad[2], quad[3]);
+		}
+		else
+		{
+			triangle(quad[0], quad[2], quad[1]);
+			triangle(quad[0], quad[3], quad[2]);
+		}
+	}
+
+	private void vertex(int x, int y, int z, double[] position)
+	{
+		int mask = 0;
+		for(int corner = 0; corner < 8; corner++)
+		{
+			if(grid.get(x + (corner & 1), y + ((corner >> 1) & 1), z + ((corner >> 2) & 1)))
+			{
+				mask |= 1 << corner;
+			}
+		}
+		float[] offset = VERTEX[mask];
+
+		//voxel centres sit at (i + 0.5) * resolution
+		position[0] = (x + offset[0] + 0.5) * resolution;
+		position[1] = (y + offset[1] + 0.5) * resolution;
+		position[2] = (z + offset[2] + 0.5) * resolution;
+		if(fit != null)
+		{
+			double px = position[0];
+			position[0] = fit.x(px, position[1]);
+			position[1] = fit.y(px, position[1]);
+			position[2] = fit.z(position[2]);
+		}
+	}
+
+	private void triangle(double[] a, double[] b, double[] c) throws IOException
+	{
+		double ux = b[0] - a[0], uy = b[1] - a[1], uz = b[2] - a[2];
+		double vx = c[0] - a[0], vy = c[1] - a[1], vz = c[2] - a[2];
+		double nx = uy * vz - uz * vy;
+		double ny = uz * vx - ux * vz;
+		double nz = ux * vy - uy * vx;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if(length > 0)
+		{
+			nx /= length;
+			ny /= length;
+			nz /= length;
+		}
+
+		if(buffer.remaining() < TRIANGLE)
+		{
+			flush();
+		}
+		buffer.putFloat((float) nx).putFloat((float) ny).putFloat((float) nz);
+		buffer.putFloat((float) a[0]).putFloat((float) a[1]).putFloat((float) a[2]);
+		buffer.putFloat((float) b[0]).putFloat((float) b[1]).putFloat((float) b[2]);
+		buffer.putFloat((float) c[0]).putFloat((float) c[1]).putFloat((float) c[2]);
+		buffer.putShort((short) 0);
+		triangles++;
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,241 @@
+package lmu_PrintableMusic_object;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+//Sparse occupancy grid: only the 16x16x16 chunks that something was drawn into exist,
+//each one 4096 bits in a long[64]. Voxel (i, j, k) is the box [i, i+1) * resolution
+//(same for j and k), a box is filled row by row with one mask per 16 voxels,
+//so drawing a note costs the same no matter how big the grid already is.
+public class VoxelGrid
+{
+	static final int CHUNK_BITS = 4;
+	static final int CHUNK = 1 << CHUNK_BITS;
+	private static final int MASK = CHUNK - 1;
+	private static final int WORDS = CHUNK * CHUNK * CHUNK / 64;
+
+	//chunk coordinates are packed into 21 bits each, so the key is never negative
+	private static final int OFFSET = 1 << 20;
+	private static final long EMPTY = -1;
+
+	private final double resolution;
+
+	//open addressing, chunk key -> bits
+	private long[] keys = new long[64];
+	private long[][] chunks = new long[64][];
+	private int chunkCount = 0;
+
+	private long lastKey = EMPTY;
+	private long[] lastChunk = null;
+
+	//around all filled voxels, their whole boxes
+	private final BoundingBox bounds = new BoundingBox();
+
+
+	public VoxelGrid(double resolution)
+	{
+		if(resolution <= 0)
+		{
+			throw new IllegalArgumentException("resolution must be positive: " + resolution);
+		}
+		this.resolution = resolution;
+		Arrays.fill(keys, EMPTY);
+	}
+
+
+	//fills every voxel whose centre lies inside the box
+	public void fillBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ)
+	{
+		int x0 = first(minX);
+		int y0 = first(minY);
+		int z0 = first(minZ);
+		int x1 = last(maxX);
+		int y1 = last(maxY);
+		int z1 = last(maxZ);
+		if(x0 <= x1 && y0 <= y1 && z0 <= z1)
+		{
+			bounds.add(x0 * resolution, y0 * resolution, z0 * resolution, (x1 + 1) * resolution, (y1 + 1) * resolution, (z1 + 1) * resolution);
+		}
+
+		for(int k = z0; k <= z1; k++)
+		{
+			for(int j = y0; j <= y1; j++)
+			{
+				int i = x0;
+				while(i <= x1)
+				{
+					//the rest of the row inside this chunk, at most 16 bits of one word
+					int end = Math.min(x1, (i | MASK));
+					long[] chunk = chunk(i, j, k, true);
+					int index = index(i, j, k);
+					int length = end - i + 1;
+					chunk[index >>> 6] |= ((1L << length) - 1) << (index & 63);
+					i = end + 1;
+				}
+			}
+		}
+	}
+
+	//same for a box given by its centre, like the centred JavaScad Cube
+	public void fillCentered(double centerX, double centerY, double centerZ, double sizeX, double sizeY, double sizeZ)
+	{
+		fillBox(centerX - sizeX / 2, centerY - sizeY / 2, centerZ - sizeZ / 2, centerX + sizeX / 2, centerY + sizeY / 2, centerZ + sizeZ / 2);
+	}
+
+	public boolean get(int i, int j, int k)
+	{
+		long[] chunk = chunk(i, j, k, false);
+		if(chunk == null)
+		{
+			return false;
+		}
+		int index = index(i, j, k);
+		return (chunk[index >>> 6] & (1L << (index & 63))) != 0;
+	}
+
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+
+	public double getResolution() {
+		return resolution;
+	}
+
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	//number of filled voxels
+	public long getVoxelCount()
+	{
+		long voxels = 0;
+		for(long[] chunk : chunks)
+		{
+			if(chunk != null)
+			{
+				for(long word : chunk)
+				{
+					voxels += Long.bitCount(word);
+				}
+			}
+		}
+		return voxels;
+	}
+
+	//visits every filled voxel, chunk by chunk
+	public void forEach(Visitor visitor) throws IOException
+	{
+		for(int slot = 0; slot < keys.length; slot++)
+		{
+			long[] chunk = chunks[slot];
+			if(chunk == null)
+			{
+				continue;
+			}
+			long key = keys[slot];
+			int baseX = ((int) (key >>> 42) - OFFSET) << CHUNK_BITS;
+			int baseY = ((int) ((key >>> 21) & 0x1FFFFF) - OFFSET) << CHUNK_BITS;
+			int baseZ = ((int) (key & 0x1FFFFF) - OFFSET) << CHUNK_BITS;
+
+			for(int w = 0; w < WORDS; w++)
+			{
+				long word = chunk[w];
+				while(word != 0)
+				{
+					int index = (w << 6) | Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					visitor.voxel(baseX + (index & MASK), baseY + ((index >>> CHUNK_BITS) & MASK), baseZ + (index >>> (2 * CHUNK_BITS)));
+				}
+			}
+		}
+	}
+
+	public interface Visitor
+	{
+		public void voxel(int i, int j, int k) throws IOException;
+	}
+
+	private int first(double min)
+	{
+		return (int) Math.ceil(min / resolution - 0.5);
+	}
+
+	private int last(double max)
+	{
+		return (int) Math.floor(max / resolution - 0.5);
+	}
+
+	private static int index(int i, int j, int k)
+	{
+		return (i & MASK) | ((j & MASK) << CHUNK_BITS) | ((k & MASK) << (2 * CHUNK_BITS));
+	}
+
+	private static long key(int i, int j, int k)
+	{
+		return ((long) ((i >> CHUNK_BITS) + OFFSET) << 42) | ((long) ((j >> CHUNK_BITS) + OFFSET) << 21) | (long) ((k >> CHUNK_BITS) + OFFSET);
+	}
+
+	private long[] chunk(int i, int j, int k, boolean create)
+	{
+		long key = key(i, j, k);
+		if(key == lastKey)
+		{
+			return lastChunk;
+		}
+
+		int slot = slot(key);
+		while(keys[slot] != EMPTY && keys[slot] != key)
+		{
+			slot = (slot + 1) & (keys.length - 1);
+		}
+
+		long[] chunk = chunks[slot];
+		if(chunk == null)
+		{
+			if(!create)
+			{
+				return null;
+			}
+			chunk = new long[WORDS];
+			keys[slot] = key;
+			chunks[slot] = chunk;
+			chunkCount++;
+			if(chunkCount * 2 > keys.length)
+			{
+				rehash();
+			}
+		}
+
+		lastKey = key;
+		lastChunk = chunk;
+		return chunk;
+	}
+
+	private int slot(long key)
+	{
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+	}
+
+	private void rehash()
+	{
+		long[] oldKeys = keys;
+		long[][] oldChunks = chunks;
+		keys = new long[oldKeys.length * 2];
+		chunks = new long[oldKeys.length * 2][];
+		Arrays.fill(keys, EMPTY);
+
+		for(int i = 0; i < oldKeys.length; i++)
+		{
+			if(oldChunks[i] != null)
+			{
+				int slot = slot(oldKeys[i]);
+				while(keys[slot] != EMPTY)
+				{
+					slot = (slot + 1) & (keys.length - 1);
+				}
+				keys[slot] = oldKeys[i];
+				chunks[slot] = oldChunks[i];
+			}
+		}
+	}
+}